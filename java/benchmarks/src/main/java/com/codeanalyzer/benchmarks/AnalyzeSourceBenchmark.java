@@ -0,0 +1,18 @@
+package com.codeanalyzer.benchmarks;
+
+import com.codeanalyzer.JavaAnalyzer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Parse plus all per-file metrics: the cost of one cache miss. */
+public class AnalyzeSourceBenchmark {
+
+    @Benchmark
+    @OperationsPerInvocation(CorpusState.FILES)
+    public void analyzeSource(CorpusState corpus, Blackhole bh) {
+        for (int i = 0; i < CorpusState.FILES; i++) {
+            bh.consume(JavaAnalyzer.analyzeSource(corpus.sources.get(i), corpus.paths.get(i), "/corpus"));
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.codeanalyzer.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Path;
+
+/**
+ * Runs the benchmarks with the GC profiler attached, so every result carries
+ * {@code gc.alloc.rate.norm} (bytes allocated per file) next to throughput, and writes
+ * machine-readable results to {@code jmh-result.json}.
+ *
+ * <p>Regular JMH arguments are accepted and override the defaults, e.g. a benchmark regex, or
+ * {@code -p nestingDepth=1,3,6 -p duplicationRate=0,0.5}. With {@code --generate DIR [files]} it
+ * instead writes a corpus to disk for end-to-end runs of the analyzer, and with
+ * {@code --footprint [files]} it compares the retained heap of the two result models.
+ */
+public final class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 2 && "--generate".equals(args[0])) {
+            int files = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+            new CorpusGenerator(42, files, 12, 3, 0.2).writeTo(Path.of(args[1]));
+            System.out.println("Wrote " + files + " files to " + args[1]);
+            return;
+        }
+        if (args.length >= 1 && "--footprint".equals(args[0])) {
+            ResultFootprint.run(args.length > 1 ? Integer.parseInt(args[1]) : 2000);
+            return;
+        }
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("jmh-result.json")
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,133 @@
+package com.codeanalyzer.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic generator of synthetic Java sources. The same seed and parameters always produce
+ * the same corpus, so benchmark numbers from different runs are comparable.
+ *
+ * <p>{@code nestingDepth} bounds how deeply control-flow statements are nested inside each method;
+ * {@code duplicationRate} is the fraction of methods copied (with renamed identifiers) from a
+ * shared pool, which is what the clone detector is expected to find.
+ */
+public final class CorpusGenerator {
+
+    private static final int TEMPLATE_POOL_SIZE = 16;
+
+    private final long seed;
+    private final int files;
+    private final int methodsPerFile;
+    private final int nestingDepth;
+    private final double duplicationRate;
+
+    public CorpusGenerator(long seed, int files, int methodsPerFile, int nestingDepth, double duplicationRate) {
+        this.seed = seed;
+        this.files = files;
+        this.methodsPerFile = methodsPerFile;
+        this.nestingDepth = nestingDepth;
+        this.duplicationRate = duplicationRate;
+    }
+
+    public List<GeneratedFile> generate() {
+        Random random = new Random(seed);
+        List<String> templates = new ArrayList<>();
+        for (int i = 0; i < TEMPLATE_POOL_SIZE; i++) templates.add(method(random, "shared" + i, "t" + i));
+
+        List<GeneratedFile> result = new ArrayList<>(files);
+        for (int f = 0; f < files; f++) {
+            String pkg = "gen.p" + (f % 10);
+            String cls = "Generated" + f;
+            StringBuilder sb = new StringBuilder();
+            sb.append("package ").append(pkg).append(";\n\n");
+            sb.append("import java.util.List;\nimport java.util.Map;\n\n");
+            sb.append("/**\n * Generated class ").append(f).append(".\n */\n");
+            sb.append("public class ").append(cls).append(" {\n\n");
+            sb.append("    private int counter; // running total\n");
+            sb.append("    private final String label = \"").append(cls).append(" /* not a comment */\";\n\n");
+            for (int m = 0; m < methodsPerFile; m++) {
+                if (random.nextDouble() < duplicationRate) {
+                    String template = templates.get(random.nextInt(templates.size()));
+                    sb.append(template.replace("shared", "copy" + f + "x"));
+                } else {
+                    sb.append(method(random, "method" + m, "v" + m));
+                }
+                sb.append('\n');
+            }
+            sb.append("}\n");
+            result.add(new GeneratedFile(pkg.replace('.', '/') + "/" + cls + ".java", sb.toString()));
+        }
+        return result;
+    }
+
+    /** Writes the corpus under {@code root}, for end-to-end runs of the analyzer itself. */
+    public void writeTo(Path root) throws IOException {
+        for (GeneratedFile file : generate()) {
+            Path target = root.resolve(file.path());
+            Files.createDirectories(target.getParent());
+            Files.writeString(target, file.source());
+        }
+    }
+
+    private String method(Random random, String name, String var) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("    /* ").append(name).append(" */\n");
+        sb.append("    public int ").append(name).append("(int ").append(var).append(", List<String> items, Map<String, Integer> index) {\n");
+        sb.append("        int acc = ").append(random.nextInt(100)).append(";\n");
+        int statements = 2 + random.nextInt(4);
+        for (int i = 0; i < statements; i++) statement(sb, random, var, 2, nestingDepth);
+        sb.append("        return acc;\n    }\n");
+        return sb.toString();
+    }
+
+    private void statement(StringBuilder sb, Random random, String var, int indent, int depth) {
+        String pad = "    ".repeat(indent);
+        int kind = depth > 0 ? random.nextInt(6) : 5;
+        switch (kind) {
+            case 0 -> {
+                sb.append(pad).append("if (").append(var).append(" > ").append(random.nextInt(50))
+                        .append(" && acc < ").append(random.nextInt(1000)).append(") {\n");
+                statement(sb, random, var, indent + 1, depth - 1);
+                sb.append(pad).append("} else {\n");
+                statement(sb, random, var, indent + 1, depth - 1);
+                sb.append(pad).append("}\n");
+            }
+            case 1 -> {
+                sb.append(pad).append("for (String item : items) {\n");
+                sb.append(pad).append("    // visit ").append(var).append('\n');
+                statement(sb, random, var, indent + 1, depth - 1);
+                sb.append(pad).append("}\n");
+            }
+            case 2 -> {
+                sb.append(pad).append("while (acc % ").append(2 + random.nextInt(7)).append(" != 0 || ").append(var).append(" < 0) {\n");
+                statement(sb, random, var, indent + 1, depth - 1);
+                sb.append(pad).append("    acc++;\n");
+                sb.append(pad).append("}\n");
+            }
+            case 3 -> {
+                sb.append(pad).append("switch (").append(var).append(" % 3) {\n");
+                sb.append(pad).append("    case 0:\n");
+                statement(sb, random, var, indent + 2, depth - 1);
+                sb.append(pad).append("        break;\n");
+                sb.append(pad).append("    default:\n");
+                sb.append(pad).append("        acc -= ").append(random.nextInt(10)).append(";\n");
+                sb.append(pad).append("}\n");
+            }
+            case 4 -> {
+                sb.append(pad).append("try {\n");
+                statement(sb, random, var, indent + 1, depth - 1);
+                sb.append(pad).append("} catch (RuntimeException e) {\n");
+                sb.append(pad).append("    acc = index.getOrDefault(\"").append(var).append("\", 0);\n");
+                sb.append(pad).append("}\n");
+            }
+            default -> sb.append(pad).append("acc += ").append(var).append(" > ").append(random.nextInt(20))
+                    .append(" ? items.size() : ").append(random.nextInt(20)).append(";\n");
+        }
+    }
+
+    public record GeneratedFile(String path, String source) {}
+}
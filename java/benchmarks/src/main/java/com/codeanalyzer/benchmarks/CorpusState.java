@@ -0,0 +1,67 @@
+package com.codeanalyzer.benchmarks;
+
+import com.codeanalyzer.AnalysisResult;
+import com.codeanalyzer.FileMetrics;
+import com.codeanalyzer.JavaAnalyzer;
+import com.codeanalyzer.DuplicationDetector;
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generated corpus shared by all benchmarks, with each stage's input precomputed so a benchmark
+ * measures only its own stage. Benchmarks iterate over every file and declare
+ * {@code @OperationsPerInvocation(FILES)}, so scores and {@code gc.alloc.rate.norm} are per file.
+ */
+@State(Scope.Benchmark)
+public class CorpusState {
+
+    public static final int FILES = 200;
+
+    @Param({ "3" })
+    public int nestingDepth;
+
+    @Param({ "0.2" })
+    public double duplicationRate;
+
+    public List<String> sources;
+    public List<ByteBuffer> sourceBytes;
+    public List<String> paths;
+    public List<CompilationUnit> units;
+    public List<FileMetrics> metrics;
+    public AnalysisResult result;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        sources = new ArrayList<>(FILES);
+        sourceBytes = new ArrayList<>(FILES);
+        paths = new ArrayList<>(FILES);
+        for (CorpusGenerator.GeneratedFile file : new CorpusGenerator(42, FILES, 12, nestingDepth, duplicationRate).generate()) {
+            sources.add(file.source());
+            byte[] bytes = file.source().getBytes(StandardCharsets.UTF_8);
+            sourceBytes.add(ByteBuffer.allocateDirect(bytes.length).put(bytes).flip());
+            paths.add("/corpus/" + file.path());
+        }
+        units = new ArrayList<>(FILES);
+        metrics = new ArrayList<>(FILES);
+        for (int i = 0; i < FILES; i++) {
+            units.add(StaticJavaParser.parse(sources.get(i)));
+            metrics.add(JavaAnalyzer.analyzeSource(sources.get(i), paths.get(i), "/corpus"));
+        }
+        result = new AnalysisResult();
+        result.setProjectPath("corpus");
+        result.setAnalyzedAt(Instant.EPOCH);
+        result.getFiles().addAll(metrics);
+        result.getDuplicates().addAll(DuplicationDetector.detectDuplicates(metrics));
+    }
+}
@@ -0,0 +1,17 @@
+package com.codeanalyzer.benchmarks;
+
+import com.codeanalyzer.DuplicationDetector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+
+import java.util.List;
+
+/** Clone detection over the whole corpus; the score is per file indexed. */
+public class DuplicationBenchmark {
+
+    @Benchmark
+    @OperationsPerInvocation(CorpusState.FILES)
+    public List<?> detectDuplicates(CorpusState corpus) {
+        return DuplicationDetector.detectDuplicates(corpus.metrics);
+    }
+}
@@ -0,0 +1,30 @@
+package com.codeanalyzer.benchmarks;
+
+import com.codeanalyzer.JavaMetricsCalculator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+
+/** Line counting and complexity on already-loaded sources and already-parsed units. */
+public class MetricsBenchmark {
+
+    @Benchmark
+    @OperationsPerInvocation(CorpusState.FILES)
+    public void countLines(CorpusState corpus, Blackhole bh) {
+        for (String source : corpus.sources) bh.consume(JavaMetricsCalculator.countLines(source));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CorpusState.FILES)
+    public void countLinesBytes(CorpusState corpus, Blackhole bh) {
+        for (ByteBuffer source : corpus.sourceBytes) bh.consume(JavaMetricsCalculator.countLines(source));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CorpusState.FILES)
+    public void cyclomaticComplexity(CorpusState corpus, Blackhole bh) {
+        for (var unit : corpus.units) bh.consume(JavaMetricsCalculator.getCyclomaticComplexity(unit));
+    }
+}
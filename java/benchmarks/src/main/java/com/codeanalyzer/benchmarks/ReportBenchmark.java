@@ -0,0 +1,21 @@
+package com.codeanalyzer.benchmarks;
+
+import com.codeanalyzer.ReportGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+
+/** Rendering a full report into memory; the score is per file rendered. */
+public class ReportBenchmark {
+
+    @Benchmark
+    @OperationsPerInvocation(CorpusState.FILES)
+    public String generateHtml(CorpusState corpus) {
+        return ReportGenerator.generateHtml(corpus.result);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CorpusState.FILES)
+    public String generateCsv(CorpusState corpus) {
+        return ReportGenerator.generateCsv(corpus.result);
+    }
+}
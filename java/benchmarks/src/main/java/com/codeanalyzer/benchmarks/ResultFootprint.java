@@ -0,0 +1,70 @@
+package com.codeanalyzer.benchmarks;
+
+import com.codeanalyzer.CompactResultStore;
+import com.codeanalyzer.FileMetrics;
+import com.codeanalyzer.JavaAnalyzer;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Retained heap of the same analysis result held as a list of {@link FileMetrics} and as a
+ * {@link CompactResultStore}. Token sequences are dropped from both, since they are the same
+ * arrays either way; what is compared is the per-file and per-method model. Heap usage is read
+ * after repeated full GCs, so run it with a fixed heap (e.g. {@code -Xms1g -Xmx1g}) for stable
+ * numbers.
+ */
+public final class ResultFootprint {
+
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    private ResultFootprint() {}
+
+    public static void run(int files) {
+        List<CorpusGenerator.GeneratedFile> corpus = new CorpusGenerator(42, files, 12, 3, 0.2).generate();
+        List<FileMetrics> list = new ArrayList<>(files);
+        for (CorpusGenerator.GeneratedFile file : corpus) {
+            FileMetrics m = JavaAnalyzer.analyzeSource(file.source(), "/corpus/" + file.path(), "/corpus");
+            m.setTokens(null);
+            list.add(m);
+        }
+        int methods = list.stream().mapToInt(f -> f.getMethods().size()).sum();
+        long withObjects = usedAfterGc();
+
+        CompactResultStore store = toStore(list);
+        list = null;
+        long withStore = usedAfterGc();
+        Reference.reachabilityFence(store);
+        store = null;
+        // Measured last so that parser state and other leftovers of the analysis count as baseline.
+        long empty = usedAfterGc();
+        Reference.reachabilityFence(corpus);
+        long objects = withObjects - empty;
+        long compact = withStore - empty;
+
+        System.out.printf("%d files, %d methods%n", files, methods);
+        System.out.printf("FileMetrics list:   %,12d bytes (%,d per method)%n", objects, objects / methods);
+        System.out.printf("CompactResultStore: %,12d bytes (%,d per method)%n", compact, compact / methods);
+        System.out.printf("Saving: %.1f%%%n", 100.0 * (objects - compact) / objects);
+    }
+
+    /** Separate frame, so no loop iterator keeps the list reachable once the caller drops it. */
+    private static CompactResultStore toStore(List<FileMetrics> list) {
+        CompactResultStore store = new CompactResultStore(false);
+        for (FileMetrics m : list) store.add(m);
+        store.trim();
+        return store;
+    }
+
+    private static long usedAfterGc() {
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, MEMORY.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+}
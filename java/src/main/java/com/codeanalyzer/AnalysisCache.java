@@ -0,0 +1,250 @@
+package com.codeanalyzer;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache of per-file metrics keyed by content hash, so unchanged files are never re-parsed.
+ * Entries live under {@code <dir>/v<version>/<xx>/<hash>}; the version combines the entry format
+ * and {@link JavaAnalyzer#METRICS_VERSION}, so any change to how metrics are computed starts a
+ * fresh generation and the old one is dropped by {@link #evictStale()}.
+ */
+public final class AnalysisCache {
+
+    public static final String DEFAULT_DIR = ".code-analyzer-cache";
+    private static final int FORMAT_VERSION = 4;
+
+    private final Path generationDir;
+    private final Path cacheDir;
+    private final Set<String> usedKeys = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    public AnalysisCache(Path cacheDir) {
+        this.cacheDir = cacheDir;
+        this.generationDir = cacheDir.resolve("v" + FORMAT_VERSION + "." + JavaAnalyzer.METRICS_VERSION);
+    }
+
+    public static String key(ByteBuffer content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(("code-analyzer:" + FORMAT_VERSION + ":" + JavaAnalyzer.METRICS_VERSION + "\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            digest.update(content.duplicate());
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Returns the cached metrics for the given key re-bound to the given paths, or null on a miss. */
+    public FileMetrics get(String key, String filePath, String relativePath) {
+        usedKeys.add(key);
+        Path entry = entryPath(key);
+        if (Files.isRegularFile(entry)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry)))) {
+                FileMetrics m = readMetrics(in, filePath, relativePath);
+                hits.incrementAndGet();
+                return m;
+            } catch (IOException e) {
+                // Corrupt or truncated entry: treat as a miss and let put() overwrite it.
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(String key, FileMetrics metrics) {
+        Path entry = entryPath(key);
+        try {
+            Files.createDirectories(entry.getParent());
+            Path tmp = Files.createTempFile(entry.getParent(), key.substring(0, 8), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                writeMetrics(out, metrics);
+            }
+            Files.move(tmp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Warning: Could not write cache entry for " + metrics.getFilePath() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes entries not looked up during this run and any generation written by another version.
+     * Only call after a run that covered the whole tree. Returns the number of entries removed.
+     */
+    public int evictStale() throws IOException {
+        if (!Files.isDirectory(cacheDir)) return 0;
+        AtomicInteger evicted = new AtomicInteger();
+        try (Stream<Path> walk = Files.walk(cacheDir)) {
+            walk.filter(Files::isRegularFile)
+                    .filter(p -> !p.startsWith(generationDir) || !usedKeys.contains(p.getFileName().toString()))
+                    .forEach(p -> {
+                        try {
+                            Files.delete(p);
+                            evicted.incrementAndGet();
+                        } catch (IOException ignored) {
+                            // Another run may have removed it already.
+                        }
+                    });
+        }
+        return evicted.get();
+    }
+
+    public int getHits() { return hits.get(); }
+    public int getMisses() { return misses.get(); }
+
+    private Path entryPath(String key) {
+        return generationDir.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    /** Entry body, also used for the files in a {@link ShardFile}. Paths are not stored. */
+    static void writeMetrics(DataOutputStream out, FileMetrics file) throws IOException {
+        out.writeInt(file.getTotalLines());
+        out.writeInt(file.getCodeLines());
+        out.writeInt(file.getCommentLines());
+        out.writeInt(file.getCyclomaticComplexity());
+        out.writeDouble(file.getMaintainabilityIndex());
+        out.writeInt(file.getMethods().size());
+        for (MethodMetrics m : file.getMethods()) {
+            out.writeUTF(m.getName());
+            out.writeUTF(m.getSignature());
+            out.writeInt(m.getLineStart());
+            out.writeInt(m.getLineEnd());
+            out.writeInt(m.getCyclomaticComplexity());
+            out.writeInt(m.getLinesOfCode());
+            out.writeDouble(m.getMaintainabilityIndex());
+        }
+        TokenSequence tokens = file.getTokens();
+        int count = tokens != null ? tokens.size() : 0;
+        out.writeInt(count);
+        int previousLine = 0;
+        for (int i = 0; i < count; i++) {
+            out.writeShort(tokens.kind(i));
+            writeVarInt(out, tokens.line(i) - previousLine);
+            previousLine = tokens.line(i);
+        }
+        List<TypeCoupling> types = file.getTypes();
+        out.writeBoolean(types != null);
+        if (types != null) {
+            out.writeUTF(file.getPackageName());
+            out.writeInt(file.getImports().size());
+            for (String i : file.getImports()) out.writeUTF(i);
+            out.writeInt(types.size());
+            for (TypeCoupling t : types) {
+                out.writeUTF(t.getName());
+                out.writeInt(t.getLineStart());
+                out.writeInt(t.getReferences().size());
+                for (String r : t.getReferences()) out.writeUTF(r);
+            }
+        }
+        boolean shingles = hasShingles(file);
+        out.writeBoolean(shingles);
+        if (shingles) {
+            for (MethodMetrics m : file.getMethods()) {
+                int[] values = m.getShingles();
+                writeVarInt(out, values.length);
+                // Sorted, so deltas are positive; the int arithmetic wraps back exactly on read.
+                int previous = 0;
+                for (int v : values) {
+                    writeVarInt(out, v - previous);
+                    previous = v;
+                }
+            }
+        }
+        // Only ever set in shards: approximate results are not cached.
+        out.writeBoolean(file.getDegraded() != null);
+        if (file.getDegraded() != null) out.writeUTF(file.getDegraded());
+    }
+
+    /** Whether the file's methods carry near-miss shingles (a file without methods trivially does). */
+    static boolean hasShingles(FileMetrics file) {
+        return file.getMethods().isEmpty() || file.getMethods().get(0).getShingles() != null;
+    }
+
+    static FileMetrics readMetrics(DataInputStream in, String filePath, String relativePath) throws IOException {
+        FileMetrics file = new FileMetrics(filePath, relativePath);
+        file.setTotalLines(in.readInt());
+        file.setCodeLines(in.readInt());
+        file.setCommentLines(in.readInt());
+        file.setCyclomaticComplexity(in.readInt());
+        file.setMaintainabilityIndex(in.readDouble());
+        int methods = in.readInt();
+        for (int i = 0; i < methods; i++) {
+            MethodMetrics m = new MethodMetrics(in.readUTF(), in.readUTF());
+            m.setLineStart(in.readInt());
+            m.setLineEnd(in.readInt());
+            m.setCyclomaticComplexity(in.readInt());
+            m.setLinesOfCode(in.readInt());
+            m.setMaintainabilityIndex(in.readDouble());
+            file.getMethods().add(m);
+        }
+        int count = in.readInt();
+        short[] kinds = new short[count];
+        int[] lines = new int[count];
+        int line = 0;
+        for (int i = 0; i < count; i++) {
+            kinds[i] = in.readShort();
+            line += readVarInt(in);
+            lines[i] = line;
+        }
+        file.setTokens(new TokenSequence(kinds, lines));
+        if (in.readBoolean()) {
+            file.setPackageName(in.readUTF());
+            int importCount = in.readInt();
+            List<String> imports = new ArrayList<>(importCount);
+            for (int i = 0; i < importCount; i++) imports.add(in.readUTF());
+            file.setImports(imports);
+            int typeCount = in.readInt();
+            List<TypeCoupling> types = new ArrayList<>(typeCount);
+            for (int i = 0; i < typeCount; i++) {
+                TypeCoupling t = new TypeCoupling(in.readUTF(), in.readInt());
+                int references = in.readInt();
+                for (int r = 0; r < references; r++) t.getReferences().add(in.readUTF());
+                types.add(t);
+            }
+            file.setTypes(types);
+        }
+        if (in.readBoolean()) {
+            for (MethodMetrics m : file.getMethods()) {
+                int[] values = new int[readVarInt(in)];
+                int value = 0;
+                for (int i = 0; i < values.length; i++) {
+                    value += readVarInt(in);
+                    values[i] = value;
+                }
+                m.setShingles(values);
+            }
+        }
+        if (in.readBoolean()) file.setDegraded(in.readUTF());
+        return file;
+    }
+
+    /** Token lines only ever grow, so deltas are small and usually fit in one byte. */
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.codeanalyzer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-running analysis: keeps every file's metrics and the duplicate indexes resident, watches the
+ * tree for changes, re-analyzes only the touched files and re-indexes only their token streams, and
+ * serves the current state over HTTP on the loopback interface.
+ *
+ * <ul>
+ *   <li>{@code GET /result} - the full result (files, methods, duplicate groups) as JSON</li>
+ *   <li>{@code GET /file?path=<relative path>} - one file's metrics</li>
+ *   <li>{@code GET /rollup} - project, module and package totals and the hotspots, as in the reports</li>
+ *   <li>{@code GET /health} - file count and time of the last update</li>
+ * </ul>
+ */
+public final class AnalysisDaemon {
+
+    /** Events arriving within this window after the first one are handled as one batch. */
+    private static final long DEBOUNCE_MS = 150;
+
+    private final Path root;
+    private final AnalysisOptions options;
+    private final String projectName;
+    // Only touched from the watch thread; the endpoints read the last published copy.
+    private final SortedMap<String, FileMetrics> files = new TreeMap<>();
+    private final Map<WatchKey, Path> watchedDirs = new HashMap<>();
+    private final DuplicationDetector.Index duplicateIndex;
+    private final NearMissDetector.Index nearMissIndex;
+    private volatile SourceDiscovery discovery;
+    private volatile Published published = new Published(Map.of(), List.of(), new MetricsRollup(), Instant.now());
+    private WatchService watcher;
+    private HttpServer server;
+    private ExecutorService handlers;
+
+    /** What the endpoints serve, replaced as a whole after each batch so files, duplicates and totals always agree. */
+    private record Published(Map<String, FileMetrics> files, List<DuplicateBlock> duplicates, MetricsRollup rollup,
+                             Instant analyzedAt) {}
+
+    public AnalysisDaemon(Path root, AnalysisOptions options, int minTokens) {
+        this(root, options, minTokens, NearMissDetector.DEFAULT_THRESHOLD);
+    }
+
+    public AnalysisDaemon(Path root, AnalysisOptions options, int minTokens, double similarity) {
+        this.root = root;
+        this.options = options;
+        this.duplicateIndex = new DuplicationDetector.Index(minTokens);
+        this.nearMissIndex = options.isNearMiss() ? new NearMissDetector.Index(similarity) : null;
+        this.projectName = root.getFileName() != null ? root.getFileName().toString() : root.toString();
+        this.discovery = new SourceDiscovery(root, options);
+    }
+
+    /** Runs the initial analysis, starts the HTTP endpoint and blocks processing file changes. */
+    public void run(int port) throws Exception {
+        start(port);
+        try {
+            watchLoop();
+        } finally {
+            close();
+        }
+    }
+
+    /** Runs the initial analysis, registers the watches and starts serving; returns the bound port. */
+    int start(int port) throws Exception {
+        long started = System.nanoTime();
+        JavaAnalyzer.analyzeDirectory(root, options, this::put);
+        publish();
+        System.out.println("Initial analysis: " + files.size() + " files in " + (System.nanoTime() - started) / 1_000_000 + " ms");
+
+        watcher = FileSystems.getDefault().newWatchService();
+        registerTree(root);
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/result", ex -> {
+            Published p = published;
+            respond(ex, 200, Json.result(projectName, p.analyzedAt(), p.files().values(), p.duplicates()));
+        });
+        server.createContext("/file", this::handleFile);
+        server.createContext("/rollup", ex -> respond(ex, 200, Json.rollup(published.rollup())));
+        server.createContext("/health", ex -> {
+            Published p = published;
+            respond(ex, 200, "{\"files\":" + p.files().size() + ",\"analyzedAt\":" + Json.quote(p.analyzedAt().toString()) + "}");
+        });
+        handlers = Executors.newFixedThreadPool(2);
+        server.setExecutor(handlers);
+        server.start();
+        System.out.println("Daemon listening on http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort());
+        return server.getAddress().getPort();
+    }
+
+    void close() throws IOException {
+        if (server != null) server.stop(0);
+        if (handlers != null) handlers.shutdownNow();
+        if (watcher != null) watcher.close();
+    }
+
+    /** Processes change batches until {@link #close()} is called. */
+    void watchLoop() throws InterruptedException {
+        boolean rescanPending = false;
+        while (true) {
+            Set<Path> touched = new TreeSet<>();
+            boolean overflow = rescanPending;
+            try {
+                overflow |= drain(watcher.take(), touched);
+                WatchKey more;
+                while ((more = watcher.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS)) != null) {
+                    overflow |= drain(more, touched);
+                }
+            } catch (ClosedWatchServiceException e) {
+                return;
+            }
+            long started = System.nanoTime();
+            try {
+                if (overflow) {
+                    rescan();
+                } else {
+                    for (Path p : touched) update(p);
+                }
+                rescanPending = false;
+            } catch (IOException | UncheckedIOException e) {
+                // Usually a directory removed while it was being read; the next batch starts over.
+                System.err.println("Warning: Could not apply changes, rescanning on the next change: " + e.getMessage());
+                rescanPending = true;
+            }
+            publish();
+            System.out.println("Updated " + (overflow ? "all" : touched.size()) + " file(s) in "
+                    + (System.nanoTime() - started) / 1_000_000 + " ms");
+        }
+    }
+
+    /** Collects the paths touched by one key's events; returns true if a rescan is needed instead. */
+    private boolean drain(WatchKey key, Set<Path> touched) {
+        Path dir = watchedDirs.get(key);
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+            if (dir == null) continue;
+            Path changed = dir.resolve((Path) event.context());
+            if (changed.getFileName().toString().equals(".gitignore")) {
+                // What is ignored may have changed anywhere below; start over with the new rules.
+                discovery = new SourceDiscovery(root, options);
+                overflow = true;
+            } else if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(changed)) {
+                if (discovery.prunes(changed)) continue;
+                try {
+                    registerTree(changed);
+                    try (var walk = Files.walk(changed)) {
+                        walk.filter(discovery::accepts).forEach(touched::add);
+                    }
+                } catch (IOException | UncheckedIOException e) {
+                    // Removed again before it could be read: what is left is only known by looking again.
+                    overflow = true;
+                }
+            } else if (changed.toString().endsWith(".java")) {
+                touched.add(changed);
+            } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                // A deleted directory: drop everything that lived under it.
+                String prefix = relativize(changed) + changed.getFileSystem().getSeparator();
+                for (String k : List.copyOf(files.keySet())) if (k.startsWith(prefix)) remove(k);
+            }
+        }
+        if (!key.reset()) watchedDirs.remove(key);
+        return overflow;
+    }
+
+    private void update(Path file) {
+        String relative = relativize(file);
+        if (!Files.isRegularFile(file) || !discovery.accepts(file)) {
+            remove(relative);
+            return;
+        }
+        FileMetrics m = JavaAnalyzer.analyzeFile(file, root, options);
+        if (m != null) put(m);
+        else remove(relative);
+    }
+
+    /** Re-reads the whole tree, and re-registers it in case directories were created while events were lost. */
+    private void rescan() throws IOException {
+        registerTree(root);
+        Map<String, FileMetrics> fresh = new HashMap<>();
+        try {
+            JavaAnalyzer.analyzeDirectory(root, options, m -> fresh.put(m.getRelativePath(), m));
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+        for (String k : List.copyOf(files.keySet())) if (!fresh.containsKey(k)) remove(k);
+        fresh.values().forEach(this::put);
+    }
+
+    private void put(FileMetrics m) {
+        FileMetrics old = files.put(m.getRelativePath(), m);
+        if (old != null && !old.getFilePath().equals(m.getFilePath())) unindex(old);
+        duplicateIndex.add(m);
+        if (nearMissIndex != null) nearMissIndex.add(m);
+    }
+
+    private void remove(String relative) {
+        FileMetrics old = files.remove(relative);
+        if (old != null) unindex(old);
+    }
+
+    private void unindex(FileMetrics m) {
+        duplicateIndex.remove(m.getFilePath());
+        if (nearMissIndex != null) nearMissIndex.remove(m.getFilePath());
+    }
+
+    private void publish() {
+        List<DuplicateBlock> found = duplicateIndex.build();
+        if (nearMissIndex != null) found.addAll(nearMissIndex.build());
+        // Rebuilt rather than updated: totals cannot take a file back out, and this is one pass over the metrics.
+        MetricsRollup rollup = new MetricsRollup();
+        for (FileMetrics m : files.values()) rollup.add(m);
+        published = new Published(Collections.unmodifiableMap(new TreeMap<>(files)), List.copyOf(found), rollup, Instant.now());
+    }
+
+    private void registerTree(Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (discovery.prunes(dir)) return FileVisitResult.SKIP_SUBTREE;
+                try {
+                    WatchKey key = dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                    watchedDirs.put(key, dir);
+                } catch (NoSuchFileException e) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                // Deleted between listing its parent and visiting it.
+                if (e instanceof NoSuchFileException) return FileVisitResult.CONTINUE;
+                throw e;
+            }
+        });
+    }
+
+    private void handleFile(HttpExchange ex) throws IOException {
+        String path = null;
+        String query = ex.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String param : query.split("&")) {
+                if (param.startsWith("path=")) path = URLDecoder.decode(param.substring(5), StandardCharsets.UTF_8);
+            }
+        }
+        FileMetrics m = path != null ? published.files().get(path) : null;
+        if (m == null) respond(ex, 404, "{\"error\":" + Json.quote("No analyzed file: " + path) + "}");
+        else respond(ex, 200, Json.file(m));
+    }
+
+    private static void respond(HttpExchange ex, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        ex.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private String relativize(Path file) {
+        return root.relativize(file.toAbsolutePath()).toString();
+    }
+}
@@ -0,0 +1,55 @@
+package com.codeanalyzer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class AnalysisOptions {
+    public static final long DEFAULT_MAX_FILE_BYTES = 4L << 20;
+    public static final long DEFAULT_FILE_TIMEOUT_MS = 10_000;
+    public static final int DEFAULT_MAX_DEPTH = 10_000;
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private AnalysisCache cache;
+    private AnalysisProfiler profiler;
+    private boolean coupling;
+    private boolean nearMiss;
+    private final List<String> includes = new ArrayList<>();
+    private final List<String> excludes = new ArrayList<>();
+    private boolean ignoreFiles = true;
+    private boolean followLinks;
+    private long maxFileBytes = DEFAULT_MAX_FILE_BYTES;
+    private long fileTimeoutMs = DEFAULT_FILE_TIMEOUT_MS;
+    private int maxDepth = DEFAULT_MAX_DEPTH;
+
+    public int getThreads() { return threads; }
+    public void setThreads(int threads) { this.threads = Math.max(1, threads); }
+    public AnalysisCache getCache() { return cache; }
+    public void setCache(AnalysisCache cache) { this.cache = cache; }
+    public AnalysisProfiler getProfiler() { return profiler; }
+    public void setProfiler(AnalysisProfiler profiler) { this.profiler = profiler; }
+    /** Whether to collect type references for {@link CouplingAnalyzer}. */
+    public boolean isCoupling() { return coupling; }
+    public void setCoupling(boolean coupling) { this.coupling = coupling; }
+    /** Whether to collect per-method AST shingles for {@link NearMissDetector}. */
+    public boolean isNearMiss() { return nearMiss; }
+    public void setNearMiss(boolean nearMiss) { this.nearMiss = nearMiss; }
+    /** Patterns, in .gitignore syntax, a file must match one of to be analyzed; empty for all. */
+    public List<String> getIncludes() { return includes; }
+    /** Patterns, in .gitignore syntax, of files and directories to leave out. */
+    public List<String> getExcludes() { return excludes; }
+    /** Whether .gitignore files and .git/info/exclude are honored during discovery. */
+    public boolean isIgnoreFiles() { return ignoreFiles; }
+    public void setIgnoreFiles(boolean ignoreFiles) { this.ignoreFiles = ignoreFiles; }
+    /** Whether symbolic links to directories are followed during discovery. */
+    public boolean isFollowLinks() { return followLinks; }
+    public void setFollowLinks(boolean followLinks) { this.followLinks = followLinks; }
+    /** Files larger than this get approximate metrics without being parsed; 0 for no limit. */
+    public long getMaxFileBytes() { return maxFileBytes; }
+    public void setMaxFileBytes(long maxFileBytes) { this.maxFileBytes = maxFileBytes; }
+    /** Time allowed for parsing and measuring one file before falling back to approximate metrics; 0 for no limit. */
+    public long getFileTimeoutMs() { return fileTimeoutMs; }
+    public void setFileTimeoutMs(long fileTimeoutMs) { this.fileTimeoutMs = fileTimeoutMs; }
+    /** Deepest AST the metric visitors are run on; deeper files get approximate metrics. 0 for no limit. */
+    public int getMaxDepth() { return maxDepth; }
+    public void setMaxDepth(int maxDepth) { this.maxDepth = maxDepth; }
+}
@@ -0,0 +1,347 @@
+package com.codeanalyzer;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records where a run spends its time when {@code --profile} is given: wall time, CPU time and
+ * allocation per phase and per file step, a histogram of per-file times, the slowest files and
+ * outcome counters. Each measurement is also committed as a JDK Flight Recorder event, so a
+ * recording started with {@code -XX:StartFlightRecording} carries the same data.
+ *
+ * <p>Phases ({@code discover}, {@code analyze}, {@code duplicates}, {@code report}) are measured on
+ * the calling thread. A whole-tree run discovers files while it analyzes them, so only a shard,
+ * which lists its files up front, has a separate {@code discover} phase. File steps ({@code read},
+ * {@code cache}, {@code parse}, {@code metrics}) are measured on the worker that ran them and
+ * summed over all workers, so with several threads their totals can exceed the wall time of the
+ * {@code analyze} phase.
+ */
+public final class AnalysisProfiler {
+
+    public static final int DEFAULT_TOP_FILES = 20;
+
+    /** Upper bounds, in milliseconds, of the per-file time histogram; the last bucket is open. */
+    private static final long[] BUCKET_BOUNDS_MS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000 };
+
+    /** Initialized on first use, so runs without --profile do not load the management classes. */
+    private static final class Threads {
+        static final com.sun.management.ThreadMXBean BEAN = threadBean();
+    }
+
+    enum Step { READ, CACHE, PARSE, METRICS }
+
+    enum Outcome { ANALYZED, CACHED, PARSE_FAILED, DEGRADED, ERROR }
+
+    private final int topFiles;
+    private final long startedNanos = System.nanoTime();
+    private final Map<String, long[]> phases = new LinkedHashMap<>();
+    private final LongAdder[][] steps = new LongAdder[Step.values().length][3];
+    private final LongAdder[] outcomes = new LongAdder[Outcome.values().length];
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKET_BOUNDS_MS.length + 1);
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final PriorityQueue<FileTime> slowest = new PriorityQueue<>(Comparator.comparingLong(FileTime::nanos));
+    private volatile int discovered;
+
+    public AnalysisProfiler() {
+        this(DEFAULT_TOP_FILES);
+    }
+
+    public AnalysisProfiler(int topFiles) {
+        this.topFiles = Math.max(0, topFiles);
+        for (LongAdder[] step : steps) for (int i = 0; i < step.length; i++) step[i] = new LongAdder();
+        for (int i = 0; i < outcomes.length; i++) outcomes[i] = new LongAdder();
+    }
+
+    /** Starts timing a phase on the current thread; returns null when {@code profiler} is null. */
+    public static Phase phase(AnalysisProfiler profiler, String name) {
+        return profiler != null ? new Phase(profiler, name) : null;
+    }
+
+    /** Starts timing one file on the current thread. */
+    static FileTimer file(AnalysisProfiler profiler, Path path) {
+        return profiler != null ? new FileTimer(profiler, path.toString()) : FileTimer.NONE;
+    }
+
+    void discovered(int files) { discovered = files; }
+    void skipped() { skipped.increment(); }
+
+    /** Writes the collected profile as JSON. */
+    public void writeJson(Path target, int threads) throws IOException {
+        Files.writeString(target, toJson(threads), StandardCharsets.UTF_8);
+    }
+
+    public String toJson(int threads) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"elapsedMs\":").append(millis(System.nanoTime() - startedNanos))
+                .append(",\"threads\":").append(threads)
+                .append(",\"counters\":{\"discovered\":").append(discovered)
+                .append(",\"skipped\":").append(skipped.sum())
+                .append(",\"bytesRead\":").append(bytesRead.sum());
+        for (Outcome o : Outcome.values()) {
+            sb.append(',').append(Json.quote(camelCase(o.name()))).append(':').append(outcomes[o.ordinal()].sum());
+        }
+        sb.append("},\"phases\":[");
+        synchronized (phases) {
+            boolean first = true;
+            for (Map.Entry<String, long[]> e : phases.entrySet()) {
+                long[] t = e.getValue();
+                if (!first) sb.append(',');
+                sb.append("{\"name\":").append(Json.quote(e.getKey())).append(",\"count\":").append(t[3]);
+                appendTimes(sb, t[0], t[1], t[2]);
+                first = false;
+            }
+        }
+        sb.append("],\"fileSteps\":[");
+        for (Step s : Step.values()) {
+            LongAdder[] t = steps[s.ordinal()];
+            if (s.ordinal() > 0) sb.append(',');
+            sb.append("{\"name\":").append(Json.quote(s.name().toLowerCase()));
+            appendTimes(sb, t[0].sum(), t[1].sum(), t[2].sum());
+        }
+        sb.append("],\"fileTimeHistogram\":[");
+        for (int i = 0; i < histogram.length(); i++) {
+            if (i > 0) sb.append(',');
+            sb.append("{\"upToMs\":").append(i < BUCKET_BOUNDS_MS.length ? Long.toString(BUCKET_BOUNDS_MS[i]) : "null")
+                    .append(",\"files\":").append(histogram.get(i)).append('}');
+        }
+        sb.append("],\"slowestFiles\":[");
+        List<FileTime> top;
+        synchronized (slowest) {
+            top = new ArrayList<>(slowest);
+        }
+        top.sort(Comparator.comparingLong(FileTime::nanos).reversed());
+        for (int i = 0; i < top.size(); i++) {
+            FileTime f = top.get(i);
+            if (i > 0) sb.append(',');
+            sb.append("{\"path\":").append(Json.quote(f.path()))
+                    .append(",\"ms\":").append(millis(f.nanos()))
+                    .append(",\"bytes\":").append(f.bytes())
+                    .append(",\"outcome\":").append(Json.quote(camelCase(f.outcome().name())));
+            for (Step s : Step.values()) {
+                sb.append(",\"").append(s.name().toLowerCase()).append("Ms\":").append(millis(f.stepNanos()[s.ordinal()]));
+            }
+            sb.append('}');
+        }
+        return sb.append("]}").toString();
+    }
+
+    private void addPhase(String name, long wall, long cpu, long allocated) {
+        synchronized (phases) {
+            long[] t = phases.computeIfAbsent(name, k -> new long[4]);
+            t[0] += wall;
+            t[1] += cpu;
+            t[2] += allocated;
+            t[3]++;
+        }
+    }
+
+    private void addFile(String path, Outcome outcome, long bytes, long nanos, long[] stepNanos) {
+        outcomes[outcome.ordinal()].increment();
+        bytesRead.add(bytes);
+        long ms = nanos / 1_000_000;
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_MS.length && ms >= BUCKET_BOUNDS_MS[bucket]) bucket++;
+        histogram.incrementAndGet(bucket);
+        if (topFiles == 0) return;
+        synchronized (slowest) {
+            if (slowest.size() < topFiles) {
+                slowest.add(new FileTime(path, nanos, bytes, outcome, stepNanos));
+            } else if (slowest.peek().nanos() < nanos) {
+                slowest.poll();
+                slowest.add(new FileTime(path, nanos, bytes, outcome, stepNanos));
+            }
+        }
+    }
+
+    private static void appendTimes(StringBuilder sb, long wall, long cpu, long allocated) {
+        sb.append(",\"wallMs\":").append(millis(wall))
+                .append(",\"cpuMs\":").append(millis(cpu))
+                .append(",\"allocatedBytes\":").append(allocated)
+                .append('}');
+    }
+
+    private static String millis(long nanos) {
+        return Json.number(Math.round(nanos / 10_000.0) / 100.0);
+    }
+
+    private static String camelCase(String constant) {
+        StringBuilder sb = new StringBuilder();
+        boolean upper = false;
+        for (char c : constant.toCharArray()) {
+            if (c == '_') { upper = true; continue; }
+            sb.append(upper ? c : Character.toLowerCase(c));
+            upper = false;
+        }
+        return sb.toString();
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean)) return null;
+        if (bean.isThreadCpuTimeSupported()) bean.setThreadCpuTimeEnabled(true);
+        if (bean.isThreadAllocatedMemorySupported()) bean.setThreadAllocatedMemoryEnabled(true);
+        return bean;
+    }
+
+    private static long cpuTime() {
+        com.sun.management.ThreadMXBean threads = Threads.BEAN;
+        return threads != null && threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : 0;
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads = Threads.BEAN;
+        return threads != null && threads.isThreadAllocatedMemorySupported() ? threads.getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    /**
+     * A running phase; closing it records the phase and commits its JFR event. Callers hold it in
+     * a try-with-resources they never reference, so they suppress javac's "try" lint.
+     */
+    public static final class Phase implements AutoCloseable {
+        private final AnalysisProfiler profiler;
+        private final PhaseEvent event = new PhaseEvent();
+        private final long wall = System.nanoTime();
+        private final long cpu = cpuTime();
+        private final long allocated = allocatedBytes();
+
+        private Phase(AnalysisProfiler profiler, String name) {
+            this.profiler = profiler;
+            event.phase = name;
+            event.begin();
+        }
+
+        @Override
+        public void close() {
+            event.end();
+            long cpuDelta = cpuTime() - cpu;
+            long allocatedDelta = allocatedBytes() - allocated;
+            profiler.addPhase(event.phase, System.nanoTime() - wall, cpuDelta, allocatedDelta);
+            event.cpuTime = cpuDelta;
+            event.allocated = allocatedDelta;
+            event.commit();
+        }
+    }
+
+    /**
+     * Times the steps of one file on the thread analyzing it. {@link #NONE} is used when profiling
+     * is off, so the analyzer calls it unconditionally.
+     */
+    static final class FileTimer {
+        static final FileTimer NONE = new FileTimer(null, null);
+
+        private final AnalysisProfiler profiler;
+        private final FileEvent event;
+        private final long[] stepNanos = new long[Step.values().length];
+        private long startWall;
+        private long lastWall;
+        private long lastCpu;
+        private long lastAllocated;
+
+        private FileTimer(AnalysisProfiler profiler, String path) {
+            this.profiler = profiler;
+            if (profiler == null) {
+                event = null;
+                return;
+            }
+            event = new FileEvent();
+            event.path = path;
+            event.begin();
+            startWall = lastWall = System.nanoTime();
+            lastCpu = cpuTime();
+            lastAllocated = allocatedBytes();
+        }
+
+        /** Charges the time since the previous step (or the start) to {@code step}. */
+        void step(Step step) {
+            if (profiler == null) return;
+            long wall = System.nanoTime();
+            long cpu = cpuTime();
+            long allocated = allocatedBytes();
+            LongAdder[] totals = profiler.steps[step.ordinal()];
+            totals[0].add(wall - lastWall);
+            totals[1].add(cpu - lastCpu);
+            totals[2].add(allocated - lastAllocated);
+            stepNanos[step.ordinal()] += wall - lastWall;
+            lastWall = wall;
+            lastCpu = cpu;
+            lastAllocated = allocated;
+        }
+
+        void finish(Outcome outcome, long bytes) {
+            if (profiler == null) return;
+            event.end();
+            long nanos = System.nanoTime() - startWall;
+            profiler.addFile(event.path, outcome, bytes, nanos, stepNanos);
+            event.outcome = outcome.name();
+            event.bytes = bytes;
+            event.readTime = stepNanos[Step.READ.ordinal()];
+            event.parseTime = stepNanos[Step.PARSE.ordinal()];
+            event.metricsTime = stepNanos[Step.METRICS.ordinal()];
+            event.commit();
+        }
+    }
+
+    private record FileTime(String path, long nanos, long bytes, Outcome outcome, long[] stepNanos) {}
+
+    @Name("com.codeanalyzer.Phase")
+    @Label("Analysis Phase")
+    @Category("Code Analyzer")
+    @Description("One phase of an analysis run, measured on the thread that ran it")
+    @StackTrace(false)
+    static class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("CPU Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long cpuTime;
+
+        @Label("Allocated")
+        @DataAmount
+        long allocated;
+    }
+
+    @Name("com.codeanalyzer.FileAnalyzed")
+    @Label("File Analyzed")
+    @Category("Code Analyzer")
+    @Description("Analysis of one source file, with the time spent in each step")
+    @StackTrace(false)
+    static class FileEvent extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Outcome")
+        String outcome;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+
+        @Label("Read Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long readTime;
+
+        @Label("Parse Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long parseTime;
+
+        @Label("Metrics Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long metricsTime;
+    }
+}
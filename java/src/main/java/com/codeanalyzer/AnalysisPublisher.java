@@ -0,0 +1,162 @@
+package com.codeanalyzer;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Flow;
+
+/**
+ * Embeddable entry point that publishes a run's results as they complete rather than after the
+ * whole tree is done. Each subscription starts its own run of the directory on a daemon thread.
+ * The subscriber receives {@link FileAnalyzed} events in path order, a {@link Progress} event at
+ * most every {@value #PROGRESS_INTERVAL_MS} ms and once when discovery is finished, then a single
+ * {@link Completed} event with the duplicate groups, followed by {@code onComplete}.
+ *
+ * <p>Events are only sent against the subscriber's outstanding demand. While there is none, the
+ * run waits, and the pipeline stops taking new files once its few in-flight files are done, so
+ * a slow subscriber holds back the analysis instead of buffering results. Cancelling stops the
+ * walk and the pipeline; files already being parsed are finished but not delivered.
+ *
+ * <p>Coupling needs every file and is not resolved here: collect the delivered files and pass
+ * them to {@link CouplingAnalyzer#analyze}. The run's options and cache must not be shared with
+ * a concurrent run.
+ */
+public final class AnalysisPublisher implements Flow.Publisher<AnalysisPublisher.Event> {
+
+    public static final long PROGRESS_INTERVAL_MS = 100;
+
+    /** One item of a run: {@link FileAnalyzed}, {@link Progress} or {@link Completed}. */
+    public interface Event {}
+
+    public record FileAnalyzed(FileMetrics file) implements Event {}
+
+    /** {@code discovered} keeps growing until {@code discoveryDone}; it is then the run's total. */
+    public record Progress(int analyzed, int discovered, boolean discoveryDone) implements Event {}
+
+    /** Exact duplicate groups, plus near-miss groups when the options ask for them. */
+    public record Completed(int analyzed, List<DuplicateBlock> duplicates) implements Event {}
+
+    private final Path root;
+    private final AnalysisOptions options;
+    private final int minTokens;
+    private final double similarity;
+
+    public AnalysisPublisher(Path root, AnalysisOptions options) {
+        this(root, options, DuplicationDetector.DEFAULT_MIN_TOKENS, NearMissDetector.DEFAULT_THRESHOLD);
+    }
+
+    public AnalysisPublisher(Path root, AnalysisOptions options, int minTokens, double similarity) {
+        this.root = root.toAbsolutePath();
+        this.options = options;
+        this.minTokens = minTokens;
+        this.similarity = similarity;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Event> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        Run run = new Run(subscriber);
+        subscriber.onSubscribe(run);
+        Thread thread = new Thread(run, "code-analyzer-publisher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** The subscription and the thread delivering to it. Every signal is sent from that one thread. */
+    private final class Run implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super Event> subscriber;
+        private long demand;
+        private boolean cancelled;
+        /** Sent as onError once the run stops: a bad request(n), or what onNext threw. */
+        private Throwable failure;
+        private int analyzed;
+        private long lastProgress = System.nanoTime();
+
+        Run(Flow.Subscriber<? super Event> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public synchronized void request(long n) {
+            if (cancelled) return;
+            if (n <= 0) {
+                failure = new IllegalArgumentException("request(" + n + "): demand must be positive");
+                cancelled = true;
+            } else {
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            }
+            notifyAll();
+        }
+
+        @Override
+        public synchronized void cancel() {
+            cancelled = true;
+            notifyAll();
+        }
+
+        @Override
+        public void run() {
+            try {
+                DuplicationDetector.Index index = new DuplicationDetector.Index(minTokens);
+                NearMissDetector.Index nearMissIndex = options.isNearMiss() ? new NearMissDetector.Index(similarity) : null;
+                try (SourceDiscovery.Walk files = new SourceDiscovery(root, options).walk()) {
+                    JavaAnalyzer.runPipeline(files, root, options, file -> {
+                        index.add(file);
+                        if (nearMissIndex != null) nearMissIndex.add(file);
+                        analyzed++;
+                        emit(new FileAnalyzed(file));
+                        long now = System.nanoTime();
+                        if (now - lastProgress >= PROGRESS_INTERVAL_MS * 1_000_000) {
+                            lastProgress = now;
+                            emit(new Progress(analyzed, files.count(), false));
+                        }
+                    });
+                    emit(new Progress(analyzed, files.count(), true));
+                }
+                List<DuplicateBlock> duplicates = index.build();
+                if (nearMissIndex != null) duplicates.addAll(nearMissIndex.build());
+                emit(new Completed(analyzed, duplicates));
+                subscriber.onComplete();
+            } catch (CancellationException e) {
+                Throwable cause = failure();
+                if (cause != null) subscriber.onError(cause);
+            } catch (Throwable e) {
+                if (!isCancelled()) subscriber.onError(e);
+            }
+        }
+
+        /** Waits for demand, then delivers; throws CancellationException to stop the run. */
+        private void emit(Event event) {
+            synchronized (this) {
+                while (demand == 0 && !cancelled) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        cancelled = true;
+                    }
+                }
+                if (cancelled) throw new CancellationException();
+                if (demand != Long.MAX_VALUE) demand--;
+            }
+            try {
+                subscriber.onNext(event);
+            } catch (Throwable e) {
+                synchronized (this) {
+                    failure = e;
+                    cancelled = true;
+                }
+                throw new CancellationException();
+            }
+        }
+
+        private synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        private synchronized Throwable failure() {
+            return failure;
+        }
+    }
+}
@@ -9,6 +9,7 @@ public class AnalysisResult {
     private final List<DuplicateBlock> duplicates = new ArrayList<>();
     private String projectPath = "";
     private Instant analyzedAt = Instant.now();
+    private CouplingAnalyzer.Summary coupling;
 
     public List<FileMetrics> getFiles() { return files; }
     public List<DuplicateBlock> getDuplicates() { return duplicates; }
@@ -16,4 +17,7 @@ public class AnalysisResult {
     public void setProjectPath(String projectPath) { this.projectPath = projectPath; }
     public Instant getAnalyzedAt() { return analyzedAt; }
     public void setAnalyzedAt(Instant analyzedAt) { this.analyzedAt = analyzedAt; }
+    /** Package coupling and resolution totals; null unless coupling was analyzed. */
+    public CouplingAnalyzer.Summary getCoupling() { return coupling; }
+    public void setCoupling(CouplingAnalyzer.Summary coupling) { this.coupling = coupling; }
 }
@@ -0,0 +1,265 @@
+package com.codeanalyzer;
+
+import java.io.File;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Struct-of-arrays alternative to a list of {@link FileMetrics}. Per-file and per-method numbers
+ * live in parallel primitive arrays, and every string (path prefix, directory, file name, method
+ * name, signature) is stored once in a dictionary and referenced by index, so a million methods
+ * cost a few arrays rather than a million objects and their strings.
+ *
+ * <p>Files are read back through flyweight views: {@link #files()} and each view's
+ * {@code getMethods()} hand out small objects holding only the store and an index, created on
+ * access and never retained. Paths are reassembled from their parts on each call.
+ *
+ * <p>Not thread-safe; add from one thread (the analyzer's sink already runs on one).
+ */
+public final class CompactResultStore {
+
+    private final boolean keepTokens;
+    private final Dictionary strings = new Dictionary();
+
+    private int fileCount;
+    private int[] pathPrefixes = new int[16];
+    private int[] directories = new int[16];
+    private int[] fileNames = new int[16];
+    private int[] totalLines = new int[16];
+    private int[] codeLines = new int[16];
+    private int[] commentLines = new int[16];
+    private int[] fileComplexity = new int[16];
+    private double[] fileMaintainability = new double[16];
+    private int[] methodOffsets = new int[17];
+    private TokenSequence[] tokens = new TokenSequence[16];
+    /** Reasons for the few files with approximate metrics, by file index. */
+    private final Map<Integer, String> degraded = new HashMap<>();
+
+    private int methodCount;
+    private int[] methodNames = new int[64];
+    private int[] signatures = new int[64];
+    private int[] lineStarts = new int[64];
+    private int[] lineEnds = new int[64];
+    private int[] methodComplexity = new int[64];
+    private int[] linesOfCode = new int[64];
+    private double[] methodMaintainability = new double[64];
+
+    public CompactResultStore() {
+        this(true);
+    }
+
+    /**
+     * @param keepTokens whether to retain each file's token sequence for duplicate detection;
+     *                   pass false when duplicates are indexed as files arrive
+     */
+    public CompactResultStore(boolean keepTokens) {
+        this.keepTokens = keepTokens;
+    }
+
+    public void add(FileMetricsView file) {
+        if (strings.sealed()) throw new IllegalStateException("Store has been trimmed; no more files can be added");
+        ensureFileCapacity(fileCount + 1);
+        String filePath = file.getFilePath();
+        String relativePath = file.getRelativePath();
+        if (filePath.endsWith(relativePath)) {
+            pathPrefixes[fileCount] = strings.id(filePath.substring(0, filePath.length() - relativePath.length()));
+        } else {
+            // Not under the analyzed root as a plain prefix; keep the absolute path whole.
+            pathPrefixes[fileCount] = -1 - strings.id(filePath);
+        }
+        int slash = Math.max(relativePath.lastIndexOf('/'), relativePath.lastIndexOf(File.separatorChar));
+        directories[fileCount] = strings.id(relativePath.substring(0, slash + 1));
+        fileNames[fileCount] = strings.id(relativePath.substring(slash + 1));
+        totalLines[fileCount] = file.getTotalLines();
+        codeLines[fileCount] = file.getCodeLines();
+        commentLines[fileCount] = file.getCommentLines();
+        fileComplexity[fileCount] = file.getCyclomaticComplexity();
+        fileMaintainability[fileCount] = file.getMaintainabilityIndex();
+        if (keepTokens) tokens[fileCount] = file.getTokens();
+        if (file.getDegraded() != null) degraded.put(fileCount, file.getDegraded());
+
+        List<? extends MethodMetricsView> methods = file.getMethods();
+        ensureMethodCapacity(methodCount + methods.size());
+        for (MethodMetricsView m : methods) {
+            methodNames[methodCount] = strings.id(m.getName());
+            signatures[methodCount] = strings.id(m.getSignature());
+            lineStarts[methodCount] = m.getLineStart();
+            lineEnds[methodCount] = m.getLineEnd();
+            methodComplexity[methodCount] = m.getCyclomaticComplexity();
+            linesOfCode[methodCount] = m.getLinesOfCode();
+            methodMaintainability[methodCount] = m.getMaintainabilityIndex();
+            methodCount++;
+        }
+        fileCount++;
+        methodOffsets[fileCount] = methodCount;
+    }
+
+    /**
+     * Drops the dictionary's lookup table and shrinks every array to its used length. Call once all
+     * files are added; the store is read-only afterwards.
+     */
+    public void trim() {
+        strings.seal();
+        pathPrefixes = Arrays.copyOf(pathPrefixes, fileCount);
+        directories = Arrays.copyOf(directories, fileCount);
+        fileNames = Arrays.copyOf(fileNames, fileCount);
+        totalLines = Arrays.copyOf(totalLines, fileCount);
+        codeLines = Arrays.copyOf(codeLines, fileCount);
+        commentLines = Arrays.copyOf(commentLines, fileCount);
+        fileComplexity = Arrays.copyOf(fileComplexity, fileCount);
+        fileMaintainability = Arrays.copyOf(fileMaintainability, fileCount);
+        methodOffsets = Arrays.copyOf(methodOffsets, fileCount + 1);
+        tokens = Arrays.copyOf(tokens, fileCount);
+        methodNames = Arrays.copyOf(methodNames, methodCount);
+        signatures = Arrays.copyOf(signatures, methodCount);
+        lineStarts = Arrays.copyOf(lineStarts, methodCount);
+        lineEnds = Arrays.copyOf(lineEnds, methodCount);
+        methodComplexity = Arrays.copyOf(methodComplexity, methodCount);
+        linesOfCode = Arrays.copyOf(linesOfCode, methodCount);
+        methodMaintainability = Arrays.copyOf(methodMaintainability, methodCount);
+    }
+
+    public int fileCount() { return fileCount; }
+    public int methodCount() { return methodCount; }
+
+    /** Flyweight list over the stored files, in the order they were added. */
+    public List<FileMetricsView> files() {
+        return new AbstractList<>() {
+            @Override
+            public FileMetricsView get(int index) {
+                return file(index);
+            }
+
+            @Override
+            public int size() {
+                return fileCount;
+            }
+        };
+    }
+
+    public FileMetricsView file(int index) {
+        if (index < 0 || index >= fileCount) throw new IndexOutOfBoundsException(index);
+        return new FileView(index);
+    }
+
+    private void ensureFileCapacity(int capacity) {
+        if (capacity <= totalLines.length) return;
+        int size = totalLines.length * 2;
+        pathPrefixes = Arrays.copyOf(pathPrefixes, size);
+        directories = Arrays.copyOf(directories, size);
+        fileNames = Arrays.copyOf(fileNames, size);
+        totalLines = Arrays.copyOf(totalLines, size);
+        codeLines = Arrays.copyOf(codeLines, size);
+        commentLines = Arrays.copyOf(commentLines, size);
+        fileComplexity = Arrays.copyOf(fileComplexity, size);
+        fileMaintainability = Arrays.copyOf(fileMaintainability, size);
+        methodOffsets = Arrays.copyOf(methodOffsets, size + 1);
+        tokens = Arrays.copyOf(tokens, size);
+    }
+
+    private void ensureMethodCapacity(int capacity) {
+        if (capacity <= methodNames.length) return;
+        int size = Math.max(capacity, methodNames.length * 2);
+        methodNames = Arrays.copyOf(methodNames, size);
+        signatures = Arrays.copyOf(signatures, size);
+        lineStarts = Arrays.copyOf(lineStarts, size);
+        lineEnds = Arrays.copyOf(lineEnds, size);
+        methodComplexity = Arrays.copyOf(methodComplexity, size);
+        linesOfCode = Arrays.copyOf(linesOfCode, size);
+        methodMaintainability = Arrays.copyOf(methodMaintainability, size);
+    }
+
+    private final class FileView implements FileMetricsView {
+        private final int index;
+
+        FileView(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public String getFilePath() {
+            int prefix = pathPrefixes[index];
+            if (prefix < 0) return strings.get(-1 - prefix);
+            return strings.get(prefix) + getRelativePath();
+        }
+
+        @Override
+        public String getRelativePath() {
+            return strings.get(directories[index]) + strings.get(fileNames[index]);
+        }
+
+        @Override
+        public List<MethodMetricsView> getMethods() {
+            int from = methodOffsets[index];
+            int count = methodOffsets[index + 1] - from;
+            return new AbstractList<>() {
+                @Override
+                public MethodMetricsView get(int i) {
+                    if (i < 0 || i >= count) throw new IndexOutOfBoundsException(i);
+                    return new MethodView(from + i);
+                }
+
+                @Override
+                public int size() {
+                    return count;
+                }
+            };
+        }
+
+        @Override public int getTotalLines() { return totalLines[index]; }
+        @Override public int getCodeLines() { return codeLines[index]; }
+        @Override public int getCommentLines() { return commentLines[index]; }
+        @Override public double getMaintainabilityIndex() { return fileMaintainability[index]; }
+        @Override public int getCyclomaticComplexity() { return fileComplexity[index]; }
+        @Override public TokenSequence getTokens() { return tokens[index]; }
+        @Override public String getDegraded() { return degraded.get(index); }
+    }
+
+    private final class MethodView implements MethodMetricsView {
+        private final int index;
+
+        MethodView(int index) {
+            this.index = index;
+        }
+
+        @Override public String getName() { return strings.get(methodNames[index]); }
+        @Override public String getSignature() { return strings.get(signatures[index]); }
+        @Override public int getLineStart() { return lineStarts[index]; }
+        @Override public int getLineEnd() { return lineEnds[index]; }
+        @Override public int getCyclomaticComplexity() { return methodComplexity[index]; }
+        @Override public int getLinesOfCode() { return linesOfCode[index]; }
+        @Override public double getMaintainabilityIndex() { return methodMaintainability[index]; }
+    }
+
+    /** Each distinct string stored once; the lookup map is only needed while adding. */
+    private static final class Dictionary {
+        private Map<String, Integer> ids = new HashMap<>();
+        private String[] values = new String[64];
+        private int size;
+
+        int id(String value) {
+            Integer id = ids.get(value);
+            if (id != null) return id;
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size] = value;
+            ids.put(value, size);
+            return size++;
+        }
+
+        String get(int id) {
+            return values[id];
+        }
+
+        boolean sealed() {
+            return ids == null;
+        }
+
+        void seal() {
+            ids = null;
+            values = Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.codeanalyzer;
+
+import com.github.javaparser.resolution.TypeSolver;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.ReflectionTypeSolver;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Resolves the type references collected by {@link CouplingVisitor} and computes coupling per type
+ * (efferent Ce, afferent Ca, CBO) and per package (Ca, Ce, instability).
+ *
+ * <p>Names are resolved the way javac scopes them: types declared in the same file, single-type
+ * imports, the file's own package, on-demand imports, then {@code java.lang}. Whether a candidate
+ * exists is answered by the set of types declared in the analyzed files and, for everything else,
+ * by a JRE {@link ReflectionTypeSolver}. Those answers are memoized in one concurrent map shared by
+ * every file, so each distinct name costs a lookup once per run however many files use it. Files
+ * are resolved in parallel, each against a time budget; a file that runs out keeps what it
+ * resolved so far and its types are marked partial.
+ *
+ * <p>{@code java.lang} types (String, Object, boxed primitives, ...) are used everywhere and are
+ * not counted, unless the analyzed sources declare them. Names that resolve to nothing (usually
+ * library types reached through an on-demand import) still count as a dependency, under the name
+ * as written.
+ */
+public final class CouplingAnalyzer {
+
+    public static final long DEFAULT_BUDGET_MS = 50;
+
+    /** Ca: types outside the package depending on it; Ce: types outside it that it depends on. */
+    public record PackageCoupling(String name, int types, int afferent, int efferent) {
+        public double instability() {
+            return afferent + efferent == 0 ? 0 : (double) efferent / (afferent + efferent);
+        }
+    }
+
+    public record Summary(List<PackageCoupling> packages, int types, int filesOverBudget, long elapsedMs) {}
+
+    private final Set<String> projectTypes = new HashSet<>();
+    private final Map<String, Boolean> knownTypes = new ConcurrentHashMap<>();
+    private final TypeSolver jre = new ReflectionTypeSolver(true);
+    private final long budgetNanos;
+
+    private CouplingAnalyzer(long budgetMs) {
+        this.budgetNanos = budgetMs * 1_000_000;
+    }
+
+    /**
+     * Resolves every file's references and fills in the counts on each {@link TypeCoupling}. Files
+     * without collected types are skipped.
+     */
+    public static Summary analyze(List<FileMetrics> files, int threads, long budgetMs) throws Exception {
+        long started = System.nanoTime();
+        CouplingAnalyzer analyzer = new CouplingAnalyzer(budgetMs);
+        List<FileMetrics> withTypes = new ArrayList<>();
+        for (FileMetrics f : files) {
+            if (f.getTypes() == null) continue;
+            withTypes.add(f);
+            for (TypeCoupling t : f.getTypes()) analyzer.projectTypes.add(t.getName());
+        }
+
+        int overBudget = 0;
+        if (threads <= 1 || withTypes.size() < 2) {
+            for (FileMetrics f : withTypes) if (!analyzer.resolve(f)) overBudget++;
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                List<Future<Boolean>> results = new ArrayList<>();
+                for (FileMetrics f : withTypes) results.add(pool.submit(() -> analyzer.resolve(f)));
+                for (Future<Boolean> r : results) if (!r.get()) overBudget++;
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ex ? ex : e;
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+
+        List<PackageCoupling> packages = count(withTypes);
+        return new Summary(packages, analyzer.projectTypes.size(), overBudget, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    /** Resolves one file's references; returns false if it ran out of budget. */
+    private boolean resolve(FileMetrics file) {
+        long deadline = System.nanoTime() + budgetNanos;
+        String packagePrefix = file.getPackageName().isEmpty() ? "" : file.getPackageName() + ".";
+        Map<String, String> declared = new HashMap<>();
+        for (TypeCoupling t : file.getTypes()) {
+            declared.putIfAbsent(t.getName().substring(t.getName().lastIndexOf('.') + 1), t.getName());
+        }
+        Map<String, String> singleImports = new HashMap<>();
+        List<String> onDemand = new ArrayList<>();
+        for (String i : file.getImports()) {
+            if (i.endsWith(".*")) onDemand.add(i.substring(0, i.length() - 1));
+            else singleImports.put(i.substring(i.lastIndexOf('.') + 1), i);
+        }
+
+        boolean complete = true;
+        for (TypeCoupling type : file.getTypes()) {
+            Set<String> dependencies = new TreeSet<>();
+            for (String reference : type.getReferences()) {
+                if (complete && System.nanoTime() > deadline) complete = false;
+                if (!complete) break;
+                String resolved = resolve(reference, packagePrefix, declared, singleImports, onDemand);
+                if (resolved == null || resolved.equals(type.getName())) continue;
+                if (!isJavaLang(resolved) || projectTypes.contains(resolved)) dependencies.add(resolved);
+            }
+            type.setDependencies(dependencies);
+            type.setPartial(!complete);
+        }
+        return complete;
+    }
+
+    private String resolve(String reference, String packagePrefix, Map<String, String> declared,
+                           Map<String, String> singleImports, List<String> onDemand) {
+        boolean optional = reference.startsWith("?");
+        String name = optional ? reference.substring(1) : reference;
+        int dot = name.indexOf('.');
+        String first = dot < 0 ? name : name.substring(0, dot);
+        String rest = dot < 0 ? "" : name.substring(dot);
+        // A lower-case first segment is a package: the name is already qualified.
+        if (dot >= 0 && Character.isLowerCase(first.charAt(0))) return name;
+
+        String base = declared.get(first);
+        if (base == null) base = singleImports.get(first);
+        if (base == null && isType(packagePrefix + first)) base = packagePrefix + first;
+        if (base == null) {
+            for (String prefix : onDemand) {
+                if (isType(prefix + first)) {
+                    base = prefix + first;
+                    break;
+                }
+            }
+        }
+        if (base == null && isType("java.lang." + first)) base = "java.lang." + first;
+        if (base == null) return optional ? null : name;
+        return base + rest;
+    }
+
+    private boolean isType(String qualifiedName) {
+        if (projectTypes.contains(qualifiedName)) return true;
+        return knownTypes.computeIfAbsent(qualifiedName, n -> {
+            try {
+                return jre.tryToSolveType(n).isSolved();
+            } catch (RuntimeException | LinkageError e) {
+                return false;
+            }
+        });
+    }
+
+    private static boolean isJavaLang(String name) {
+        return name.startsWith("java.lang.") && name.indexOf('.', "java.lang.".length()) < 0;
+    }
+
+    /** Fills in Ce, Ca and CBO per type and returns the package totals, sorted by name. */
+    private static List<PackageCoupling> count(List<FileMetrics> files) {
+        Map<String, TypeCoupling> byName = new HashMap<>();
+        Map<String, String> packageOf = new HashMap<>();
+        for (FileMetrics f : files) {
+            for (TypeCoupling t : f.getTypes()) {
+                byName.put(t.getName(), t);
+                packageOf.put(t.getName(), f.getPackageName());
+            }
+        }
+        Map<String, Set<String>> dependents = new HashMap<>();
+        for (TypeCoupling t : byName.values()) {
+            for (String d : t.getDependencies()) {
+                if (byName.containsKey(d)) dependents.computeIfAbsent(d, k -> new HashSet<>()).add(t.getName());
+            }
+        }
+
+        Map<String, int[]> typeCounts = new TreeMap<>();
+        Map<String, Set<String>> packageAfferent = new HashMap<>();
+        Map<String, Set<String>> packageEfferent = new HashMap<>();
+        for (TypeCoupling t : byName.values()) {
+            String pkg = packageOf.get(t.getName());
+            Set<String> in = dependents.getOrDefault(t.getName(), Set.of());
+            Set<String> coupled = new HashSet<>(t.getDependencies());
+            coupled.addAll(in);
+            t.setEfferent(t.getDependencies().size());
+            t.setAfferent(in.size());
+            t.setCbo(coupled.size());
+            typeCounts.computeIfAbsent(pkg, k -> new int[1])[0]++;
+            for (String d : t.getDependencies()) {
+                String dependencyPackage = packageOf.get(d);
+                if (pkg.equals(dependencyPackage)) continue;
+                packageEfferent.computeIfAbsent(pkg, k -> new HashSet<>()).add(d);
+                if (dependencyPackage != null) packageAfferent.computeIfAbsent(dependencyPackage, k -> new HashSet<>()).add(t.getName());
+            }
+        }
+        List<PackageCoupling> packages = new ArrayList<>();
+        for (Map.Entry<String, int[]> e : typeCounts.entrySet()) {
+            packages.add(new PackageCoupling(e.getKey(), e.getValue()[0],
+                    packageAfferent.getOrDefault(e.getKey(), Set.of()).size(),
+                    packageEfferent.getOrDefault(e.getKey(), Set.of()).size()));
+        }
+        return packages;
+    }
+}
@@ -0,0 +1,152 @@
+package com.codeanalyzer;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.ImportDeclaration;
+import com.github.javaparser.ast.PackageDeclaration;
+import com.github.javaparser.ast.body.*;
+import com.github.javaparser.ast.comments.BlockComment;
+import com.github.javaparser.ast.comments.JavadocComment;
+import com.github.javaparser.ast.comments.LineComment;
+import com.github.javaparser.ast.expr.*;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.type.TypeParameter;
+import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
+
+import java.util.*;
+
+/**
+ * Collects, for every named type declared in a compilation unit, the names of the types it refers
+ * to: field, parameter and local variable types, supertypes, type arguments, casts, instantiations,
+ * annotations, and the {@code Foo} in static accesses like {@code Foo.bar()}. Names are kept as
+ * written; resolving them needs the whole project and is left to {@link CouplingAnalyzer}.
+ * Local and anonymous classes count towards their enclosing named type.
+ */
+final class CouplingVisitor extends VoidVisitorAdapter<Void> {
+
+    private final String packagePrefix;
+    private final Set<String> typeParameters = new HashSet<>();
+    private final List<TypeCoupling> types = new ArrayList<>();
+    private final Deque<TypeCoupling> enclosing = new ArrayDeque<>();
+    private final Deque<Set<String>> references = new ArrayDeque<>();
+
+    private CouplingVisitor(String packageName) {
+        this.packagePrefix = packageName.isEmpty() ? "" : packageName + ".";
+    }
+
+    /** Sets the package, imports and declared types of {@code file} from {@code cu}. */
+    static void collect(CompilationUnit cu, FileMetrics file) {
+        String packageName = cu.getPackageDeclaration().map(p -> p.getNameAsString()).orElse("");
+        List<String> imports = new ArrayList<>();
+        for (ImportDeclaration i : cu.getImports()) {
+            if (!i.isStatic()) imports.add(i.getNameAsString() + (i.isAsterisk() ? ".*" : ""));
+        }
+        CouplingVisitor visitor = new CouplingVisitor(packageName);
+        for (TypeParameter p : cu.findAll(TypeParameter.class)) visitor.typeParameters.add(p.getNameAsString());
+        cu.accept(visitor, null);
+        file.setPackageName(packageName);
+        file.setImports(imports);
+        file.setTypes(visitor.types);
+    }
+
+    @Override
+    public void visit(ClassOrInterfaceDeclaration n, Void arg) {
+        if (n.isLocalClassDeclaration()) { super.visit(n, arg); return; }
+        enter(n);
+        super.visit(n, arg);
+        exit();
+    }
+
+    @Override
+    public void visit(RecordDeclaration n, Void arg) {
+        if (n.isLocalRecordDeclaration()) { super.visit(n, arg); return; }
+        enter(n);
+        super.visit(n, arg);
+        exit();
+    }
+
+    @Override
+    public void visit(EnumDeclaration n, Void arg) {
+        enter(n);
+        super.visit(n, arg);
+        exit();
+    }
+
+    @Override
+    public void visit(AnnotationDeclaration n, Void arg) {
+        enter(n);
+        super.visit(n, arg);
+        exit();
+    }
+
+    @Override
+    public void visit(ClassOrInterfaceType n, Void arg) {
+        // The scope of a qualified name is part of the name, not a reference of its own.
+        reference(n.getNameWithScope());
+        n.getTypeArguments().ifPresent(args -> args.forEach(a -> a.accept(this, arg)));
+        n.getAnnotations().forEach(a -> a.accept(this, arg));
+    }
+
+    @Override
+    public void visit(MarkerAnnotationExpr n, Void arg) {
+        reference(n.getNameAsString());
+    }
+
+    @Override
+    public void visit(SingleMemberAnnotationExpr n, Void arg) {
+        reference(n.getNameAsString());
+        n.getMemberValue().accept(this, arg);
+    }
+
+    @Override
+    public void visit(NormalAnnotationExpr n, Void arg) {
+        reference(n.getNameAsString());
+        n.getPairs().forEach(p -> p.getValue().accept(this, arg));
+    }
+
+    @Override
+    public void visit(MethodCallExpr n, Void arg) {
+        n.getScope().ifPresent(this::staticScope);
+        super.visit(n, arg);
+    }
+
+    @Override
+    public void visit(FieldAccessExpr n, Void arg) {
+        staticScope(n.getScope());
+        super.visit(n, arg);
+    }
+
+    @Override public void visit(ImportDeclaration n, Void arg) { }
+    @Override public void visit(PackageDeclaration n, Void arg) { }
+    @Override public void visit(JavadocComment n, Void arg) { }
+    @Override public void visit(BlockComment n, Void arg) { }
+    @Override public void visit(LineComment n, Void arg) { }
+
+    /** {@code Foo.bar()} may name a type or a variable; it only counts if it resolves to a type. */
+    private void staticScope(Expression scope) {
+        if (scope instanceof NameExpr name) {
+            String identifier = name.getNameAsString();
+            if (Character.isUpperCase(identifier.charAt(0))) reference("?" + identifier);
+        }
+    }
+
+    private void reference(String name) {
+        Set<String> current = references.peek();
+        if (current == null) return;
+        int dot = name.indexOf('.');
+        String first = name.startsWith("?") ? name.substring(1) : dot < 0 ? name : name.substring(0, dot);
+        if (!typeParameters.contains(first)) current.add(name);
+    }
+
+    private void enter(TypeDeclaration<?> n) {
+        TypeCoupling outer = enclosing.peek();
+        String name = (outer != null ? outer.getName() + "." : packagePrefix) + n.getNameAsString();
+        TypeCoupling type = new TypeCoupling(name, n.getRange().map(r -> r.begin.line).orElse(0));
+        types.add(type);
+        enclosing.push(type);
+        references.push(new LinkedHashSet<>());
+    }
+
+    private void exit() {
+        enclosing.pop().getReferences().addAll(references.pop());
+    }
+}
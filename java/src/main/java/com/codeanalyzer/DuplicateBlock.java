@@ -7,6 +7,7 @@ public class DuplicateBlock {
     private final String normalizedHash;
     private final List<DuplicateOccurrence> occurrences = new ArrayList<>();
     private int tokenCount;
+    private double similarity = 1.0;
 
     public DuplicateBlock(String normalizedHash) {
         this.normalizedHash = normalizedHash;
@@ -16,4 +17,7 @@ public class DuplicateBlock {
     public List<DuplicateOccurrence> getOccurrences() { return occurrences; }
     public int getTokenCount() { return tokenCount; }
     public void setTokenCount(int tokenCount) { this.tokenCount = tokenCount; }
+    /** 1 for exact token clones; the verified Jaccard similarity for near-miss groups. */
+    public double getSimilarity() { return similarity; }
+    public void setSimilarity(double similarity) { this.similarity = similarity; }
 }
@@ -1,42 +1,585 @@
 package com.codeanalyzer;
 
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+/**
+ * Token-level clone detection. Each file's normalized token stream is hashed with a Rabin-Karp
+ * rolling hash over windows of {@code minTokens} tokens; windows sharing a hash are verified
+ * token by token and extended to maximal matches, and matches with identical content are
+ * grouped into one {@link DuplicateBlock}. Work is linear in the total token count plus the
+ * length of the reported clones.
+ *
+ * <p>With a memory limit the window index is not held in memory: see {@link Index#Index(int, long)}.
+ */
 public final class DuplicationDetector {
 
+    public static final int DEFAULT_MIN_TOKENS = 50;
     private static final int MIN_OCCURRENCES = 2;
+    /** Earlier occurrences in a hash chain each one is compared with; bounds the work on very repetitive code. */
+    private static final int MAX_CHAIN_PARTNERS = 64;
+    private static final long BASE = 0x100000001B3L;
 
-    public static List<DuplicateBlock> detectDuplicates(List<FileMetrics> allFiles) {
-        Map<String, List<Occurrence>> byHash = new HashMap<>();
-        for (FileMetrics file : allFiles) {
-            for (MethodMetrics m : file.getMethods()) {
-                if (m.getLinesOfCode() < 5) continue;
-                String fingerprint = m.getSignature() + "|" + m.getLinesOfCode() + "|" + m.getCyclomaticComplexity();
-                String hash = Integer.toHexString(fingerprint.hashCode());
-                String preview = m.getSignature() + " (" + m.getLinesOfCode() + " lines, CC=" + m.getCyclomaticComplexity() + ")";
-                byHash.computeIfAbsent(hash, k -> new ArrayList<>())
-                        .add(new Occurrence(file.getFilePath(), m.getLineStart(), m.getLineEnd(), preview));
-            }
-        }
-        List<DuplicateBlock> result = new ArrayList<>();
-        for (Map.Entry<String, List<Occurrence>> e : byHash.entrySet()) {
-            if (e.getValue().size() < MIN_OCCURRENCES) continue;
-            long distinctFiles = e.getValue().stream().map(o -> o.filePath).distinct().count();
-            if (distinctFiles < 2) continue;
-            DuplicateBlock block = new DuplicateBlock(e.getKey());
-            block.setTokenCount(e.getValue().get(0).preview.length());
-            for (Occurrence o : e.getValue()) {
-                DuplicateOccurrence doc = new DuplicateOccurrence(o.filePath);
-                doc.setLineStart(o.lineStart);
-                doc.setLineEnd(o.lineEnd);
-                doc.setPreview(o.preview);
-                block.getOccurrences().add(doc);
-            }
-            result.add(block);
-        }
-        return result;
-    }
-
-    private record Occurrence(String filePath, int lineStart, int lineEnd, String preview) {}
+    public static List<DuplicateBlock> detectDuplicates(List<? extends FileMetricsView> allFiles) {
+        return detectDuplicates(allFiles, DEFAULT_MIN_TOKENS);
+    }
+
+    public static List<DuplicateBlock> detectDuplicates(List<? extends FileMetricsView> allFiles, int minTokens) {
+        return detectDuplicates(allFiles, minTokens, 0);
+    }
+
+    public static List<DuplicateBlock> detectDuplicates(List<? extends FileMetricsView> allFiles, int minTokens, long memoryLimitBytes) {
+        Index index = new Index(minTokens, memoryLimitBytes);
+        for (FileMetricsView file : allFiles) index.add(file);
+        return index.build();
+    }
+
+    /**
+     * Accumulates token streams one file at a time, so a streaming run only retains the tokens
+     * and method boundaries of each file rather than every FileMetrics.
+     *
+     * <p>An in-memory index can also stay resident across builds: after the first {@link #build()}
+     * the window index is kept, {@link #add} of a path already indexed replaces that file, and
+     * {@link #remove} drops one. Dropped files' windows stay in the chains and are skipped until
+     * they outnumber the live ones, when the next build re-indexes from the live files.
+     */
+    public static final class Index {
+        private final int minTokens;
+        // A null entry is a dropped file, so the slots of the others stay valid.
+        private final List<IndexedFile> files = new ArrayList<>();
+        private final Map<String, Integer> slots = new HashMap<>();
+        private final Spill spill;
+        private LongChainIndex windowIndex;
+        private int liveWindows;
+        private int deadWindows;
+
+        public Index() {
+            this(DEFAULT_MIN_TOKENS);
+        }
+
+        public Index(int minTokens) {
+            this(minTokens, 0);
+        }
+
+        /**
+         * With {@code memoryLimitBytes} > 0 the index is kept on disk, for trees whose window index
+         * would not fit in the heap. Each window's fingerprint becomes a fixed-width record; records
+         * are buffered up to the limit, sorted and written out as a run file, and {@link #build()}
+         * merges the runs, pairing equal fingerprints as they stream past. Token streams are
+         * written to a spill file and read back memory-mapped, outside the heap. Only files, the
+         * verified matches and the groups that survive stay in memory. Spill files go to a
+         * directory under {@code java.io.tmpdir} that {@link #build()} deletes.
+         */
+        public Index(int minTokens, long memoryLimitBytes) {
+            this.minTokens = Math.max(1, minTokens);
+            this.spill = memoryLimitBytes > 0 ? new Spill(memoryLimitBytes) : null;
+        }
+
+        public void add(FileMetricsView file) {
+            if (spill == null) remove(file.getFilePath());
+            TokenSequence tokens = file.getTokens();
+            if (tokens == null || tokens.size() < minTokens) return;
+            List<? extends MethodMetricsView> methods = file.getMethods();
+            int[] starts = new int[methods.size()];
+            int[] ends = new int[methods.size()];
+            String[] names = new String[methods.size()];
+            for (int i = 0; i < methods.size(); i++) {
+                starts[i] = methods.get(i).getLineStart();
+                ends[i] = methods.get(i).getLineEnd();
+                names[i] = methods.get(i).getName();
+            }
+            int slot = files.size();
+            Tokens stored = spill != null ? spill.add(slot, tokens) : new HeapTokens(tokens);
+            files.add(new IndexedFile(file.getFilePath(), stored, starts, ends, names));
+            if (spill != null) return;
+            slots.put(file.getFilePath(), slot);
+            liveWindows += tokens.size() - minTokens + 1;
+            if (windowIndex != null) windows(stored, slot, windowIndex::add);
+        }
+
+        /** Drops a file added earlier, if it was; not supported when the index is spilled. */
+        public void remove(String filePath) {
+            if (spill != null) throw new IllegalStateException("Files cannot be removed from a spilled index");
+            Integer slot = slots.remove(filePath);
+            if (slot == null) return;
+            int windows = files.set(slot, null).tokens.size() - minTokens + 1;
+            liveWindows -= windows;
+            deadWindows += windows;
+        }
+
+        public List<DuplicateBlock> build() {
+            if (spill != null) return spill.build();
+            if (windowIndex == null || deadWindows > liveWindows) {
+                files.removeIf(Objects::isNull);
+                slots.clear();
+                for (int f = 0; f < files.size(); f++) slots.put(files.get(f).path, f);
+                deadWindows = 0;
+                windowIndex = new LongChainIndex(liveWindows);
+                for (int f = 0; f < files.size(); f++) windows(files.get(f).tokens, f, windowIndex::add);
+            }
+            return group(findMatches(windowIndex));
+        }
+
+        /** Passes the rolling hash of every window of {@code minTokens} tokens to {@code sink}. */
+        private void windows(Tokens t, int file, WindowSink sink) {
+            long power = 1;
+            for (int i = 1; i < minTokens; i++) power *= BASE;
+            long h = 0;
+            for (int i = 0; i < minTokens; i++) h = h * BASE + t.kind(i);
+            sink.accept(h, file, 0);
+            for (int i = 1; i + minTokens <= t.size(); i++) {
+                h = (h - t.kind(i - 1) * power) * BASE + t.kind(i + minTokens - 1);
+                sink.accept(h, file, i);
+            }
+        }
+
+        /** Feeds every hash chain, oldest entry first, through a {@link Chain}. */
+        private List<Match> findMatches(LongChainIndex index) {
+            List<Match> matches = new ArrayList<>();
+            Chain chain = new Chain(matches);
+            int[] chainFiles = new int[16];
+            int[] chainPositions = new int[16];
+            for (int slot = 0; slot < index.capacity(); slot++) {
+                int entry = index.head(slot);
+                if (entry < 0 || index.next(entry) < 0) continue;
+                int length = 0;
+                for (int e = entry; e >= 0; e = index.next(e)) {
+                    if (files.get(index.file(e)) == null) continue;
+                    if (length == chainFiles.length) {
+                        chainFiles = Arrays.copyOf(chainFiles, length * 2);
+                        chainPositions = Arrays.copyOf(chainPositions, length * 2);
+                    }
+                    chainFiles[length] = index.file(e);
+                    chainPositions[length] = index.position(e);
+                    length++;
+                }
+                // Entries are chained newest first; walk oldest first so pairs follow file order.
+                chain.reset();
+                for (int j = length - 1; j >= 0; j--) chain.add(chainFiles[j], chainPositions[j]);
+            }
+            return matches;
+        }
+
+        /**
+         * Compares each occurrence of one window hash with the earlier ones, up to
+         * {@link #MAX_CHAIN_PARTNERS} back, so a copy that shares only the start of a clone does not
+         * hide the rest of it from the copies on either side. Only pairs whose preceding tokens
+         * differ start a match, which keeps every reported clone maximal; {@link #group} joins the
+         * pairs of three or more copies.
+         */
+        private final class Chain {
+            private final List<Match> matches;
+            private final int[] files = new int[MAX_CHAIN_PARTNERS];
+            private final int[] positions = new int[MAX_CHAIN_PARTNERS];
+            private int count;
+
+            Chain(List<Match> matches) {
+                this.matches = matches;
+            }
+
+            void reset() {
+                count = 0;
+            }
+
+            void add(int file, int position) {
+                for (int k = 1; k <= Math.min(count, MAX_CHAIN_PARTNERS); k++) {
+                    int earlier = (count - k) % MAX_CHAIN_PARTNERS;
+                    Match m = match(files[earlier], positions[earlier], file, position);
+                    if (m != null) matches.add(m);
+                }
+                files[count % MAX_CHAIN_PARTNERS] = file;
+                positions[count % MAX_CHAIN_PARTNERS] = position;
+                count++;
+            }
+        }
+
+        private Match match(int fileA, int posA, int fileB, int posB) {
+            Tokens a = files.get(fileA).tokens;
+            Tokens b = files.get(fileB).tokens;
+            if (posA > 0 && posB > 0 && a.kind(posA - 1) == b.kind(posB - 1)) return null;
+            int limit = Math.min(a.size() - posA, b.size() - posB);
+            if (fileA == fileB) limit = Math.min(limit, Math.abs(posB - posA));
+            int length = 0;
+            long contentHash = 0;
+            while (length < limit && a.kind(posA + length) == b.kind(posB + length)) {
+                contentHash = contentHash * BASE + a.kind(posA + length);
+                length++;
+            }
+            if (length < minTokens) return null;
+            return new Match(contentHash, length, fileA, posA, fileB, posB);
+        }
+
+        private List<DuplicateBlock> group(List<Match> matches) {
+            Map<CloneKey, SortedSet<Location>> groups = new HashMap<>();
+            for (Match m : matches) {
+                SortedSet<Location> locations = groups.computeIfAbsent(new CloneKey(m.contentHash, m.length), k -> new TreeSet<>());
+                locations.add(new Location(m.fileA, m.posA));
+                locations.add(new Location(m.fileB, m.posB));
+            }
+            List<DuplicateBlock> result = new ArrayList<>();
+            for (Map.Entry<CloneKey, SortedSet<Location>> e : groups.entrySet()) {
+                if (e.getValue().size() < MIN_OCCURRENCES) continue;
+                long distinctFiles = e.getValue().stream().mapToInt(Location::file).distinct().count();
+                if (distinctFiles < 2) continue;
+                int length = e.getKey().length;
+                DuplicateBlock block = new DuplicateBlock(String.format("%016x", e.getKey().contentHash));
+                block.setTokenCount(length);
+                for (Location loc : e.getValue()) {
+                    IndexedFile file = files.get(loc.file);
+                    DuplicateOccurrence occ = new DuplicateOccurrence(file.path);
+                    occ.setLineStart(file.tokens.line(loc.position));
+                    occ.setLineEnd(file.tokens.line(loc.position + length - 1));
+                    occ.setPreview(file.describe(occ.getLineStart(), occ.getLineEnd(), length));
+                    block.getOccurrences().add(occ);
+                }
+                result.add(block);
+            }
+            result.sort(Comparator.comparingInt(DuplicateBlock::getTokenCount).reversed()
+                    .thenComparing(b -> b.getOccurrences().get(0).getFilePath())
+                    .thenComparingInt(b -> b.getOccurrences().get(0).getLineStart()));
+            return result;
+        }
+
+        /**
+         * The on-disk index. A record is the window hash and {@code file << 32 | position}, 16
+         * bytes. Files are added in order and their windows in position order, so a stable sort by
+         * hash keeps equal hashes in file order, the same order the in-memory chains are walked in;
+         * runs are merged oldest first on ties for the same reason.
+         */
+        private final class Spill {
+            private static final long SEGMENT_BYTES = 1L << 30;
+            private static final int MIN_RUN_RECORDS = 1 << 16;
+
+            private final int runRecords;
+            private long[] hashes;
+            private long[] refs;
+            private int buffered;
+            private final List<Path> runs = new ArrayList<>();
+            private final List<Path> segments = new ArrayList<>();
+            private Path dir;
+            private DataOutputStream tokenOut;
+            private long segmentSize;
+
+            Spill(long memoryLimitBytes) {
+                // Two record arrays plus the sort's two scratch arrays: 32 bytes per record.
+                this.runRecords = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(MIN_RUN_RECORDS, memoryLimitBytes / 32));
+            }
+
+            /** Writes the file's tokens out and buffers its window records; returns where the tokens went. */
+            Tokens add(int file, TokenSequence tokens) {
+                try {
+                    if (dir == null) dir = Files.createTempDirectory("code-analyzer-duplicates");
+                    int size = tokens.size();
+                    if (tokenOut == null || segmentSize + 6L * size > SEGMENT_BYTES) nextSegment();
+                    SpilledTokens spilled = new SpilledTokens(segments.size() - 1, segmentSize, size);
+                    for (int i = 0; i < size; i++) tokenOut.writeShort(tokens.kind(i));
+                    for (int i = 0; i < size; i++) tokenOut.writeInt(tokens.line(i));
+                    segmentSize += 6L * size;
+                    windows(new HeapTokens(tokens), file, this::record);
+                    return spilled;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            private void nextSegment() throws IOException {
+                if (tokenOut != null) tokenOut.close();
+                Path segment = dir.resolve("tokens-" + segments.size());
+                segments.add(segment);
+                tokenOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(segment), 1 << 16));
+                segmentSize = 0;
+            }
+
+            private void record(long hash, int file, int position) {
+                if (hashes == null) {
+                    hashes = new long[runRecords];
+                    refs = new long[runRecords];
+                }
+                hashes[buffered] = hash;
+                refs[buffered] = (long) file << 32 | position;
+                if (++buffered == runRecords) writeRun();
+            }
+
+            private void writeRun() {
+                sortByHash(hashes, refs, buffered);
+                Path run = dir.resolve("run-" + runs.size());
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 1 << 16))) {
+                    for (int i = 0; i < buffered; i++) {
+                        out.writeLong(hashes[i]);
+                        out.writeLong(refs[i]);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                runs.add(run);
+                buffered = 0;
+            }
+
+            List<DuplicateBlock> build() {
+                if (dir == null) return new ArrayList<>();
+                try {
+                    if (buffered > 0) writeRun();
+                    hashes = null;
+                    refs = null;
+                    tokenOut.close();
+                    mapTokens();
+                    return group(mergeRuns());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    delete();
+                }
+            }
+
+            private void mapTokens() throws IOException {
+                ByteBuffer[] mapped = new ByteBuffer[segments.size()];
+                for (int i = 0; i < mapped.length; i++) {
+                    try (FileChannel channel = FileChannel.open(segments.get(i), StandardOpenOption.READ)) {
+                        mapped[i] = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                    }
+                }
+                for (int f = 0; f < files.size(); f++) {
+                    IndexedFile file = files.get(f);
+                    SpilledTokens s = (SpilledTokens) file.tokens;
+                    files.set(f, new IndexedFile(file.path, new MappedTokens(mapped[s.segment], (int) s.offset, s.size),
+                            file.methodStarts, file.methodEnds, file.methodNames));
+                }
+            }
+
+            /**
+             * K-way merge of the runs. Records with equal hashes arrive together and in the order
+             * they were added, so they go through a {@link Chain} just as {@link #findMatches} does.
+             */
+            private List<Match> mergeRuns() throws IOException {
+                int bufferBytes = (int) Math.max(1 << 12, Math.min(1 << 16, runRecords * 16L / Math.max(1, runs.size())));
+                PriorityQueue<RunReader> queue = new PriorityQueue<>();
+                List<Match> matches = new ArrayList<>();
+                Chain chain = new Chain(matches);
+                try {
+                    for (int i = 0; i < runs.size(); i++) {
+                        RunReader reader = new RunReader(i, new DataInputStream(new BufferedInputStream(Files.newInputStream(runs.get(i)), bufferBytes)));
+                        if (reader.advance()) queue.add(reader);
+                        else reader.in.close();
+                    }
+                    boolean first = true;
+                    long previousHash = 0;
+                    while (!queue.isEmpty()) {
+                        RunReader reader = queue.poll();
+                        if (first || reader.hash != previousHash) chain.reset();
+                        chain.add((int) (reader.ref >>> 32), (int) reader.ref);
+                        first = false;
+                        previousHash = reader.hash;
+                        if (reader.advance()) queue.add(reader);
+                        else reader.in.close();
+                    }
+                } finally {
+                    for (RunReader reader : queue) reader.in.close();
+                }
+                return matches;
+            }
+
+            private void delete() {
+                try {
+                    if (tokenOut != null) tokenOut.close();
+                    try (Stream<Path> paths = Files.list(dir)) {
+                        for (Path p : (Iterable<Path>) paths::iterator) Files.deleteIfExists(p);
+                    }
+                    Files.deleteIfExists(dir);
+                } catch (IOException e) {
+                    System.err.println("Warning: Could not delete duplicate index files in " + dir + ": " + e.getMessage());
+                }
+                dir = null;
+            }
+        }
+    }
+
+    /** Run file cursor, ordered by unsigned hash and then by run, i.e. by when the record was added. */
+    private static final class RunReader implements Comparable<RunReader> {
+        final int run;
+        final DataInputStream in;
+        long hash;
+        long ref;
+
+        RunReader(int run, DataInputStream in) {
+            this.run = run;
+            this.in = in;
+        }
+
+        boolean advance() throws IOException {
+            try {
+                hash = in.readLong();
+            } catch (EOFException e) {
+                return false;
+            }
+            ref = in.readLong();
+            return true;
+        }
+
+        @Override
+        public int compareTo(RunReader o) {
+            int c = Long.compareUnsigned(hash, o.hash);
+            return c != 0 ? c : Integer.compare(run, o.run);
+        }
+    }
+
+    /**
+     * Stable LSD radix sort of the first {@code n} records by unsigned hash, 16 bits per pass,
+     * moving the refs along with their hashes.
+     */
+    private static void sortByHash(long[] hashes, long[] refs, int n) {
+        long[] hashScratch = new long[n];
+        long[] refScratch = new long[n];
+        int[] counts = new int[1 << 16];
+        long[] fromHashes = hashes, fromRefs = refs, toHashes = hashScratch, toRefs = refScratch;
+        for (int shift = 0; shift < 64; shift += 16) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < n; i++) counts[(int) (fromHashes[i] >>> shift) & 0xFFFF]++;
+            int sum = 0;
+            for (int d = 0; d < counts.length; d++) {
+                int c = counts[d];
+                counts[d] = sum;
+                sum += c;
+            }
+            for (int i = 0; i < n; i++) {
+                int d = (int) (fromHashes[i] >>> shift) & 0xFFFF;
+                int to = counts[d]++;
+                toHashes[to] = fromHashes[i];
+                toRefs[to] = fromRefs[i];
+            }
+            long[] t = fromHashes; fromHashes = toHashes; toHashes = t;
+            t = fromRefs; fromRefs = toRefs; toRefs = t;
+        }
+        // An even number of passes leaves the sorted records back in the original arrays.
+    }
+
+    private interface WindowSink {
+        void accept(long hash, int file, int position);
+    }
+
+    /** Token kinds and lines as the detector reads them, from the heap or from a spill file. */
+    private interface Tokens {
+        int size();
+        int kind(int index);
+        int line(int index);
+    }
+
+    private record HeapTokens(TokenSequence sequence) implements Tokens {
+        public int size() { return sequence.size(); }
+        public int kind(int index) { return sequence.kind(index); }
+        public int line(int index) { return sequence.line(index); }
+    }
+
+    /** Where a file's tokens were written; replaced by {@link MappedTokens} before they are read. */
+    private record SpilledTokens(int segment, long offset, int size) implements Tokens {
+        public int kind(int index) { throw new IllegalStateException("Tokens are not mapped yet"); }
+        public int line(int index) { throw new IllegalStateException("Tokens are not mapped yet"); }
+    }
+
+    /** A file's {@code size} kinds (2 bytes each) followed by its lines (4 bytes each). */
+    private record MappedTokens(ByteBuffer buffer, int offset, int size) implements Tokens {
+        public int kind(int index) { return buffer.getShort(offset + 2 * index); }
+        public int line(int index) { return buffer.getInt(offset + 2 * size + 4 * index); }
+    }
+
+    private record IndexedFile(String path, Tokens tokens, int[] methodStarts, int[] methodEnds, String[] methodNames) {
+
+        String describe(int lineStart, int lineEnd, int tokenCount) {
+            String enclosing = null;
+            for (int i = 0; i < methodStarts.length; i++) {
+                if (methodStarts[i] <= lineStart && lineEnd <= methodEnds[i]) enclosing = methodNames[i];
+            }
+            return tokenCount + " tokens" + (enclosing != null ? " in " + enclosing + "()" : "");
+        }
+    }
+
+    private record Match(long contentHash, int length, int fileA, int posA, int fileB, int posB) {}
+
+    private record CloneKey(long contentHash, int length) {}
+
+    private record Location(int file, int position) implements Comparable<Location> {
+        @Override
+        public int compareTo(Location o) {
+            return file != o.file ? Integer.compare(file, o.file) : Integer.compare(position, o.position);
+        }
+    }
+
+    /**
+     * Open-addressing multimap from window hash to (file, position) entries, stored in parallel
+     * primitive arrays so that indexing millions of windows never boxes a key. Sized for the
+     * expected entries; a resident index grows past that by doubling.
+     */
+    private static final class LongChainIndex {
+        private long[] keys;
+        private int[] heads;
+        private int[] next;
+        private int[] entryFiles;
+        private int[] entryPositions;
+        private int mask;
+        private int size;
+        private int usedSlots;
+
+        LongChainIndex(int expectedEntries) {
+            int capacity = Integer.highestOneBit(Math.max(16, expectedEntries * 2 - 1)) << 1;
+            keys = new long[capacity];
+            heads = new int[capacity];
+            Arrays.fill(heads, -1);
+            mask = capacity - 1;
+            next = new int[Math.max(1, expectedEntries)];
+            entryFiles = new int[next.length];
+            entryPositions = new int[next.length];
+        }
+
+        void add(long key, int file, int position) {
+            if (size == next.length) {
+                next = Arrays.copyOf(next, size * 2);
+                entryFiles = Arrays.copyOf(entryFiles, size * 2);
+                entryPositions = Arrays.copyOf(entryPositions, size * 2);
+            }
+            if (usedSlots * 2 >= heads.length) rehash();
+            int slot = (int) mix(key) & mask;
+            while (heads[slot] >= 0 && keys[slot] != key) slot = (slot + 1) & mask;
+            if (heads[slot] < 0) usedSlots++;
+            keys[slot] = key;
+            entryFiles[size] = file;
+            entryPositions[size] = position;
+            next[size] = heads[slot];
+            heads[slot] = size++;
+        }
+
+        /** Doubles the table; chains live in the entry arrays, so only their heads move. */
+        private void rehash() {
+            long[] oldKeys = keys;
+            int[] oldHeads = heads;
+            keys = new long[oldKeys.length * 2];
+            heads = new int[oldHeads.length * 2];
+            Arrays.fill(heads, -1);
+            mask = heads.length - 1;
+            for (int i = 0; i < oldHeads.length; i++) {
+                if (oldHeads[i] < 0) continue;
+                int slot = (int) mix(oldKeys[i]) & mask;
+                while (heads[slot] >= 0) slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                heads[slot] = oldHeads[i];
+            }
+        }
+
+        int capacity() { return heads.length; }
+        int head(int slot) { return heads[slot]; }
+        int next(int entry) { return next[entry]; }
+        int file(int entry) { return entryFiles[entry]; }
+        int position(int entry) { return entryPositions[entry]; }
+
+        private static long mix(long key) {
+            key ^= key >>> 33;
+            key *= 0xff51afd7ed558ccdL;
+            key ^= key >>> 33;
+            return key;
+        }
+    }
 }
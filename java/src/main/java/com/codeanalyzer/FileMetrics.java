@@ -3,7 +3,7 @@ package com.codeanalyzer;
 import java.util.ArrayList;
 import java.util.List;
 
-public class FileMetrics {
+public class FileMetrics implements FileMetricsView {
     private final String filePath;
     private final String relativePath;
     private final List<MethodMetrics> methods = new ArrayList<>();
@@ -12,6 +12,11 @@ public class FileMetrics {
     private int commentLines;
     private double maintainabilityIndex;
     private int cyclomaticComplexity;
+    private TokenSequence tokens;
+    private String packageName;
+    private List<String> imports;
+    private List<TypeCoupling> types;
+    private String degraded;
 
     public FileMetrics(String filePath, String relativePath) {
         this.filePath = filePath;
@@ -31,4 +36,15 @@ public class FileMetrics {
     public void setMaintainabilityIndex(double maintainabilityIndex) { this.maintainabilityIndex = maintainabilityIndex; }
     public int getCyclomaticComplexity() { return cyclomaticComplexity; }
     public void setCyclomaticComplexity(int cyclomaticComplexity) { this.cyclomaticComplexity = cyclomaticComplexity; }
+    public TokenSequence getTokens() { return tokens; }
+    public void setTokens(TokenSequence tokens) { this.tokens = tokens; }
+    public String getPackageName() { return packageName; }
+    public void setPackageName(String packageName) { this.packageName = packageName; }
+    /** Import declarations as written, on-demand ones ending in {@code .*}; null unless coupling was collected. */
+    public List<String> getImports() { return imports; }
+    public void setImports(List<String> imports) { this.imports = imports; }
+    public List<TypeCoupling> getTypes() { return types; }
+    public void setTypes(List<TypeCoupling> types) { this.types = types; }
+    public String getDegraded() { return degraded; }
+    public void setDegraded(String degraded) { this.degraded = degraded; }
 }
@@ -0,0 +1,28 @@
+package com.codeanalyzer;
+
+import java.util.List;
+
+/**
+ * Read-only access to one file's metrics, implemented by {@link FileMetrics} and by the
+ * flyweights of {@link CompactResultStore}. Reports and the duplicate detector read this.
+ */
+public interface FileMetricsView {
+    String getFilePath();
+    String getRelativePath();
+    List<? extends MethodMetricsView> getMethods();
+    int getTotalLines();
+    int getCodeLines();
+    int getCommentLines();
+    double getMaintainabilityIndex();
+    int getCyclomaticComplexity();
+    TokenSequence getTokens();
+
+    /** Declared types with their coupling, or null when coupling was not collected. */
+    default List<TypeCoupling> getTypes() { return null; }
+
+    /**
+     * Why the metrics are only approximate (the file was over a size, time or depth limit, or does
+     * not parse), or null when it was fully analyzed. Approximate files have no methods or tokens.
+     */
+    default String getDegraded() { return null; }
+}
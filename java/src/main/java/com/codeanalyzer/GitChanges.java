@@ -0,0 +1,205 @@
+package com.codeanalyzer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The Java files and line ranges changed between a git revision and the working tree, read from
+ * {@code git diff --unified=0}. Used by {@code --changed-since} to analyze only touched files and
+ * to mark the callables whose lines a hunk touches, with their metrics at the base revision.
+ */
+public final class GitChanges {
+
+    private static final Pattern HUNK = Pattern.compile("^@@ -(\\d+)(?:,(\\d+))? \\+(\\d+)(?:,(\\d+))? @@");
+
+    private final Path root;
+    private final String revision;
+    private final Map<String, ChangedFile> files = new TreeMap<>();
+    private int touchedMethods;
+
+    private GitChanges(Path root, String revision) {
+        this.root = root;
+        this.revision = revision;
+    }
+
+    /** Lines changed in one file; {@code oldPath} is null for added files, {@code newPath} for deleted ones. */
+    private record ChangedFile(String oldPath, String newPath, List<int[]> hunks) {}
+
+    /** Reads the changes to .java files under {@code root} since {@code revision}. */
+    public static GitChanges since(Path root, String revision) throws IOException {
+        String diff = new String(git(root, "diff", "--unified=0", "--no-color", "--no-ext-diff", "--find-renames", "--relative",
+                revision, "--", "*.java"), StandardCharsets.UTF_8);
+        return parse(root, revision, diff);
+    }
+
+    /** The changes described by {@code diff}, output of {@code git diff --unified=0} against {@code revision}. */
+    static GitChanges parse(Path root, String revision, String diff) {
+        GitChanges changes = new GitChanges(root, revision);
+        changes.parse(diff);
+        return changes;
+    }
+
+    /** Existing changed files that {@code discovery} accepts, in path order, ready for {@link JavaAnalyzer#analyzeFiles}. */
+    public List<Path> existingFiles(SourceDiscovery discovery) {
+        List<Path> result = new ArrayList<>();
+        for (ChangedFile f : files.values()) {
+            if (f.newPath() == null) continue;
+            Path p = root.resolve(f.newPath());
+            if (Files.isRegularFile(p) && discovery.accepts(p)) result.add(p);
+        }
+        result.sort(Comparator.comparing(p -> root.relativize(p).toString(), SourceDiscovery.ORDER));
+        return result;
+    }
+
+    public int changedFileCount() { return files.size(); }
+
+    public int touchedMethodCount() { return touchedMethods; }
+
+    public int deletedFileCount() {
+        return (int) files.values().stream().filter(f -> f.newPath() == null).count();
+    }
+
+    /**
+     * Marks each callable of {@code file} whose lines intersect a hunk, and attaches the matching
+     * callable from the base revision (by name and signature, in declaration order for repeats).
+     * Returns the number of callables marked.
+     */
+    public int annotate(FileMetrics file, AnalysisCache cache) {
+        ChangedFile change = files.get(normalize(file.getRelativePath()));
+        if (change == null) return 0;
+        Map<String, Deque<MethodMetrics>> base = new HashMap<>();
+        if (change.oldPath() != null) {
+            FileMetrics before = baseMetrics(change.oldPath(), file, cache);
+            if (before != null) {
+                for (MethodMetrics m : before.getMethods()) {
+                    base.computeIfAbsent(m.getName() + '\0' + m.getSignature(), k -> new ArrayDeque<>()).add(m);
+                }
+            }
+        }
+        int marked = 0;
+        for (MethodMetrics m : file.getMethods()) {
+            Deque<MethodMetrics> candidates = base.get(m.getName() + '\0' + m.getSignature());
+            MethodMetrics previous = candidates != null ? candidates.poll() : null;
+            if (!touches(change.hunks(), m.getLineStart(), m.getLineEnd())) continue;
+            m.setChanged(true);
+            m.setBaseline(previous);
+            marked++;
+        }
+        touchedMethods += marked;
+        return marked;
+    }
+
+    private FileMetrics baseMetrics(String oldPath, FileMetrics current, AnalysisCache cache) {
+        try {
+            byte[] source = git(root, "show", revision + ":./" + oldPath);
+            return JavaAnalyzer.analyzeSource(source, current.getFilePath(), root.toString(), cache);
+        } catch (IOException e) {
+            System.err.println("Warning: Could not read " + oldPath + " at " + revision + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Hunks are {start, count} on the new side. A pure deletion ({@code count == 0}) sits between
+     * line {@code start} and the next, so it touches a callable only if both lines are inside it.
+     */
+    static boolean touches(List<int[]> hunks, int lineStart, int lineEnd) {
+        for (int[] h : hunks) {
+            if (h[1] == 0) {
+                if (lineStart <= h[0] && h[0] + 1 <= lineEnd) return true;
+            } else if (h[0] <= lineEnd && lineStart <= h[0] + h[1] - 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void parse(String diff) {
+        String oldPath = null;
+        String newPath = null;
+        List<int[]> hunks = null;
+        for (String line : diff.split("\n")) {
+            if (line.startsWith("diff --git ")) {
+                if (hunks != null) add(oldPath, newPath, hunks);
+                oldPath = newPath = null;
+                hunks = new ArrayList<>();
+            } else if (hunks == null) {
+                continue;
+            } else if (line.startsWith("@@")) {
+                Matcher m = HUNK.matcher(line);
+                if (m.find()) {
+                    int start = Integer.parseInt(m.group(3));
+                    int count = m.group(4) != null ? Integer.parseInt(m.group(4)) : 1;
+                    hunks.add(new int[] { start, count });
+                }
+            } else if (!hunks.isEmpty()) {
+                // Removed and added lines; "--- " or "+++ " here is content, not a header.
+                continue;
+            } else if (line.startsWith("--- ")) {
+                oldPath = diffPath(line.substring(4), "a/");
+            } else if (line.startsWith("+++ ")) {
+                newPath = diffPath(line.substring(4), "b/");
+            } else if (line.startsWith("rename from ")) {
+                oldPath = line.substring("rename from ".length());
+            } else if (line.startsWith("rename to ")) {
+                newPath = line.substring("rename to ".length());
+            }
+        }
+        if (hunks != null) add(oldPath, newPath, hunks);
+    }
+
+    private void add(String oldPath, String newPath, List<int[]> hunks) {
+        if (oldPath == null && newPath == null) return;
+        files.put(normalize(newPath != null ? newPath : oldPath), new ChangedFile(oldPath, newPath, hunks));
+    }
+
+    private static String diffPath(String path, String prefix) {
+        if (path.equals("/dev/null")) return null;
+        if (path.startsWith("\"")) path = path.substring(1, path.length() - 1);
+        return path.startsWith(prefix) ? path.substring(prefix.length()) : path;
+    }
+
+    private static String normalize(String relativePath) {
+        return relativePath.replace('\\', '/');
+    }
+
+    private static byte[] git(Path root, String... args) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add("git");
+        command.add("-C");
+        command.add(root.toString());
+        command.addAll(Arrays.asList(args));
+        Process process = new ProcessBuilder(command).start();
+        // Drain stderr concurrently so a chatty git cannot block on a full pipe.
+        CompletableFuture<byte[]> errors = CompletableFuture.supplyAsync(() -> readAll(process.getErrorStream()));
+        byte[] output = readAll(process.getInputStream());
+        try {
+            int exit = process.waitFor();
+            if (exit != 0) {
+                throw new IOException("git " + args[0] + " failed: " + new String(errors.join(), StandardCharsets.UTF_8).trim());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for git", e);
+        }
+        return output;
+    }
+
+    private static byte[] readAll(InputStream in) {
+        try (in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            in.transferTo(out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            return new byte[0];
+        }
+    }
+}
@@ -1,113 +1,418 @@
 package com.codeanalyzer;
 
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ParseStart;
 import com.github.javaparser.ParserConfiguration;
-import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.Problem;
+import com.github.javaparser.Provider;
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.Node;
-import com.github.javaparser.ast.body.ConstructorDeclaration;
-import com.github.javaparser.ast.body.MethodDeclaration;
-import com.github.javaparser.ast.body.TypeDeclaration;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Optional;
-import java.util.stream.Stream;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 public final class JavaAnalyzer {
 
-    static {
-        StaticJavaParser.setConfiguration(new ParserConfiguration()
-                .setLanguageLevel(ParserConfiguration.LanguageLevel.JAVA_17));
-    }
+    /** Bump whenever the metrics produced for a given source change; invalidates cached results. */
+    public static final int METRICS_VERSION = 5;
+
+    private static final int PIPELINE_DEPTH_PER_THREAD = 4;
+    private static final long MMAP_THRESHOLD = 1 << 20;
+
+    private static final ThreadLocal<ByteBuffer> READ_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(64 * 1024));
+
+    /**
+     * One parser per worker thread: JavaParser instances are not thread-safe, and the
+     * StaticJavaParser configuration is global state shared by every caller.
+     */
+    private static final ThreadLocal<JavaParser> PARSER = ThreadLocal.withInitial(() ->
+            new JavaParser(new ParserConfiguration()
+                    .setLanguageLevel(ParserConfiguration.LanguageLevel.JAVA_17)));
+
+    /** Limits applied when analyzing without options. */
+    private static final AnalysisOptions DEFAULT_LIMITS = new AnalysisOptions();
+    private static final String SYNTAX_ERROR = "syntax error";
+    private static final long DEEP_STACK_BYTES = 256L << 20;
 
     public static List<FileMetrics> analyzeDirectory(Path rootPath) throws Exception {
-        List<Path> files = new ArrayList<>();
-        try (Stream<Path> walk = Files.walk(rootPath)) {
-            walk.filter(p -> p.toString().endsWith(".java"))
-                    .filter(p -> !p.toString().contains("target") && !p.toString().contains("build"))
-                    .forEach(files::add);
-        }
+        return analyzeDirectory(rootPath, new AnalysisOptions());
+    }
+
+    /**
+     * Analyzes every .java file under rootPath using up to {@code options.getThreads()} workers.
+     * Results are returned in path order regardless of the thread count.
+     */
+    public static List<FileMetrics> analyzeDirectory(Path rootPath, AnalysisOptions options) throws Exception {
         List<FileMetrics> results = new ArrayList<>();
-        for (Path file : files) {
-            try {
-                String content = Files.readString(file);
-                FileMetrics m = analyzeSource(content, file.toString(), rootPath.toString());
-                if (m != null) results.add(m);
-            } catch (Exception e) {
-                System.err.println("Warning: Could not analyze " + file + ": " + e.getMessage());
+        analyzeDirectory(rootPath, options, results::add);
+        return results;
+    }
+
+    /**
+     * Streams each file's metrics to {@code sink} in path order as soon as it and every file
+     * before it are done. At most a few files per worker are in flight, so memory stays bounded
+     * by the pipeline depth rather than the size of the tree. Files over a per-file limit or with
+     * syntax errors are delivered with approximate metrics (see {@link FileMetricsView#getDegraded()});
+     * only files that cannot be read are skipped.
+     */
+    @SuppressWarnings("try")
+    public static void analyzeDirectory(Path rootPath, AnalysisOptions options, Consumer<FileMetrics> sink) throws Exception {
+        // Files are analyzed as discovery finds them, so parsing overlaps the walk of the tree.
+        AnalysisProfiler profiler = options.getProfiler();
+        try (AnalysisProfiler.Phase phase = AnalysisProfiler.phase(profiler, "analyze");
+             SourceDiscovery.Walk files = new SourceDiscovery(rootPath, options).walk()) {
+            runPipeline(files, rootPath, options, sink);
+            if (profiler != null) profiler.discovered(files.count());
+        }
+    }
+
+    /** The .java files under rootPath that {@link #analyzeDirectory} would analyze, in path order. */
+    public static List<Path> discover(Path rootPath, AnalysisOptions options) {
+        return new SourceDiscovery(rootPath, options).list();
+    }
+
+    /**
+     * Analyzes the given files (e.g. those touched by a change) through the same pipeline as
+     * {@link #analyzeDirectory(Path, AnalysisOptions, Consumer)}, delivering them in list order.
+     */
+    @SuppressWarnings("try")
+    public static void analyzeFiles(Path rootPath, List<Path> files, AnalysisOptions options, Consumer<FileMetrics> sink) throws Exception {
+        AnalysisProfiler profiler = options.getProfiler();
+        if (profiler != null) profiler.discovered(files.size());
+        try (AnalysisProfiler.Phase phase = AnalysisProfiler.phase(profiler, "analyze")) {
+            runPipeline(files.iterator(), rootPath, options, sink);
+        }
+    }
+
+    static void runPipeline(Iterator<Path> files, Path rootPath, AnalysisOptions options, Consumer<FileMetrics> sink) throws Exception {
+        int threads = options.getThreads();
+        if (threads <= 1) {
+            while (files.hasNext()) {
+                FileMetrics m = analyzeFile(files.next(), rootPath, options);
+                if (m != null) sink.accept(m);
             }
+            return;
+        }
+        // ForkJoinPool gives work stealing, so one huge file does not hold up the other workers.
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        Deque<Future<FileMetrics>> inFlight = new ArrayDeque<>();
+        int window = threads * PIPELINE_DEPTH_PER_THREAD;
+        try {
+            while (files.hasNext() || !inFlight.isEmpty()) {
+                while (inFlight.size() < window && files.hasNext()) {
+                    Path file = files.next();
+                    inFlight.add(pool.submit(() -> analyzeFile(file, rootPath, options)));
+                }
+                FileMetrics m = inFlight.removeFirst().get();
+                if (m != null) sink.accept(m);
+            }
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ex ? ex : e;
+        } finally {
+            for (Future<FileMetrics> f : inFlight) f.cancel(true);
+            pool.shutdownNow();
+        }
+    }
+
+    /** Analyzes one file, consulting the cache if given. Returns null if it cannot be read. */
+    static FileMetrics analyzeFile(Path file, Path rootPath, AnalysisOptions options) {
+        AnalysisCache cache = options.getCache();
+        AnalysisProfiler.FileTimer timer = AnalysisProfiler.file(options.getProfiler(), file);
+        long bytes = 0;
+        try {
+            ByteBuffer source = readSource(file);
+            bytes = source.remaining();
+            timer.step(AnalysisProfiler.Step.READ);
+            String filePath = file.toString();
+            String key = null;
+            if (cache != null) {
+                key = AnalysisCache.key(source);
+                FileMetrics cached = cache.get(key, filePath, relativize(filePath, rootPath.toString()));
+                timer.step(AnalysisProfiler.Step.CACHE);
+                if (cached != null && covers(cached, options)) {
+                    timer.finish(AnalysisProfiler.Outcome.CACHED, bytes);
+                    return cached;
+                }
+            }
+            FileMetrics m = analyzeSource(source, filePath, rootPath.toString(), options, timer);
+            if (m.getDegraded() != null) {
+                // Not cached, so raising a limit takes effect on the next run.
+                System.err.println("Warning: Approximate metrics for " + file + ": " + m.getDegraded());
+                timer.finish(m.getDegraded().startsWith(SYNTAX_ERROR)
+                        ? AnalysisProfiler.Outcome.PARSE_FAILED : AnalysisProfiler.Outcome.DEGRADED, bytes);
+                return m;
+            }
+            if (cache != null) {
+                cache.put(key, m);
+                timer.step(AnalysisProfiler.Step.CACHE);
+            }
+            timer.finish(AnalysisProfiler.Outcome.ANALYZED, bytes);
+            return m;
+        } catch (Exception e) {
+            System.err.println("Warning: Could not analyze " + file + ": " + e.getMessage());
+            timer.finish(AnalysisProfiler.Outcome.ERROR, bytes);
+            return null;
+        }
+    }
+
+    /** An entry cached by a run without coupling or near-miss data lacks it; such files are parsed again. */
+    private static boolean covers(FileMetrics cached, AnalysisOptions options) {
+        return (!options.isCoupling() || cached.getTypes() != null)
+                && (!options.isNearMiss() || AnalysisCache.hasShingles(cached));
+    }
+
+    /** Analyzes source that is not in the working tree, such as a file at another revision. */
+    static FileMetrics analyzeSource(byte[] source, String filePath, String rootPath, AnalysisCache cache) {
+        ByteBuffer buffer = ByteBuffer.wrap(source);
+        if (cache == null) return analyzeSource(buffer, filePath, rootPath);
+        String key = AnalysisCache.key(buffer);
+        FileMetrics cached = cache.get(key, filePath, relativize(filePath, rootPath));
+        if (cached != null) return cached;
+        FileMetrics m = analyzeSource(buffer, filePath, rootPath);
+        if (m.getDegraded() == null) cache.put(key, m);
+        return m;
+    }
+
+    /**
+     * Loads a file for analysis with a single read. Large files are memory-mapped; smaller ones
+     * are read into a per-thread direct buffer that is reused across files, so the returned
+     * buffer is only valid until the next call on the same thread.
+     */
+    private static ByteBuffer readSource(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= MMAP_THRESHOLD) return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            ByteBuffer buffer = READ_BUFFER.get();
+            if (buffer.capacity() < size) {
+                buffer = ByteBuffer.allocateDirect(Integer.highestOneBit((int) size) << 1);
+                READ_BUFFER.set(buffer);
+            }
+            buffer.clear();
+            while (buffer.position() < size && channel.read(buffer) >= 0) {
+                // keep reading until the whole file is in the buffer
+            }
+            return buffer.flip();
         }
-        return results;
     }
 
     public static FileMetrics analyzeSource(String source, String filePath, String rootPath) {
+        return analyzeSource(ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8)), filePath, rootPath);
+    }
+
+    /**
+     * Analyzes UTF-8 source bytes. The parser and the line counter both read the same buffer,
+     * so the file is never decoded into one large String. Default per-file limits apply.
+     */
+    public static FileMetrics analyzeSource(ByteBuffer source, String filePath, String rootPath) {
+        return analyzeSource(source, filePath, rootPath, null, AnalysisProfiler.FileTimer.NONE);
+    }
+
+    /**
+     * {@code options} selects the optional data to collect and the per-file limits; null collects
+     * none, under the default limits. A file over a limit, or that does not parse, gets approximate
+     * metrics from {@link #approximate} with the reason attached, so it is never silently dropped.
+     *
+     * <p>The parser and the metric visitors recurse once per nesting level, so long expression
+     * chains in generated code can overflow a worker's stack. Such a file is analyzed again on a
+     * thread of its own with a {@value #DEEP_STACK_BYTES}-byte stack, and only falls back to
+     * approximate metrics if that overflows too.
+     */
+    private static FileMetrics analyzeSource(ByteBuffer source, String filePath, String rootPath, AnalysisOptions options,
+                                             AnalysisProfiler.FileTimer timer) {
+        AnalysisOptions limits = options != null ? options : DEFAULT_LIMITS;
+        String relativePath = relativize(filePath, rootPath);
+        long maxBytes = limits.getMaxFileBytes();
+        if (maxBytes > 0 && source.remaining() > maxBytes) {
+            return approximate(source, filePath, relativePath, "larger than " + maxBytes / 1024 + " KB, not parsed");
+        }
+        long timeoutMs = limits.getFileTimeoutMs();
+        long deadline = timeoutMs > 0 ? System.nanoTime() + timeoutMs * 1_000_000 : Long.MAX_VALUE;
+        try {
+            return measure(source, filePath, relativePath, options, deadline, timer);
+        } catch (StackOverflowError e) {
+            // Drop the parser too, in case the overflow left it mid-production.
+            PARSER.remove();
+        }
+        FileMetrics[] result = new FileMetrics[1];
+        Thread deep = new Thread(null, () -> {
+            try {
+                result[0] = measure(source, filePath, relativePath, options, deadline, AnalysisProfiler.FileTimer.NONE);
+            } catch (StackOverflowError e) {
+                result[0] = null;
+            }
+        }, "code-analyzer-deep", DEEP_STACK_BYTES);
+        deep.start();
+        try {
+            deep.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        timer.step(AnalysisProfiler.Step.PARSE);
+        return result[0] != null ? result[0] : approximate(source, filePath, relativePath, "nested too deeply to analyze");
+    }
+
+    /**
+     * Parses and measures one file. Parsing is cancelled by {@link DeadlineProvider} once the deadline
+     * passes, and the deadline is checked again after the later stages.
+     */
+    private static FileMetrics measure(ByteBuffer source, String filePath, String relativePath, AnalysisOptions options,
+                                       long deadline, AnalysisProfiler.FileTimer timer) {
+        AnalysisOptions limits = options != null ? options : DEFAULT_LIMITS;
+        String overTime = "not analyzed within " + limits.getFileTimeoutMs() + " ms";
         try {
-            CompilationUnit cu = StaticJavaParser.parse(source);
-            String relativePath = filePath.startsWith(rootPath)
-                    ? filePath.substring(rootPath.length() + (rootPath.endsWith("/") ? 0 : 1))
-                    : filePath;
+            ParseResult<CompilationUnit> parsed = PARSER.get().parse(ParseStart.COMPILATION_UNIT,
+                    new DeadlineProvider(source.duplicate(), deadline));
+            timer.step(AnalysisProfiler.Step.PARSE);
+            if (System.nanoTime() > deadline) return approximate(source, filePath, relativePath, overTime);
+            if (!parsed.isSuccessful() || parsed.getResult().isEmpty()) {
+                return approximate(source, filePath, relativePath, syntaxError(parsed));
+            }
+            CompilationUnit cu = parsed.getResult().get();
+            int maxDepth = limits.getMaxDepth();
+            if (maxDepth > 0 && deeperThan(cu, maxDepth)) {
+                return approximate(source, filePath, relativePath, "syntax tree deeper than " + maxDepth + " levels");
+            }
 
             JavaMetricsCalculator.LineCounts lc = JavaMetricsCalculator.countLines(source);
             FileMetrics fileMetrics = new FileMetrics(filePath, relativePath);
             fileMetrics.setTotalLines(lc.total());
             fileMetrics.setCodeLines(lc.code());
             fileMetrics.setCommentLines(lc.comment());
+            fileMetrics.setTokens(TokenSequence.of(cu));
 
             int fileComplexity = 0;
             double fileMiSum = 0;
-            int methodCount = 0;
-
-            for (TypeDeclaration<?> type : cu.getTypes()) {
-                for (MethodDeclaration method : type.getMethods()) {
-                    Optional<Node> body = method.getBody().map(b -> (Node) b);
-                    int cc = JavaMetricsCalculator.getCyclomaticComplexity(body.orElse(null));
-                    int loc = JavaMetricsCalculator.getLinesOfCode(body, source);
-                    double mi = JavaMetricsCalculator.getMaintainabilityIndex(cc, loc);
-                    int lineStart = method.getRange().map(r -> r.begin.line).orElse(0);
-                    int lineEnd = method.getRange().map(r -> r.end.line).orElse(0);
-
-                    String sig = method.getDeclarationAsString(false, false, false);
-                    if (sig.length() > 80) sig = sig.substring(0, 77) + "...";
-                    MethodMetrics mm = new MethodMetrics(method.getNameAsString(), sig);
-                    mm.setLineStart(lineStart);
-                    mm.setLineEnd(lineEnd);
-                    mm.setCyclomaticComplexity(cc);
-                    mm.setLinesOfCode(loc);
-                    mm.setMaintainabilityIndex(mi);
-                    fileMetrics.getMethods().add(mm);
-                    fileComplexity += cc;
-                    fileMiSum += mi;
-                    methodCount++;
-                }
-                for (ConstructorDeclaration cons : type.getConstructors()) {
-                    Optional<Node> body = cons.getBody().map(b -> (Node) b);
-                    int cc = JavaMetricsCalculator.getCyclomaticComplexity(body.orElse(null));
-                    int loc = JavaMetricsCalculator.getLinesOfCode(body, source);
-                    double mi = JavaMetricsCalculator.getMaintainabilityIndex(cc, loc);
-                    int lineStart = cons.getRange().map(r -> r.begin.line).orElse(0);
-                    int lineEnd = cons.getRange().map(r -> r.end.line).orElse(0);
-                    String sig = cons.getDeclarationAsString(false, false, false);
-                    if (sig.length() > 80) sig = sig.substring(0, 77) + "...";
-                    MethodMetrics mm = new MethodMetrics(cons.getNameAsString(), sig);
-                    mm.setLineStart(lineStart);
-                    mm.setLineEnd(lineEnd);
-                    mm.setCyclomaticComplexity(cc);
-                    mm.setLinesOfCode(loc);
-                    mm.setMaintainabilityIndex(mi);
-                    fileMetrics.getMethods().add(mm);
-                    fileComplexity += cc;
-                    fileMiSum += mi;
-                    methodCount++;
-                }
+            for (MethodMetrics mm : MetricsVisitor.collect(cu)) {
+                fileMetrics.getMethods().add(mm);
+                fileComplexity += mm.getCyclomaticComplexity();
+                fileMiSum += mm.getMaintainabilityIndex();
             }
+            int methodCount = fileMetrics.getMethods().size();
 
             fileMetrics.setCyclomaticComplexity(fileComplexity);
             fileMetrics.setMaintainabilityIndex(methodCount > 0 ? fileMiSum / methodCount : 100);
+            if (options != null && options.isCoupling()) CouplingVisitor.collect(cu, fileMetrics);
+            if (options != null && options.isNearMiss()) NearMissDetector.collect(cu, fileMetrics);
+            timer.step(AnalysisProfiler.Step.METRICS);
+            if (System.nanoTime() > deadline) return approximate(source, filePath, relativePath, overTime);
             return fileMetrics;
-        } catch (Exception e) {
-            return null;
+        } catch (RuntimeException e) {
+            return approximate(source, filePath, relativePath, "analysis failed: " + e);
+        }
+    }
+
+    /**
+     * Metrics for a file that is not parsed: exact line counts, and a file complexity from
+     * {@link JavaMetricsCalculator#countDecisions(ByteBuffer)} treating the file as one callable.
+     * No methods, tokens or coupling data.
+     */
+    private static FileMetrics approximate(ByteBuffer source, String filePath, String relativePath, String reason) {
+        JavaMetricsCalculator.LineCounts lc = JavaMetricsCalculator.countLines(source);
+        FileMetrics fileMetrics = new FileMetrics(filePath, relativePath);
+        fileMetrics.setTotalLines(lc.total());
+        fileMetrics.setCodeLines(lc.code());
+        fileMetrics.setCommentLines(lc.comment());
+        int complexity = 1 + JavaMetricsCalculator.countDecisions(source);
+        fileMetrics.setCyclomaticComplexity(complexity);
+        fileMetrics.setMaintainabilityIndex(JavaMetricsCalculator.getMaintainabilityIndex(complexity, lc.code()));
+        fileMetrics.setDegraded(reason);
+        return fileMetrics;
+    }
+
+    private static String syntaxError(ParseResult<CompilationUnit> parsed) {
+        if (parsed.getProblems().isEmpty()) return SYNTAX_ERROR;
+        Problem problem = parsed.getProblems().get(0);
+        return SYNTAX_ERROR + problem.getLocation()
+                .flatMap(l -> l.getBegin().getRange())
+                .map(r -> " at line " + r.begin.line)
+                .orElse("");
+    }
+
+    /** Whether the tree has more than {@code limit} levels, walked one level at a time. */
+    private static boolean deeperThan(Node root, int limit) {
+        List<Node> level = List.of(root);
+        for (int depth = 1; !level.isEmpty(); depth++) {
+            if (depth > limit) return true;
+            List<Node> next = new ArrayList<>();
+            for (Node n : level) next.addAll(n.getChildNodes());
+            level = next;
+        }
+        return false;
+    }
+
+    /**
+     * Feeds the parser from the source buffer and cancels it once the deadline passes. The lexer asks
+     * for input only when it needs the next token, and gets at most {@link #SLICE} characters at a
+     * time, so the deadline is checked every few tokens however small the file is.
+     */
+    private static final class DeadlineProvider implements Provider {
+        static final int SLICE = 64;
+
+        private final Reader reader;
+        private final long deadline;
+
+        DeadlineProvider(ByteBuffer source, long deadline) {
+            this.reader = new InputStreamReader(new ByteBufferInputStream(source), StandardCharsets.UTF_8);
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int len) throws IOException {
+            // Unchecked: the parser treats an IOException from its input as end of file.
+            if (System.nanoTime() > deadline) throw new CancellationException("File time limit reached");
+            return reader.read(buffer, offset, Math.min(len, SLICE));
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
         }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+    }
+
+    private static String relativize(String filePath, String rootPath) {
+        return filePath.startsWith(rootPath)
+                ? filePath.substring(rootPath.length() + (rootPath.endsWith("/") ? 0 : 1))
+                : filePath;
     }
 }
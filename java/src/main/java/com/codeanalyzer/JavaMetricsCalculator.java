@@ -1,10 +1,9 @@
 package com.codeanalyzer;
 
 import com.github.javaparser.ast.Node;
-import com.github.javaparser.ast.expr.ConditionalExpr;
-import com.github.javaparser.ast.expr.BinaryExpr;
-import com.github.javaparser.ast.statement.*;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Optional;
 
 /**
@@ -12,29 +11,25 @@ import java.util.Optional;
  */
 public final class JavaMetricsCalculator {
 
+    // countLines scanner states
+    private static final int CODE = 0;
+    private static final int LINE_COMMENT = 1;
+    private static final int BLOCK_COMMENT = 2;
+    private static final int STRING = 3;
+    private static final int CHAR = 4;
+    private static final int TEXT_BLOCK = 5;
+    private static final long SPACES = 0x2020202020202020L;
+    private static final long BACKSLASHES = 0x5C5C5C5C5C5C5C5CL;
+    private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+    private static final long RETURNS = 0x0D0D0D0D0D0D0D0DL;
+    private static final long STARS = 0x2A2A2A2A2A2A2A2AL;
+
     /**
      * Cyclomatic complexity = 1 + number of decision points.
      */
     public static int getCyclomaticComplexity(Node methodBody) {
         if (methodBody == null) return 1;
-        final int[] count = { 1 };
-        methodBody.walk(Node.TreeTraversal.PREORDER, node -> {
-            if (node instanceof IfStmt) count[0]++;
-            else if (node instanceof ForStmt) count[0]++;
-            else if (node instanceof ForEachStmt) count[0]++;
-            else if (node instanceof WhileStmt) count[0]++;
-            else if (node instanceof DoStmt) count[0]++;
-            else if (node instanceof SwitchStmt) count[0]++;
-            else if (node.getClass().getSimpleName().equals("SwitchExpr")) count[0]++; // Java 12+ switch expression
-            else if (node instanceof CatchClause) count[0]++;
-            else if (node instanceof ConditionalExpr) count[0]++;
-            else if (node instanceof BinaryExpr bin) {
-                BinaryExpr.Operator op = bin.getOperator();
-                if (op == BinaryExpr.Operator.AND || op == BinaryExpr.Operator.OR)
-                    count[0]++;
-            }
-        });
-        return count[0];
+        return 1 + MetricsVisitor.countDecisions(methodBody);
     }
 
     /**
@@ -56,31 +51,206 @@ public final class JavaMetricsCalculator {
     }
 
     public static LineCounts countLines(String source) {
-        String[] lines = source.split("\n");
-        int total = lines.length;
+        return countLines(ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Counts total, code and comment lines in one pass over UTF-8 source bytes, without
+     * allocating per line. A line with any code on it is a code line, even if it also holds a
+     * comment; a line with only comment text (or inside a block comment) is a comment line.
+     * Comment markers inside string, char and text-block literals are ignored, and \n, \r\n and
+     * lone \r all end a line. Reads between position and limit without moving the position.
+     */
+    public static LineCounts countLines(ByteBuffer source) {
+        int total = 0;
         int code = 0;
         int comment = 0;
-        boolean inBlock = false;
-        for (String line : lines) {
-            String t = line.trim();
-            if (inBlock) {
-                comment++;
-                if (t.contains("*/")) inBlock = false;
-                continue;
+        int state = CODE;
+        boolean lineHasCode = false;
+        boolean lineHasComment = false;
+        int limit = source.limit();
+        int lineStart = source.position();
+        int slowUntil = lineStart;
+        for (int i = lineStart; i < limit; i++) {
+            // Fast paths, eight bytes at a time. In code and literals, apart from the backslash
+            // every byte that can change state or end a line is ASCII <= '/'; in comments only
+            // line breaks and '*' matter.
+            if (i >= slowUntil && i + 8 <= limit) {
+                long word = source.getLong(i);
+                if (state == LINE_COMMENT || state == BLOCK_COMMENT) {
+                    if (!hasZeroByte(word ^ NEWLINES) && !hasZeroByte(word ^ RETURNS)
+                            && (state == LINE_COMMENT || !hasZeroByte(word ^ STARS))) {
+                        i += 7;
+                        continue;
+                    }
+                } else if (word == SPACES) {
+                    i += 7;
+                    continue;
+                } else if (!hasByteBelow(word, '0') && !hasZeroByte(word ^ BACKSLASHES)) {
+                    if (state == CODE) lineHasCode = true;
+                    i += 7;
+                    continue;
+                }
+                slowUntil = i + 8;
             }
-            if (t.startsWith("/*")) {
-                comment++;
-                if (!t.contains("*/")) inBlock = true;
+            byte b = source.get(i);
+            if (b == ' ') continue;
+            if ((b > '/' && b != '\\') || b < 0) {
+                if (state == CODE) lineHasCode = true;
                 continue;
             }
-            if (t.startsWith("//") || t.isEmpty()) {
-                if (t.startsWith("//")) comment++;
+            if (b == '\n' || b == '\r') {
+                if (b == '\r' && i + 1 < limit && source.get(i + 1) == '\n') i++;
+                total++;
+                if (lineHasCode) code++;
+                else if (lineHasComment) comment++;
+                if (state == LINE_COMMENT || state == STRING || state == CHAR) state = CODE;
+                lineHasCode = state == TEXT_BLOCK;
+                lineHasComment = state == BLOCK_COMMENT;
+                lineStart = i + 1;
                 continue;
             }
-            code++;
+            switch (state) {
+                case CODE -> {
+                    if (b == '\t' || b == '\f') continue;
+                    if (b == '/' && i + 1 < limit) {
+                        byte next = source.get(i + 1);
+                        if (next == '/') { state = LINE_COMMENT; lineHasComment = true; i++; continue; }
+                        if (next == '*') { state = BLOCK_COMMENT; lineHasComment = true; i++; continue; }
+                    }
+                    lineHasCode = true;
+                    if (b == '"') {
+                        if (i + 2 < limit && source.get(i + 1) == '"' && source.get(i + 2) == '"') {
+                            state = TEXT_BLOCK;
+                            i += 2;
+                        } else {
+                            state = STRING;
+                        }
+                    } else if (b == '\'') {
+                        state = CHAR;
+                    }
+                }
+                case BLOCK_COMMENT -> {
+                    if (b == '*' && i + 1 < limit && source.get(i + 1) == '/') { state = CODE; i++; }
+                }
+                case STRING, CHAR -> {
+                    if (b == '\\') i = skipEscaped(source, i, limit);
+                    else if (b == (state == STRING ? '"' : '\'')) state = CODE;
+                }
+                case TEXT_BLOCK -> {
+                    if (b == '\\') i = skipEscaped(source, i, limit);
+                    else if (b == '"' && i + 2 < limit && source.get(i + 1) == '"' && source.get(i + 2) == '"') { state = CODE; i += 2; }
+                }
+                default -> { }
+            }
+        }
+        if (lineStart < limit) {
+            total++;
+            if (lineHasCode) code++;
+            else if (lineHasComment) comment++;
         }
         return new LineCounts(total, code, comment);
     }
 
+    /**
+     * Approximate decision-point count for source that is not parsed: the constructs
+     * {@link MetricsVisitor} counts, matched lexically. {@code if}, {@code for}, {@code while},
+     * {@code switch} and {@code catch} keywords, {@code &&}, {@code ||} and {@code ?} (except a
+     * wildcard after {@code <} or {@code ,}), skipping comments and literals. A do-while counts
+     * through its {@code while}. Reads between position and limit without moving the position.
+     */
+    public static int countDecisions(ByteBuffer source) {
+        int decisions = 0;
+        int state = CODE;
+        byte previous = ';';
+        int limit = source.limit();
+        for (int i = source.position(); i < limit; i++) {
+            byte b = source.get(i);
+            switch (state) {
+                case CODE -> {
+                    if (isIdentifierPart(b)) {
+                        int end = i + 1;
+                        while (end < limit && isIdentifierPart(source.get(end))) end++;
+                        if (!isIdentifierPart(previous) && isDecisionKeyword(source, i, end)) decisions++;
+                        previous = b;
+                        i = end - 1;
+                        continue;
+                    }
+                    if (b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f') continue;
+                    byte next = i + 1 < limit ? source.get(i + 1) : 0;
+                    if (b == '/' && next == '/') { state = LINE_COMMENT; i++; continue; }
+                    if (b == '/' && next == '*') { state = BLOCK_COMMENT; i++; continue; }
+                    if (b == '"') {
+                        if (next == '"' && i + 2 < limit && source.get(i + 2) == '"') { state = TEXT_BLOCK; i += 2; }
+                        else state = STRING;
+                    } else if (b == '\'') {
+                        state = CHAR;
+                    } else if ((b == '&' || b == '|') && next == b) {
+                        decisions++;
+                        i++;
+                    } else if (b == '?' && previous != '<' && previous != ',') {
+                        decisions++;
+                    }
+                    previous = b;
+                }
+                case LINE_COMMENT -> {
+                    if (b == '\n' || b == '\r') state = CODE;
+                }
+                case BLOCK_COMMENT -> {
+                    if (b == '*' && i + 1 < limit && source.get(i + 1) == '/') { state = CODE; i++; }
+                }
+                case STRING, CHAR -> {
+                    if (b == '\\') i = skipEscaped(source, i, limit);
+                    else if (b == (state == STRING ? '"' : '\'') || b == '\n') { state = CODE; previous = '"'; }
+                }
+                case TEXT_BLOCK -> {
+                    if (b == '\\') i = skipEscaped(source, i, limit);
+                    else if (b == '"' && i + 2 < limit && source.get(i + 1) == '"' && source.get(i + 2) == '"') { state = CODE; previous = '"'; i += 2; }
+                }
+                default -> { }
+            }
+        }
+        return decisions;
+    }
+
+    private static boolean isIdentifierPart(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == '_' || b == '$' || b < 0;
+    }
+
+    private static boolean isDecisionKeyword(ByteBuffer source, int start, int end) {
+        return switch (end - start) {
+            case 2 -> matches(source, start, "if");
+            case 3 -> matches(source, start, "for");
+            case 5 -> matches(source, start, "while") || matches(source, start, "catch");
+            case 6 -> matches(source, start, "switch");
+            default -> false;
+        };
+    }
+
+    private static boolean matches(ByteBuffer source, int start, String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (source.get(start + i) != word.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static boolean hasZeroByte(long word) {
+        return ((word - 0x0101010101010101L) & ~word & 0x8080808080808080L) != 0;
+    }
+
+    /** True if any byte of the word is an unsigned value below {@code n} (n <= 128). */
+    private static boolean hasByteBelow(long word, int n) {
+        return ((word - 0x0101010101010101L * n) & ~word & 0x8080808080808080L) != 0;
+    }
+
+    /** Skips the character after a backslash unless it is a line break, which must still be counted. */
+    private static int skipEscaped(ByteBuffer source, int i, int limit) {
+        if (i + 1 < limit) {
+            byte next = source.get(i + 1);
+            if (next != '\n' && next != '\r') return i + 1;
+        }
+        return i;
+    }
+
     public record LineCounts(int total, int code, int comment) {}
 }
@@ -0,0 +1,159 @@
+package com.codeanalyzer;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Minimal JSON rendering for the result model; the analyzer has no JSON library dependency and
+ * only ever writes these few shapes.
+ */
+final class Json {
+
+    private Json() {}
+
+    static String result(String projectPath, Instant analyzedAt, Collection<? extends FileMetricsView> files, Collection<DuplicateBlock> duplicates) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"projectPath\":").append(quote(projectPath))
+                .append(",\"analyzedAt\":").append(quote(analyzedAt.toString()))
+                .append(",\"files\":[");
+        boolean first = true;
+        for (FileMetricsView f : files) {
+            if (!first) sb.append(',');
+            appendFile(sb, f);
+            first = false;
+        }
+        sb.append("],\"duplicates\":[");
+        first = true;
+        for (DuplicateBlock d : duplicates) {
+            if (!first) sb.append(',');
+            appendDuplicate(sb, d);
+            first = false;
+        }
+        return sb.append("]}").toString();
+    }
+
+    static String file(FileMetricsView file) {
+        StringBuilder sb = new StringBuilder();
+        appendFile(sb, file);
+        return sb.toString();
+    }
+
+    static void appendFile(StringBuilder sb, FileMetricsView f) {
+        sb.append("{\"filePath\":").append(quote(f.getFilePath()))
+                .append(",\"relativePath\":").append(quote(f.getRelativePath()))
+                .append(",\"totalLines\":").append(f.getTotalLines())
+                .append(",\"codeLines\":").append(f.getCodeLines())
+                .append(",\"commentLines\":").append(f.getCommentLines())
+                .append(",\"cyclomaticComplexity\":").append(f.getCyclomaticComplexity())
+                .append(",\"maintainabilityIndex\":").append(number(f.getMaintainabilityIndex()));
+        if (f.getDegraded() != null) sb.append(",\"degraded\":").append(quote(f.getDegraded()));
+        sb.append(",\"methods\":[");
+        for (int i = 0; i < f.getMethods().size(); i++) {
+            MethodMetricsView m = f.getMethods().get(i);
+            if (i > 0) sb.append(',');
+            sb.append("{\"name\":").append(quote(m.getName()))
+                    .append(",\"signature\":").append(quote(m.getSignature()))
+                    .append(",\"lineStart\":").append(m.getLineStart())
+                    .append(",\"lineEnd\":").append(m.getLineEnd())
+                    .append(",\"cyclomaticComplexity\":").append(m.getCyclomaticComplexity())
+                    .append(",\"linesOfCode\":").append(m.getLinesOfCode())
+                    .append(",\"maintainabilityIndex\":").append(number(m.getMaintainabilityIndex()))
+                    .append('}');
+        }
+        sb.append("]}");
+    }
+
+    static void appendDuplicate(StringBuilder sb, DuplicateBlock d) {
+        sb.append("{\"hash\":").append(quote(d.getNormalizedHash()))
+                .append(",\"tokenCount\":").append(d.getTokenCount())
+                .append(",\"similarity\":").append(number(d.getSimilarity()))
+                .append(",\"occurrences\":[");
+        for (int i = 0; i < d.getOccurrences().size(); i++) {
+            DuplicateOccurrence o = d.getOccurrences().get(i);
+            if (i > 0) sb.append(',');
+            sb.append("{\"filePath\":").append(quote(o.getFilePath()))
+                    .append(",\"lineStart\":").append(o.getLineStart())
+                    .append(",\"lineEnd\":").append(o.getLineEnd())
+                    .append(",\"preview\":").append(quote(o.getPreview()))
+                    .append('}');
+        }
+        sb.append("]}");
+    }
+
+    static String rollup(MetricsRollup rollup) {
+        StringBuilder sb = new StringBuilder("{\"project\":");
+        appendTotals(sb, rollup.project());
+        sb.append(",\"modules\":[");
+        List<MetricsRollup.Totals> modules = rollup.modules();
+        for (int i = 0; i < modules.size(); i++) {
+            if (i > 0) sb.append(',');
+            appendTotals(sb, modules.get(i));
+        }
+        sb.append("],\"packages\":[");
+        List<MetricsRollup.Totals> packages = rollup.packages();
+        for (int i = 0; i < packages.size(); i++) {
+            if (i > 0) sb.append(',');
+            appendTotals(sb, packages.get(i));
+        }
+        sb.append("],\"mostComplex\":");
+        appendHotspots(sb, rollup.mostComplex());
+        sb.append(",\"leastMaintainable\":");
+        appendHotspots(sb, rollup.leastMaintainable());
+        return sb.append('}').toString();
+    }
+
+    private static void appendTotals(StringBuilder sb, MetricsRollup.Totals t) {
+        sb.append("{\"module\":").append(quote(t.module()))
+                .append(",\"package\":").append(quote(t.packageName()))
+                .append(",\"files\":").append(t.files())
+                .append(",\"methods\":").append(t.methods())
+                .append(",\"totalLines\":").append(t.totalLines())
+                .append(",\"codeLines\":").append(t.codeLines())
+                .append(",\"cyclomaticComplexity\":").append(t.complexity())
+                .append(",\"maxMethodComplexity\":").append(t.maxMethodComplexity())
+                .append(",\"maintainabilityIndex\":").append(number(t.maintainability()))
+                .append('}');
+    }
+
+    private static void appendHotspots(StringBuilder sb, List<MetricsRollup.Hotspot> hotspots) {
+        sb.append('[');
+        for (int i = 0; i < hotspots.size(); i++) {
+            MetricsRollup.Hotspot h = hotspots.get(i);
+            if (i > 0) sb.append(',');
+            sb.append("{\"relativePath\":").append(quote(h.path()))
+                    .append(",\"name\":").append(quote(h.method()))
+                    .append(",\"lineStart\":").append(h.line())
+                    .append(",\"cyclomaticComplexity\":").append(h.complexity())
+                    .append(",\"linesOfCode\":").append(h.linesOfCode())
+                    .append(",\"maintainabilityIndex\":").append(number(h.maintainability()))
+                    .append('}');
+        }
+        sb.append(']');
+    }
+
+    static String number(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) return "null";
+        return Math.rint(value) == value && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    static String quote(String s) {
+        if (s == null) return "null";
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -1,27 +1,134 @@
 package com.codeanalyzer;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 public class Main {
 
+    @SuppressWarnings("try")
     public static void main(String[] args) throws Exception {
+        if (args.length > 0 && "diff".equals(args[0])) {
+            diff(args);
+            return;
+        }
+        if (args.length > 0 && "merge".equals(args[0])) {
+            merge(args);
+            return;
+        }
         String path = args.length > 0 ? args[0] : System.getProperty("user.dir");
         String format = "html";
         String outputPath = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean useCache = true;
+        String cacheDir = null;
+        boolean stream = false;
+        boolean compact = false;
+        int minTokens = DuplicationDetector.DEFAULT_MIN_TOKENS;
+        long dupMemoryBytes = 0;
+        boolean daemon = false;
+        int port = 7878;
+        boolean profile = false;
+        int profileTop = AnalysisProfiler.DEFAULT_TOP_FILES;
+        String snapshotPath = null;
+        String baselinePath = null;
+        String changedSince = null;
+        int shard = 0;
+        int shardCount = 0;
+        boolean coupling = false;
+        long couplingBudgetMs = CouplingAnalyzer.DEFAULT_BUDGET_MS;
+        boolean nearMiss = false;
+        double similarity = NearMissDetector.DEFAULT_THRESHOLD;
+        AnalysisOptions options = new AnalysisOptions();
 
         for (int i = 1; i < args.length; i++) {
             if ("--format".equals(args[i]) || "-f".equals(args[i])) {
                 if (i + 1 < args.length) format = args[++i].toLowerCase();
             } else if ("--output".equals(args[i]) || "-o".equals(args[i])) {
                 if (i + 1 < args.length) outputPath = args[++i];
+            } else if ("--threads".equals(args[i]) || "-t".equals(args[i])) {
+                if (i + 1 < args.length) threads = Math.max(1, intOption(args[i], args[++i]));
+            } else if ("--cache-dir".equals(args[i])) {
+                if (i + 1 < args.length) cacheDir = args[++i];
+            } else if ("--no-cache".equals(args[i])) {
+                useCache = false;
+            } else if ("--stream".equals(args[i])) {
+                stream = true;
+            } else if ("--compact".equals(args[i])) {
+                compact = true;
+            } else if ("--min-tokens".equals(args[i])) {
+                if (i + 1 < args.length) minTokens = intOption(args[i], args[++i]);
+            } else if ("--dup-memory-mb".equals(args[i])) {
+                if (i + 1 < args.length) dupMemoryBytes = longOption(args[i], args[++i]) << 20;
+            } else if ("--daemon".equals(args[i])) {
+                daemon = true;
+            } else if ("--port".equals(args[i])) {
+                if (i + 1 < args.length) port = intOption(args[i], args[++i]);
+            } else if ("--profile".equals(args[i])) {
+                profile = true;
+            } else if ("--profile-top".equals(args[i])) {
+                if (i + 1 < args.length) profileTop = intOption(args[i], args[++i]);
+            } else if ("--snapshot".equals(args[i])) {
+                if (i + 1 < args.length) snapshotPath = args[++i];
+            } else if ("--baseline".equals(args[i])) {
+                if (i + 1 < args.length) baselinePath = args[++i];
+            } else if ("--changed-since".equals(args[i])) {
+                if (i + 1 < args.length) changedSince = args[++i];
+            } else if ("--coupling".equals(args[i])) {
+                coupling = true;
+            } else if ("--coupling-budget-ms".equals(args[i])) {
+                if (i + 1 < args.length) couplingBudgetMs = longOption(args[i], args[++i]);
+            } else if ("--near-miss".equals(args[i])) {
+                nearMiss = true;
+            } else if ("--similarity".equals(args[i])) {
+                if (i + 1 < args.length) similarity = doubleOption(args[i], args[++i]);
+            } else if ("--include".equals(args[i])) {
+                if (i + 1 < args.length) options.getIncludes().add(args[++i]);
+            } else if ("--exclude".equals(args[i])) {
+                if (i + 1 < args.length) options.getExcludes().add(args[++i]);
+            } else if ("--no-ignore".equals(args[i])) {
+                options.setIgnoreFiles(false);
+            } else if ("--follow-links".equals(args[i])) {
+                options.setFollowLinks(true);
+            } else if ("--max-file-kb".equals(args[i])) {
+                if (i + 1 < args.length) options.setMaxFileBytes(longOption(args[i], args[++i]) * 1024);
+            } else if ("--file-timeout-ms".equals(args[i])) {
+                if (i + 1 < args.length) options.setFileTimeoutMs(longOption(args[i], args[++i]));
+            } else if ("--max-depth".equals(args[i])) {
+                if (i + 1 < args.length) options.setMaxDepth(intOption(args[i], args[++i]));
+            } else if ("--shard".equals(args[i])) {
+                if (i + 1 < args.length) {
+                    String[] parts = args[++i].split("/");
+                    try {
+                        shard = Integer.parseInt(parts[0]);
+                        shardCount = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+                    } catch (NumberFormatException e) {
+                        System.err.println("Error: --shard expects i/N with 1 <= i <= N");
+                        System.exit(1);
+                    }
+                }
             }
         }
 
+        if (!(similarity > 0 && similarity <= 1)) {
+            System.err.println("Error: --similarity expects a value in (0, 1]");
+            System.exit(1);
+        }
+        if (changedSince != null && (snapshotPath != null || baselinePath != null)) {
+            // Only the touched files are analyzed, so a snapshot would look like everything else was deleted.
+            System.err.println("Error: --changed-since cannot be combined with --snapshot or --baseline; "
+                    + "they need the whole tree, so run them without --changed-since");
+            System.exit(1);
+        }
         Path root = Paths.get(path).toAbsolutePath();
         if (!Files.isDirectory(root)) {
             System.err.println("Error: Directory not found: " + path);
@@ -29,28 +136,439 @@ public class Main {
         }
 
         System.out.println("Analyzing Java source in: " + root);
-        List<FileMetrics> files = JavaAnalyzer.analyzeDirectory(root);
-        if (files.isEmpty()) {
-            System.out.println("No .java files found or all failed to parse.");
+        options.setThreads(threads);
+        options.setCoupling(coupling);
+        options.setNearMiss(nearMiss);
+        AnalysisCache cache = null;
+        if (useCache) {
+            cache = new AnalysisCache(cacheDir != null ? Paths.get(cacheDir) : root.resolve(AnalysisCache.DEFAULT_DIR));
+            options.setCache(cache);
+        }
+
+        if (daemon) {
+            new AnalysisDaemon(root, options, minTokens, similarity).run(port);
             return;
         }
 
-        List<DuplicateBlock> duplicates = DuplicationDetector.detectDuplicates(files);
+        AnalysisProfiler profiler = profile ? new AnalysisProfiler(profileTop) : null;
+        options.setProfiler(profiler);
+        if (shardCount > 0) {
+            if (shard < 1 || shard > shardCount) {
+                System.err.println("Error: --shard expects i/N with 1 <= i <= N");
+                System.exit(1);
+            }
+            Path shardPath = outputPath != null ? Paths.get(outputPath)
+                    : root.resolve("code-metrics-shard-" + shard + "-of-" + shardCount + ".shard");
+            runShard(root, options, shard, shardCount, shardPath);
+            if (profiler != null) {
+                Path profilePath = shardPath.resolveSibling(shardPath.getFileName() + ".profile.json");
+                profiler.writeJson(profilePath, threads);
+                System.out.println("Profile written to: " + profilePath);
+            }
+            return;
+        }
+        GitChanges changes = null;
+        if (changedSince != null) {
+            changes = GitChanges.since(root, changedSince);
+            // Change marks live on the object model, which the compact store does not carry.
+            compact = false;
+        }
+        boolean showChanges = changes != null;
+        if (coupling) {
+            // Afferent coupling needs every file before any row can be written.
+            stream = false;
+            compact = false;
+        }
+
         String projectName = root.getFileName() != null ? root.getFileName().toString() : path;
-        AnalysisResult result = new AnalysisResult();
-        result.setProjectPath(projectName);
-        result.setAnalyzedAt(Instant.now());
-        result.getFiles().addAll(files);
-        result.getDuplicates().addAll(duplicates);
-
-        String report = "csv".equals(format)
-                ? ReportGenerator.generateCsv(result)
-                : ReportGenerator.generateHtml(result);
-        String defaultName = "csv".equals(format) ? "code-metrics-report.csv" : "code-metrics-report.html";
-        Path outPath = outputPath != null ? Paths.get(outputPath) : root.resolve(defaultName);
-        Files.writeString(outPath, report);
+        Path outPath = outputPath != null ? Paths.get(outputPath) : root.resolve(defaultReportName(format));
+
+        long started = System.nanoTime();
+        Instant analyzedAt = Instant.now();
+        int fileCount;
+        int duplicateCount;
+        int nearMissCount = 0;
+        int degradedCount;
+        // Near-miss clones compare whole methods, so they are indexed alongside the token index in every mode.
+        NearMissDetector.Index nearMissIndex = nearMiss ? new NearMissDetector.Index(similarity) : null;
+        boolean needsResult = snapshotPath != null || baselinePath != null;
+        List<? extends FileMetricsView> resultFiles = null;
+        List<DuplicateBlock> resultDuplicates = null;
+        if (stream) {
+            // Rows go straight to the report as files complete; only the duplicate index is retained,
+            // plus a compact copy of the metrics when a snapshot or baseline diff needs them.
+            DuplicationDetector.Index index = new DuplicationDetector.Index(minTokens, dupMemoryBytes);
+            CompactResultStore store = needsResult ? new CompactResultStore(false) : null;
+            int[] analyzed = { 0 };
+            try (ReportWriter writer = newReportWriter(format, outPath, showChanges)) {
+                writer.begin(projectName, analyzedAt);
+                degradedCount = analyze(root, changes, options, file -> {
+                    try (AnalysisProfiler.Phase phase = AnalysisProfiler.phase(profiler, "report")) {
+                        writer.writeFile(file);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    index.add(file);
+                    if (nearMissIndex != null) nearMissIndex.add(file);
+                    if (store != null) store.add(file);
+                    analyzed[0]++;
+                });
+                List<DuplicateBlock> duplicates;
+                try (AnalysisProfiler.Phase phase = AnalysisProfiler.phase(profiler, "duplicates")) {
+                    duplicates = index.build();
+                    nearMissCount = addNearMisses(duplicates, nearMissIndex);
+                }
+                try (AnalysisProfiler.Phase phase = AnalysisProfiler.phase(profiler, "report")) {
+                    writer.finish(duplicates);
+                }
+                fileCount = analyzed[0];
+                duplicateCount = duplicates.size();
+                resultDuplicates = duplicates;
+            }
+            if (store != null) {
+                store.trim();
+                resultFiles = store.files();
+            }
+        } else if (compact) {
+            // Files go into primitive arrays as they complete; the report reads them through flyweights.
+            CompactResultStore store = new CompactResultStore();
+            degradedCount = analyze(root, null, options, file -> {
+                store.add(file);
+                if (nearMissIndex != null) nearMissIndex.add(file);
+            });
+            store.trim();
+            if (store.fileCount() == 0) {
+                System.out.println("No .java files found or all failed to parse.");
+                return;
+            }
+
+            List<DuplicateBlock> duplicates;
+            try (AnalysisProfiler.Phase phase = AnalysisProfiler.phase(profiler, "duplicates")) {
+                duplicates = DuplicationDetector.detectDuplicates(store.files(), minTokens, dupMemoryBytes);
+                nearMissCount = addNearMisses(duplicates, nearMissIndex);
+            }
+            try (AnalysisProfiler.Phase phase = AnalysisProfiler.phase(profiler, "report")) {
+                ReportGenerator.write(projectName, analyzedAt, store.files(), duplicates,
+                        newReportWriter(format, outPath, showChanges), !"csv".equals(format));
+            }
+            fileCount = store.fileCount();
+            duplicateCount = duplicates.size();
+            resultFiles = store.files();
+            resultDuplicates = duplicates;
+        } else {
+            List<FileMetrics> files = new ArrayList<>();
+            degradedCount = analyze(root, changes, options, file -> {
+                files.add(file);
+                if (nearMissIndex != null) nearMissIndex.add(file);
+            });
+            if (files.isEmpty()) {
+                System.out.println("No .java files found or all failed to parse.");
+                return;
+            }
 
+            List<DuplicateBlock> duplicates;
+            try (AnalysisProfiler.Phase phase = AnalysisProfiler.phase(profiler, "duplicates")) {
+                duplicates = DuplicationDetector.detectDuplicates(files, minTokens, dupMemoryBytes);
+                nearMissCount = addNearMisses(duplicates, nearMissIndex);
+            }
+            AnalysisResult result = new AnalysisResult();
+            result.setProjectPath(projectName);
+            result.setAnalyzedAt(analyzedAt);
+            result.getFiles().addAll(files);
+            result.getDuplicates().addAll(duplicates);
+            if (coupling) {
+                try (AnalysisProfiler.Phase phase = AnalysisProfiler.phase(profiler, "coupling")) {
+                    result.setCoupling(CouplingAnalyzer.analyze(files, threads, couplingBudgetMs));
+                }
+                printCoupling(result.getCoupling());
+            }
+            try (AnalysisProfiler.Phase phase = AnalysisProfiler.phase(profiler, "report")) {
+                ReportGenerator.write(result, newReportWriter(format, outPath, showChanges), !"csv".equals(format));
+            }
+            fileCount = files.size();
+            duplicateCount = duplicates.size();
+            resultFiles = files;
+            resultDuplicates = duplicates;
+        }
+        long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+        if (cache != null) {
+            // A run over only the changed files has not looked up the rest of the tree's entries.
+            int evicted = changes == null ? cache.evictStale() : 0;
+            System.out.println("Cache: " + cache.getHits() + " hits, " + cache.getMisses() + " misses, " + evicted + " stale entries evicted");
+        }
+
+        if (changes != null) {
+            System.out.println("Changed since " + changedSince + ": " + changes.changedFileCount() + " files ("
+                    + changes.deletedFileCount() + " deleted), " + changes.touchedMethodCount() + " methods touched");
+        }
         System.out.println("Report written to: " + outPath);
-        System.out.println("Files analyzed: " + files.size() + ", Duplicate groups: " + duplicates.size());
+        System.out.println("Files analyzed: " + fileCount + ", Duplicate groups: " + duplicateCount
+                + (nearMiss ? " (" + nearMissCount + " near-miss)" : ""));
+        printDegraded(degradedCount);
+        if (needsResult) {
+            ByteBuffer snapshot = ResultSnapshot.encode(projectName, analyzedAt, resultFiles, resultDuplicates);
+            if (snapshotPath != null) {
+                ResultSnapshot.write(Paths.get(snapshotPath), snapshot.duplicate());
+                System.out.println("Snapshot written to: " + snapshotPath);
+            }
+            if (baselinePath != null) {
+                Path diffPath = outPath.resolveSibling(outPath.getFileName() + ".diff.csv");
+                SnapshotDiff diff;
+                try {
+                    diff = SnapshotDiff.compute(ResultSnapshot.open(Paths.get(baselinePath)), ResultSnapshot.wrap(snapshot));
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Error: " + baselinePath + ": " + e.getMessage());
+                    System.exit(1);
+                    return;
+                }
+                writeDiff(diff, diffPath);
+            }
+        }
+        if (profiler != null) {
+            Path profilePath = outPath.resolveSibling(outPath.getFileName() + ".profile.json");
+            profiler.writeJson(profilePath, threads);
+            System.out.println("Profile written to: " + profilePath);
+        }
+        System.out.println("Analysis time: " + elapsedMs + " ms (" + threads + " thread" + (threads == 1 ? "" : "s") + ")");
+    }
+
+    /**
+     * Analyzes the files of one shard and writes them, with their token streams, to {@code shardPath}.
+     * Duplicates are left to {@code merge}, which sees every shard. The cache is not evicted, since
+     * this run only looked up its own share of the tree.
+     */
+    private static void runShard(Path root, AnalysisOptions options, int shard, int count, Path shardPath) throws Exception {
+        long started = System.nanoTime();
+        List<Path> all = JavaAnalyzer.discover(root, options);
+        List<Path> files = ShardFile.select(root, all, shard, count);
+        String projectName = root.getFileName() != null ? root.getFileName().toString() : root.toString();
+        int written;
+        try (ShardFile.Writer writer = new ShardFile.Writer(shardPath, shard, count, all.size(), projectName, root, Instant.now())) {
+            JavaAnalyzer.analyzeFiles(root, files, options, file -> {
+                try {
+                    writer.add(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            written = writer.written();
+        }
+        AnalysisCache cache = options.getCache();
+        if (cache != null) System.out.println("Cache: " + cache.getHits() + " hits, " + cache.getMisses() + " misses");
+        System.out.println("Shard " + shard + "/" + count + ": " + written + " of " + all.size() + " files analyzed");
+        System.out.println("Shard written to: " + shardPath);
+        System.out.println("Analysis time: " + (System.nanoTime() - started) / 1_000_000 + " ms (" + options.getThreads()
+                + " thread" + (options.getThreads() == 1 ? "" : "s") + ")");
+    }
+
+    /**
+     * {@code merge <shard>... [-f html|csv|paged] [-o report] [--min-tokens N] [--dup-memory-mb N] [--snapshot FILE]
+     * [--root DIR] [--coupling-budget-ms N] [--similarity T]}: combines the shards of a split run into one report,
+     * detecting duplicates across all of them. File paths are rebuilt under the first shard's root
+     * unless {@code --root} is given.
+     */
+    private static void merge(String[] args) throws IOException {
+        List<Path> shardPaths = new ArrayList<>();
+        String format = "html";
+        String outputPath = null;
+        int minTokens = DuplicationDetector.DEFAULT_MIN_TOKENS;
+        long dupMemoryBytes = 0;
+        String snapshotPath = null;
+        String root = null;
+        long couplingBudgetMs = CouplingAnalyzer.DEFAULT_BUDGET_MS;
+        double similarity = NearMissDetector.DEFAULT_THRESHOLD;
+        for (int i = 1; i < args.length; i++) {
+            if ("--format".equals(args[i]) || "-f".equals(args[i])) {
+                if (i + 1 < args.length) format = args[++i].toLowerCase();
+            } else if ("--output".equals(args[i]) || "-o".equals(args[i])) {
+                if (i + 1 < args.length) outputPath = args[++i];
+            } else if ("--min-tokens".equals(args[i])) {
+                if (i + 1 < args.length) minTokens = intOption(args[i], args[++i]);
+            } else if ("--dup-memory-mb".equals(args[i])) {
+                if (i + 1 < args.length) dupMemoryBytes = longOption(args[i], args[++i]) << 20;
+            } else if ("--snapshot".equals(args[i])) {
+                if (i + 1 < args.length) snapshotPath = args[++i];
+            } else if ("--root".equals(args[i])) {
+                if (i + 1 < args.length) root = args[++i];
+            } else if ("--coupling-budget-ms".equals(args[i])) {
+                if (i + 1 < args.length) couplingBudgetMs = longOption(args[i], args[++i]);
+            } else if ("--similarity".equals(args[i])) {
+                if (i + 1 < args.length) similarity = doubleOption(args[i], args[++i]);
+            } else {
+                shardPaths.add(Paths.get(args[i]));
+            }
+        }
+        if (shardPaths.isEmpty()) {
+            System.err.println("Usage: merge <shard-file>... [--format html|csv|paged] [--output report] [--min-tokens N] [--dup-memory-mb N] [--snapshot FILE] [--root DIR] [--coupling-budget-ms N] [--similarity T]");
+            System.exit(1);
+        }
+
+        long started = System.nanoTime();
+        AnalysisResult result;
+        try {
+            List<ShardFile> shards = new ArrayList<>();
+            for (Path p : shardPaths) {
+                ShardFile s = ShardFile.read(p, root);
+                if (root == null) root = s.rootPath();
+                shards.add(s);
+            }
+            result = ShardFile.merge(shards, minTokens, dupMemoryBytes);
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        // Shards run with --near-miss carry method shingles; compare them across all shards.
+        if (result.getFiles().stream().anyMatch(f -> !f.getMethods().isEmpty() && f.getMethods().get(0).getShingles() != null)) {
+            List<DuplicateBlock> nearMisses = NearMissDetector.detect(result.getFiles(), similarity);
+            result.getDuplicates().addAll(nearMisses);
+            System.out.println("Near-miss groups: " + nearMisses.size());
+        }
+        // Shards run with --coupling carry their type references; resolve them across all shards.
+        if (result.getFiles().stream().anyMatch(f -> f.getTypes() != null)) {
+            try {
+                result.setCoupling(CouplingAnalyzer.analyze(result.getFiles(), Runtime.getRuntime().availableProcessors(), couplingBudgetMs));
+            } catch (Exception e) {
+                throw new IOException("Coupling analysis failed", e);
+            }
+            printCoupling(result.getCoupling());
+        }
+        Path outPath = Paths.get(outputPath != null ? outputPath : defaultReportName(format));
+        ReportGenerator.write(result, newReportWriter(format, outPath, false), !"csv".equals(format));
+        if (snapshotPath != null) {
+            ResultSnapshot.write(Paths.get(snapshotPath), result.getProjectPath(), result.getAnalyzedAt(),
+                    result.getFiles(), result.getDuplicates());
+            System.out.println("Snapshot written to: " + snapshotPath);
+        }
+        System.out.println("Report written to: " + outPath);
+        System.out.println("Shards merged: " + shardPaths.size() + ", Files: " + result.getFiles().size()
+                + ", Duplicate groups: " + result.getDuplicates().size());
+        // The shard runs warned about their own files; repeat them here, where the report is made.
+        int degraded = 0;
+        for (FileMetrics f : result.getFiles()) {
+            if (f.getDegraded() == null) continue;
+            System.err.println("Warning: Approximate metrics for " + f.getFilePath() + ": " + f.getDegraded());
+            degraded++;
+        }
+        printDegraded(degraded);
+        System.out.println("Merge time: " + (System.nanoTime() - started) / 1_000_000 + " ms");
+    }
+
+    /** {@code diff <baseline.snap> <current.snap> [-o diff.csv]}: compares two saved snapshots. */
+    private static void diff(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: diff <baseline-snapshot> <current-snapshot> [--output diff.csv]");
+            System.exit(1);
+        }
+        Path out = Paths.get("code-metrics-diff.csv");
+        for (int i = 3; i < args.length; i++) {
+            if (("--output".equals(args[i]) || "-o".equals(args[i])) && i + 1 < args.length) out = Paths.get(args[++i]);
+        }
+        long started = System.nanoTime();
+        SnapshotDiff diff;
+        try {
+            diff = SnapshotDiff.compute(ResultSnapshot.open(Paths.get(args[1])), ResultSnapshot.open(Paths.get(args[2])));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        writeDiff(diff, out);
+        System.out.println("Diff time: " + (System.nanoTime() - started) / 1_000_000 + " ms");
+    }
+
+    /** Appends the near-miss groups after the exact ones and returns how many there were. */
+    private static int addNearMisses(List<DuplicateBlock> duplicates, NearMissDetector.Index nearMissIndex) {
+        if (nearMissIndex == null) return 0;
+        List<DuplicateBlock> nearMisses = nearMissIndex.build();
+        duplicates.addAll(nearMisses);
+        return nearMisses.size();
+    }
+
+    private static void printCoupling(CouplingAnalyzer.Summary coupling) {
+        System.out.println("Coupling: " + coupling.types() + " types in " + coupling.packages().size() + " packages resolved in "
+                + coupling.elapsedMs() + " ms" + (coupling.filesOverBudget() > 0 ? ", " + coupling.filesOverBudget() + " files over budget" : ""));
+    }
+
+    private static void writeDiff(SnapshotDiff diff, Path diffPath) throws IOException {
+        try (Writer out = Files.newBufferedWriter(diffPath, StandardCharsets.UTF_8)) {
+            diff.writeCsv(out);
+        }
+        System.out.println(diff.summary());
+        System.out.println("Diff written to: " + diffPath);
+    }
+
+    /**
+     * Analyzes the whole tree, or with {@code changes} only the touched files, marking touched
+     * callables. Returns how many files got approximate metrics.
+     */
+    private static int analyze(Path root, GitChanges changes, AnalysisOptions options, Consumer<FileMetrics> sink) throws Exception {
+        int[] degraded = { 0 };
+        Consumer<FileMetrics> counted = file -> {
+            if (file.getDegraded() != null) degraded[0]++;
+            sink.accept(file);
+        };
+        if (changes == null) {
+            JavaAnalyzer.analyzeDirectory(root, options, counted);
+            return degraded[0];
+        }
+        JavaAnalyzer.analyzeFiles(root, changes.existingFiles(new SourceDiscovery(root, options)), options, file -> {
+            changes.annotate(file, options.getCache());
+            counted.accept(file);
+        });
+        return degraded[0];
+    }
+
+    private static void printDegraded(int degraded) {
+        if (degraded > 0) {
+            System.out.println("Approximate metrics: " + degraded + " file" + (degraded == 1 ? "" : "s")
+                    + " over a per-file limit or with syntax errors (reasons in the warnings above)");
+        }
+    }
+
+    /** Option values are checked here so that a typo is a usage error rather than a stack trace. */
+    private static int intOption(String option, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return badNumber(option, value);
+        }
+    }
+
+    private static long longOption(String option, String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return badNumber(option, value);
+        }
+    }
+
+    private static double doubleOption(String option, String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return badNumber(option, value);
+        }
+    }
+
+    private static int badNumber(String option, String value) {
+        System.err.println("Error: " + option + " expects a number, got \"" + value + "\"");
+        System.exit(1);
+        return 0;
+    }
+
+    private static String defaultReportName(String format) {
+        return switch (format) {
+            case "csv" -> "code-metrics-report.csv";
+            case "paged" -> "code-metrics-report";
+            default -> "code-metrics-report.html";
+        };
+    }
+
+    /** For {@code paged}, {@code outPath} is the directory the report is written into. */
+    private static ReportWriter newReportWriter(String format, Path outPath, boolean showChanges) throws IOException {
+        if ("paged".equals(format)) return ReportGenerator.pagedHtmlWriter(outPath, showChanges);
+        Writer out = Files.newBufferedWriter(outPath, StandardCharsets.UTF_8);
+        return "csv".equals(format) ? ReportGenerator.csvWriter(out, showChanges) : ReportGenerator.htmlWriter(out, showChanges);
     }
 }
@@ -1,6 +1,6 @@
 package com.codeanalyzer;
 
-public class MethodMetrics {
+public class MethodMetrics implements MethodMetricsView {
     private final String name;
     private final String signature;
     private int lineStart;
@@ -8,6 +8,9 @@ public class MethodMetrics {
     private int cyclomaticComplexity;
     private int linesOfCode;
     private double maintainabilityIndex;
+    private boolean changed;
+    private MethodMetrics baseline;
+    private int[] shingles;
 
     public MethodMetrics(String name, String signature) {
         this.name = name;
@@ -26,4 +29,10 @@ public class MethodMetrics {
     public void setLinesOfCode(int linesOfCode) { this.linesOfCode = linesOfCode; }
     public double getMaintainabilityIndex() { return maintainabilityIndex; }
     public void setMaintainabilityIndex(double maintainabilityIndex) { this.maintainabilityIndex = maintainabilityIndex; }
+    public boolean isChanged() { return changed; }
+    public void setChanged(boolean changed) { this.changed = changed; }
+    public MethodMetrics getBaseline() { return baseline; }
+    public void setBaseline(MethodMetrics baseline) { this.baseline = baseline; }
+    public int[] getShingles() { return shingles; }
+    public void setShingles(int[] shingles) { this.shingles = shingles; }
 }
@@ -0,0 +1,21 @@
+package com.codeanalyzer;
+
+/** Read-only access to one callable's metrics; see {@link FileMetricsView}. */
+public interface MethodMetricsView {
+    String getName();
+    String getSignature();
+    int getLineStart();
+    int getLineEnd();
+    int getCyclomaticComplexity();
+    int getLinesOfCode();
+    double getMaintainabilityIndex();
+
+    /** Whether a {@code --changed-since} diff touched this callable's lines. */
+    default boolean isChanged() { return false; }
+
+    /** The same callable at the base revision of a {@code --changed-since} run, or null if it is new. */
+    default MethodMetricsView getBaseline() { return null; }
+
+    /** Sorted AST shape hashes used by {@link NearMissDetector}, or null when not collected. */
+    default int[] getShingles() { return null; }
+}
@@ -0,0 +1,186 @@
+package com.codeanalyzer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Project, module and package totals plus the worst methods, kept up to date as files are added
+ * so a report can show them after a single pass over its rows. Adding a file costs a few map
+ * lookups and, per method, a comparison against the head of each bounded hotspot heap.
+ *
+ * <p>Both are read from the file's relative path, so they are available without {@code --coupling}.
+ * The package is the directory below the source root ({@code src/main/java}, {@code src/test/java},
+ * or {@code src}), which matches the declared package in a conventionally laid out tree. The module
+ * is the directory holding that {@code src}, as in a Maven or Gradle multi-module build; files
+ * outside any {@code src} belong to the root module and their directory is taken as the package.
+ */
+public final class MetricsRollup {
+
+    public static final int DEFAULT_HOTSPOTS = 20;
+
+    /**
+     * Sums over the files of one package, of one module ({@code packageName} null) or of the project
+     * (both null). {@code maintainability} is the mean method MI, or the mean file MI when there are
+     * no methods.
+     */
+    public record Totals(String module, String packageName, int files, int methods, int totalLines, int codeLines,
+                         int complexity, int maxMethodComplexity, double maintainability) {}
+
+    public record Hotspot(String path, String method, int line, int complexity, int linesOfCode, double maintainability) {}
+
+    /** Highest CC first; ties go to the lower MI, then path order. */
+    public static final Comparator<Hotspot> MOST_COMPLEX = Comparator.comparingInt(Hotspot::complexity).reversed()
+            .thenComparingDouble(Hotspot::maintainability).thenComparing(Hotspot::path).thenComparingInt(Hotspot::line);
+
+    /** Lowest MI first; ties go to the higher CC, then path order. */
+    public static final Comparator<Hotspot> LEAST_MAINTAINABLE = Comparator.comparingDouble(Hotspot::maintainability)
+            .thenComparing(Comparator.comparingInt(Hotspot::complexity).reversed())
+            .thenComparing(Hotspot::path).thenComparingInt(Hotspot::line);
+
+    private final int hotspots;
+    private final Node project = new Node();
+    private final Map<String, Module> modules = new HashMap<>();
+    // Heads are the weakest kept entry, the one a better method replaces.
+    private final PriorityQueue<Hotspot> complex;
+    private final PriorityQueue<Hotspot> unmaintainable;
+    // Files arrive grouped by directory, so the last directory's nodes are usually the next file's too.
+    private String lastDirectory;
+    private Node lastModule;
+    private Node lastPackage;
+
+    public MetricsRollup() {
+        this(DEFAULT_HOTSPOTS);
+    }
+
+    public MetricsRollup(int hotspots) {
+        this.hotspots = Math.max(0, hotspots);
+        this.complex = new PriorityQueue<>(this.hotspots + 1, MOST_COMPLEX.reversed());
+        this.unmaintainable = new PriorityQueue<>(this.hotspots + 1, LEAST_MAINTAINABLE.reversed());
+    }
+
+    public void add(FileMetricsView file) {
+        String path = file.getRelativePath().replace('\\', '/');
+        int slash = path.lastIndexOf('/');
+        String directory = slash < 0 ? "" : path.substring(0, slash);
+        if (!directory.equals(lastDirectory)) locate(directory);
+
+        int maxComplexity = 0;
+        double miSum = 0;
+        for (MethodMetricsView m : file.getMethods()) {
+            maxComplexity = Math.max(maxComplexity, m.getCyclomaticComplexity());
+            miSum += m.getMaintainabilityIndex();
+            offer(path, m);
+        }
+        for (Node node : new Node[] { project, lastModule, lastPackage }) {
+            node.files++;
+            node.methods += file.getMethods().size();
+            node.totalLines += file.getTotalLines();
+            node.codeLines += file.getCodeLines();
+            node.complexity += file.getCyclomaticComplexity();
+            node.maxMethodComplexity = Math.max(node.maxMethodComplexity, maxComplexity);
+            node.methodMiSum += miSum;
+            node.fileMiSum += file.getMaintainabilityIndex();
+        }
+    }
+
+    private void locate(String directory) {
+        String[] parts = directory.isEmpty() ? new String[0] : directory.split("/");
+        int src = -1;
+        for (int i = 0; i < parts.length && src < 0; i++) if (parts[i].equals("src")) src = i;
+        int root = 0;
+        if (src >= 0) {
+            root = src + 1;
+            if (src + 2 < parts.length && parts[src + 2].equals("java")) root = src + 3;
+            else if (src + 1 < parts.length && parts[src + 1].equals("java")) root = src + 2;
+        }
+        String module = src > 0 ? String.join("/", List.of(parts).subList(0, src)) : "";
+        String packageName = root < parts.length ? String.join(".", List.of(parts).subList(root, parts.length)) : "";
+        Module m = modules.computeIfAbsent(module, k -> new Module());
+        lastDirectory = directory;
+        lastModule = m;
+        lastPackage = m.packages.computeIfAbsent(packageName, k -> new Node());
+    }
+
+    private void offer(String path, MethodMetricsView m) {
+        if (hotspots == 0) return;
+        int cc = m.getCyclomaticComplexity();
+        double mi = m.getMaintainabilityIndex();
+        // Most methods lose to both heads on the primary key alone; only build a hotspot when one may win.
+        boolean complexCandidate = complex.size() < hotspots || cc >= complex.peek().complexity();
+        boolean miCandidate = unmaintainable.size() < hotspots || mi <= unmaintainable.peek().maintainability();
+        if (!complexCandidate && !miCandidate) return;
+        Hotspot h = new Hotspot(path, m.getName(), m.getLineStart(), cc, m.getLinesOfCode(), mi);
+        if (complexCandidate) keep(complex, h, MOST_COMPLEX);
+        if (miCandidate) keep(unmaintainable, h, LEAST_MAINTAINABLE);
+    }
+
+    private void keep(PriorityQueue<Hotspot> heap, Hotspot h, Comparator<Hotspot> ranking) {
+        if (heap.size() < hotspots) {
+            heap.add(h);
+        } else if (ranking.compare(h, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(h);
+        }
+    }
+
+    public Totals project() {
+        return project.totals(null, null);
+    }
+
+    /** Sorted by module path; the root module is the empty string. */
+    public List<Totals> modules() {
+        List<Totals> result = new ArrayList<>();
+        for (Map.Entry<String, Module> e : new TreeMap<>(modules).entrySet()) result.add(e.getValue().totals(e.getKey(), null));
+        return result;
+    }
+
+    /** Sorted by module, then package name; the default package is the empty string. */
+    public List<Totals> packages() {
+        List<Totals> result = new ArrayList<>();
+        for (Map.Entry<String, Module> m : new TreeMap<>(modules).entrySet()) {
+            for (Map.Entry<String, Node> p : new TreeMap<>(m.getValue().packages).entrySet()) {
+                result.add(p.getValue().totals(m.getKey(), p.getKey()));
+            }
+        }
+        return result;
+    }
+
+    public List<Hotspot> mostComplex() {
+        return sorted(complex, MOST_COMPLEX);
+    }
+
+    public List<Hotspot> leastMaintainable() {
+        return sorted(unmaintainable, LEAST_MAINTAINABLE);
+    }
+
+    private static List<Hotspot> sorted(PriorityQueue<Hotspot> heap, Comparator<Hotspot> ranking) {
+        List<Hotspot> result = new ArrayList<>(heap);
+        result.sort(ranking);
+        return result;
+    }
+
+    private static class Node {
+        int files;
+        int methods;
+        int totalLines;
+        int codeLines;
+        int complexity;
+        int maxMethodComplexity;
+        double methodMiSum;
+        double fileMiSum;
+
+        Totals totals(String module, String packageName) {
+            double mi = methods > 0 ? methodMiSum / methods : files > 0 ? fileMiSum / files : 0;
+            return new Totals(module, packageName, files, methods, totalLines, codeLines, complexity, maxMethodComplexity, mi);
+        }
+    }
+
+    private static final class Module extends Node {
+        final Map<String, Node> packages = new HashMap<>();
+    }
+}
@@ -0,0 +1,194 @@
+package com.codeanalyzer;
+
+import com.github.javaparser.ast.ImportDeclaration;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.PackageDeclaration;
+import com.github.javaparser.ast.body.*;
+import com.github.javaparser.ast.comments.BlockComment;
+import com.github.javaparser.ast.comments.JavadocComment;
+import com.github.javaparser.ast.comments.LineComment;
+import com.github.javaparser.ast.expr.*;
+import com.github.javaparser.ast.stmt.*;
+import com.github.javaparser.ast.type.ArrayType;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.type.PrimitiveType;
+import com.github.javaparser.ast.type.VoidType;
+import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Computes per-callable metrics in one traversal of a compilation unit. Every method, constructor,
+ * compact constructor, initializer block and lambda gets its own {@link MethodMetrics}, including
+ * those in nested, local and anonymous classes, enums and records. Decision points count towards
+ * the innermost enclosing callable only, so the file total is the sum of its callables.
+ *
+ * <p>Lambdas are named after their enclosing callable and their ordinal in it, e.g.
+ * {@code run$lambda$2}, not after their line, so that snapshots and git diffs match a lambda
+ * across edits that only move it.
+ */
+final class MetricsVisitor extends VoidVisitorAdapter<Void> {
+
+    private static final int MAX_SIGNATURE_LENGTH = 80;
+
+    private final List<MethodMetrics> methods = new ArrayList<>();
+    private final Deque<int[]> complexity = new ArrayDeque<>();
+    private final Deque<Scope> scopes = new ArrayDeque<>(List.of(new Scope("")));
+    private final boolean perCallable;
+
+    private MetricsVisitor(boolean perCallable) {
+        this.perCallable = perCallable;
+    }
+
+    /** Returns metrics for every callable in {@code root}, in source order. */
+    static List<MethodMetrics> collect(Node root) {
+        MetricsVisitor visitor = new MetricsVisitor(true);
+        root.accept(visitor, null);
+        return visitor.methods;
+    }
+
+    /** Counts every decision point under {@code node}, including those in nested callables. */
+    static int countDecisions(Node node) {
+        MetricsVisitor visitor = new MetricsVisitor(false);
+        int[] counter = { 0 };
+        visitor.complexity.push(counter);
+        node.accept(visitor, null);
+        return counter[0];
+    }
+
+    @Override
+    public void visit(MethodDeclaration n, Void arg) {
+        if (!perCallable) { super.visit(n, arg); return; }
+        int index = enter(n.getNameAsString());
+        super.visit(n, arg);
+        exit(index, n, n.getNameAsString(), signature(n.getType().asString(), n), n.getBody().orElse(null));
+    }
+
+    @Override
+    public void visit(ConstructorDeclaration n, Void arg) {
+        if (!perCallable) { super.visit(n, arg); return; }
+        int index = enter(n.getNameAsString());
+        super.visit(n, arg);
+        exit(index, n, n.getNameAsString(), signature(null, n), n.getBody());
+    }
+
+    @Override
+    public void visit(CompactConstructorDeclaration n, Void arg) {
+        if (!perCallable) { super.visit(n, arg); return; }
+        int index = enter(n.getNameAsString());
+        super.visit(n, arg);
+        exit(index, n, n.getNameAsString(), n.getNameAsString(), n.getBody());
+    }
+
+    @Override
+    public void visit(InitializerDeclaration n, Void arg) {
+        if (!perCallable) { super.visit(n, arg); return; }
+        String name = n.isStatic() ? "<clinit>" : "<init>";
+        int index = enter(name);
+        super.visit(n, arg);
+        exit(index, n, name, n.isStatic() ? "static {}" : "{}", n.getBody());
+    }
+
+    @Override
+    public void visit(LambdaExpr n, Void arg) {
+        if (!perCallable) { super.visit(n, arg); return; }
+        Scope outer = scopes.peek();
+        String name = (outer.name.isEmpty() ? "" : outer.name + "$") + "lambda$" + ++outer.lambdas;
+        int index = enter(name);
+        super.visit(n, arg);
+        StringBuilder sig = new StringBuilder("(");
+        for (int i = 0; i < n.getParameters().size(); i++) {
+            if (i > 0) sig.append(", ");
+            sig.append(n.getParameter(i).getNameAsString());
+        }
+        exit(index, n, name, sig.append(") ->").toString(), n.getBody());
+    }
+
+    @Override public void visit(IfStmt n, Void arg) { decision(); super.visit(n, arg); }
+    @Override public void visit(ForStmt n, Void arg) { decision(); super.visit(n, arg); }
+    @Override public void visit(ForEachStmt n, Void arg) { decision(); super.visit(n, arg); }
+    @Override public void visit(WhileStmt n, Void arg) { decision(); super.visit(n, arg); }
+    @Override public void visit(DoStmt n, Void arg) { decision(); super.visit(n, arg); }
+    @Override public void visit(SwitchStmt n, Void arg) { decision(); super.visit(n, arg); }
+    @Override public void visit(SwitchExpr n, Void arg) { decision(); super.visit(n, arg); }
+    @Override public void visit(CatchClause n, Void arg) { decision(); super.visit(n, arg); }
+    @Override public void visit(ConditionalExpr n, Void arg) { decision(); super.visit(n, arg); }
+
+    @Override
+    public void visit(BinaryExpr n, Void arg) {
+        if (n.getOperator() == BinaryExpr.Operator.AND || n.getOperator() == BinaryExpr.Operator.OR) decision();
+        super.visit(n, arg);
+    }
+
+    // Leaves and type references never contain decision points; skipping them keeps the
+    // traversal to statements and expressions.
+    @Override public void visit(ImportDeclaration n, Void arg) { }
+    @Override public void visit(PackageDeclaration n, Void arg) { }
+    @Override public void visit(JavadocComment n, Void arg) { }
+    @Override public void visit(BlockComment n, Void arg) { }
+    @Override public void visit(LineComment n, Void arg) { }
+    @Override public void visit(Name n, Void arg) { }
+    @Override public void visit(SimpleName n, Void arg) { }
+    @Override public void visit(ClassOrInterfaceType n, Void arg) { }
+    @Override public void visit(PrimitiveType n, Void arg) { }
+    @Override public void visit(ArrayType n, Void arg) { }
+    @Override public void visit(VoidType n, Void arg) { }
+    @Override public void visit(MarkerAnnotationExpr n, Void arg) { }
+
+    /**
+     * Same shape as {@code getDeclarationAsString(false, false, false)}, but built from
+     * {@code Type.asString()} instead of running the pretty printer once per parameter.
+     */
+    private static String signature(String returnType, CallableDeclaration<?> n) {
+        StringBuilder sb = new StringBuilder();
+        if (returnType != null) sb.append(returnType).append(' ');
+        sb.append(n.getNameAsString()).append('(');
+        for (int i = 0; i < n.getParameters().size(); i++) {
+            Parameter p = n.getParameter(i);
+            if (i > 0) sb.append(", ");
+            sb.append(p.getType().asString());
+            if (p.isVarArgs()) sb.append("...");
+        }
+        return sb.append(')').toString();
+    }
+
+    private void decision() {
+        int[] current = complexity.peek();
+        if (current != null) current[0]++;
+    }
+
+    /** Reserves the callable's slot so results stay in declaration order despite nesting. */
+    private int enter(String name) {
+        scopes.push(new Scope(name));
+        complexity.push(new int[] { 1 });
+        methods.add(null);
+        return methods.size() - 1;
+    }
+
+    private void exit(int index, Node declaration, String name, String signature, Node body) {
+        scopes.pop();
+        int cc = complexity.pop()[0];
+        int loc = body == null ? 0 : body.getRange().map(r -> Math.max(1, r.end.line - r.begin.line + 1)).orElse(1);
+        if (signature.length() > MAX_SIGNATURE_LENGTH) signature = signature.substring(0, MAX_SIGNATURE_LENGTH - 3) + "...";
+        MethodMetrics mm = new MethodMetrics(name, signature);
+        mm.setLineStart(declaration.getRange().map(r -> r.begin.line).orElse(0));
+        mm.setLineEnd(declaration.getRange().map(r -> r.end.line).orElse(0));
+        mm.setCyclomaticComplexity(cc);
+        mm.setLinesOfCode(loc);
+        mm.setMaintainabilityIndex(JavaMetricsCalculator.getMaintainabilityIndex(cc, loc));
+        methods.set(index, mm);
+    }
+
+    /** A callable being visited; lambdas directly inside it are numbered from 1 in source order. */
+    private static final class Scope {
+        final String name;
+        int lambdas;
+
+        Scope(String name) {
+            this.name = name;
+        }
+    }
+}
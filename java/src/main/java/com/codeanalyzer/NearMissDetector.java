@@ -0,0 +1,378 @@
+package com.codeanalyzer;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.ast.body.ConstructorDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.comments.Comment;
+import com.github.javaparser.ast.expr.AssignExpr;
+import com.github.javaparser.ast.expr.BinaryExpr;
+import com.github.javaparser.ast.expr.UnaryExpr;
+
+import java.util.*;
+
+/**
+ * Near-miss (Type-3) clone detection between methods and constructors. Each body is reduced to a
+ * set of shingles, one per AST node: a hash of the node's subtree cut off {@value #SHAPE_DEPTH}
+ * levels down, with identifiers and literal values ignored. An edit only changes the shingles of
+ * the nodes just above it, so a lightly edited copy keeps most of its set.
+ *
+ * <p>Similar sets are found without comparing every pair: each set gets a MinHash signature of
+ * {@value #SIGNATURE_SIZE} values, and the signature is split into bands that are hashed into
+ * buckets (locality-sensitive hashing). Only methods sharing a bucket in some band become
+ * candidates. The band width is picked from the threshold so that a pair exactly at the threshold
+ * is still a candidate with probability {@value #MIN_RECALL} or more. Candidates are then verified
+ * by the exact Jaccard similarity of their shingle sets.
+ *
+ * <p>Methods linked by verified pairs are reported together as one {@link DuplicateBlock}. Its
+ * similarity is the lowest of those pairs.
+ */
+public final class NearMissDetector {
+
+    public static final double DEFAULT_THRESHOLD = 0.8;
+    /** Methods with fewer distinct shapes than this are too small to call clones. */
+    public static final int MIN_SHINGLES = 25;
+    private static final int SHAPE_DEPTH = 3;
+    private static final int SIGNATURE_SIZE = 128;
+    private static final double MIN_RECALL = 0.95;
+    /** Larger buckets only pair up neighbours, so one degenerate shape cannot go quadratic. */
+    private static final int MAX_BUCKET_PAIRS = 64;
+    private static final int[] SEEDS = new int[SIGNATURE_SIZE];
+    private static final ClassValue<Integer> KINDS = new ClassValue<>() {
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            return type.getName().hashCode();
+        }
+    };
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x5EED);
+        for (int i = 0; i < SIGNATURE_SIZE; i++) SEEDS[i] = random.nextInt();
+    }
+
+    private NearMissDetector() {}
+
+    /**
+     * Sets the shingles of every method of {@code file}: the shape set for method and constructor
+     * bodies, an empty array for other callables (lambdas, initializers).
+     */
+    static void collect(CompilationUnit cu, FileMetrics file) {
+        Map<String, MethodMetrics> byStart = new HashMap<>();
+        for (MethodMetrics m : file.getMethods()) {
+            m.setShingles(new int[0]);
+            byStart.put(m.getName() + '@' + m.getLineStart(), m);
+        }
+        for (CallableDeclaration<?> callable : cu.findAll(CallableDeclaration.class)) {
+            Node body = callable instanceof MethodDeclaration md ? md.getBody().orElse(null)
+                    : callable instanceof ConstructorDeclaration cd ? cd.getBody() : null;
+            if (body == null) continue;
+            MethodMetrics m = byStart.get(callable.getNameAsString() + '@' + callable.getRange().map(r -> r.begin.line).orElse(0));
+            if (m != null) m.setShingles(shingles(body));
+        }
+    }
+
+    /** Sorted, distinct shape hashes of every inner node under {@code body}. */
+    static int[] shingles(Node body) {
+        Shingles out = new Shingles();
+        shape(body, out);
+        return out.toSortedSet();
+    }
+
+    /** Hashes of the subtree at {@code node} cut off at each depth 0..SHAPE_DEPTH. */
+    private static int[] shape(Node node, Shingles out) {
+        int kind = kind(node);
+        int[] hashes = new int[SHAPE_DEPTH + 1];
+        Arrays.fill(hashes, kind);
+        boolean leaf = true;
+        for (Node child : node.getChildNodes()) {
+            if (child instanceof Comment) continue;
+            int[] c = shape(child, out);
+            for (int d = 1; d <= SHAPE_DEPTH; d++) hashes[d] = hashes[d] * 31 + c[d - 1];
+            leaf = false;
+        }
+        for (int d = 1; d <= SHAPE_DEPTH; d++) hashes[d] = mix(hashes[d]);
+        // Leaves (names, literals) are all alike and would only dilute the set.
+        if (!leaf) out.add(hashes[SHAPE_DEPTH]);
+        return hashes;
+    }
+
+    private static int kind(Node node) {
+        int kind = KINDS.get(node.getClass());
+        if (node instanceof BinaryExpr b) kind += 0x9E3779B1 * (b.getOperator().ordinal() + 1);
+        else if (node instanceof UnaryExpr u) kind += 0x9E3779B1 * (u.getOperator().ordinal() + 1);
+        else if (node instanceof AssignExpr a) kind += 0x9E3779B1 * (a.getOperator().ordinal() + 1);
+        return kind;
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    public static List<DuplicateBlock> detect(List<? extends FileMetricsView> files, double threshold) {
+        Index index = new Index(threshold);
+        for (FileMetricsView file : files) index.add(file);
+        return index.build();
+    }
+
+    /**
+     * Accumulates the signatures and shingle sets of methods one file at a time, dropping
+     * everything else, so it can sit behind a streaming run like {@link DuplicationDetector.Index}.
+     * Like that index it can stay resident: adding a path again replaces its methods, and
+     * {@link #remove} drops them.
+     */
+    public static final class Index {
+        private final double threshold;
+        private final int rows;
+        // A null entry is a dropped method; build() compacts once they are the majority.
+        private final List<Candidate> methods = new ArrayList<>();
+        private final Map<String, List<Integer>> byPath = new HashMap<>();
+        private int[] signatures = new int[SIGNATURE_SIZE * 64];
+        private int dropped;
+
+        public Index() {
+            this(DEFAULT_THRESHOLD);
+        }
+
+        public Index(double threshold) {
+            if (!(threshold > 0 && threshold <= 1)) throw new IllegalArgumentException("Similarity threshold must be in (0, 1]: " + threshold);
+            this.threshold = threshold;
+            this.rows = rowsPerBand(threshold);
+        }
+
+        public void add(FileMetricsView file) {
+            remove(file.getFilePath());
+            List<Integer> ids = new ArrayList<>();
+            for (MethodMetricsView m : file.getMethods()) {
+                int[] shingles = m.getShingles();
+                if (shingles == null || shingles.length < MIN_SHINGLES) continue;
+                ids.add(methods.size());
+                append(new Candidate(file.getFilePath(), m.getName(), m.getLineStart(), m.getLineEnd(), shingles), null, 0);
+            }
+            if (!ids.isEmpty()) byPath.put(file.getFilePath(), ids);
+        }
+
+        public void remove(String filePath) {
+            List<Integer> ids = byPath.remove(filePath);
+            if (ids == null) return;
+            for (int id : ids) methods.set(id, null);
+            dropped += ids.size();
+        }
+
+        /** Adds a candidate, copying its signature from {@code from} or computing it when that is null. */
+        private void append(Candidate c, int[] from, int fromOffset) {
+            int id = methods.size();
+            methods.add(c);
+            if (signatures.length < (id + 1) * SIGNATURE_SIZE) signatures = Arrays.copyOf(signatures, signatures.length * 2);
+            if (from != null) System.arraycopy(from, fromOffset, signatures, id * SIGNATURE_SIZE, SIGNATURE_SIZE);
+            else sign(c.shingles, signatures, id * SIGNATURE_SIZE);
+        }
+
+        private void compact() {
+            List<Candidate> live = new ArrayList<>(methods);
+            int[] oldSignatures = signatures;
+            methods.clear();
+            byPath.clear();
+            for (int i = 0; i < live.size(); i++) {
+                Candidate c = live.get(i);
+                if (c == null) continue;
+                byPath.computeIfAbsent(c.path, k -> new ArrayList<>()).add(methods.size());
+                append(c, oldSignatures, i * SIGNATURE_SIZE);
+            }
+            dropped = 0;
+        }
+
+        public List<DuplicateBlock> build() {
+            if (dropped > methods.size() - dropped) compact();
+            long[] pairs = candidatePairs();
+            int[] parent = new int[methods.size()];
+            for (int i = 0; i < parent.length; i++) parent[i] = i;
+            Map<Integer, Double> lowest = new HashMap<>();
+            List<long[]> verified = new ArrayList<>();
+            for (long pair : pairs) {
+                int a = (int) (pair >>> 32);
+                int b = (int) pair;
+                Candidate ca = methods.get(a);
+                Candidate cb = methods.get(b);
+                // A method and a method nested inside it (e.g. in a local class) are not copies.
+                if (ca.path.equals(cb.path) && ca.lineStart <= cb.lineEnd && cb.lineStart <= ca.lineEnd) continue;
+                double similarity = jaccard(ca.shingles, cb.shingles, threshold);
+                if (similarity < threshold) continue;
+                verified.add(new long[] { a, b, Double.doubleToLongBits(similarity) });
+                parent[find(parent, a)] = find(parent, b);
+            }
+            for (long[] v : verified) {
+                lowest.merge(find(parent, (int) v[0]), Double.longBitsToDouble(v[2]), Math::min);
+            }
+
+            Map<Integer, List<Integer>> groups = new TreeMap<>();
+            for (long[] v : verified) {
+                for (int i = 0; i < 2; i++) {
+                    List<Integer> members = groups.computeIfAbsent(find(parent, (int) v[i]), k -> new ArrayList<>());
+                    if (!members.contains((int) v[i])) members.add((int) v[i]);
+                }
+            }
+            List<DuplicateBlock> result = new ArrayList<>();
+            for (Map.Entry<Integer, List<Integer>> e : groups.entrySet()) {
+                List<Integer> members = e.getValue();
+                members.sort(null);
+                double similarity = lowest.get(e.getKey());
+                DuplicateBlock block = new DuplicateBlock(String.format("~%016x", groupHash(members)));
+                block.setSimilarity(similarity);
+                for (int id : members) {
+                    Candidate c = methods.get(id);
+                    DuplicateOccurrence occ = new DuplicateOccurrence(c.path);
+                    occ.setLineStart(c.lineStart);
+                    occ.setLineEnd(c.lineEnd);
+                    occ.setPreview(String.format("%.0f%% similar, %s()", similarity * 100, c.name));
+                    block.getOccurrences().add(occ);
+                }
+                result.add(block);
+            }
+            result.sort(Comparator.comparingDouble(DuplicateBlock::getSimilarity).reversed()
+                    .thenComparing(Comparator.comparingInt((DuplicateBlock b) -> b.getOccurrences().size()).reversed())
+                    .thenComparing(b -> b.getOccurrences().get(0).getFilePath())
+                    .thenComparingInt(b -> b.getOccurrences().get(0).getLineStart()));
+            return result;
+        }
+
+        /**
+         * A group's id, from the signature of the union of its members' shingle sets (the smallest
+         * of their min-hashes per seed). It depends only on what the members contain, not on their
+         * paths, lines or the order they were indexed in, so a baseline diff can follow the group.
+         */
+        private long groupHash(List<Integer> members) {
+            long hash = 0;
+            for (int i = 0; i < SIGNATURE_SIZE; i++) {
+                int min = Integer.MAX_VALUE;
+                for (int id : members) min = Math.min(min, signatures[id * SIGNATURE_SIZE + i]);
+                hash = hash * 0x100000001B3L + min;
+            }
+            return hash;
+        }
+
+        /**
+         * Distinct (a, b) pairs, a &lt; b, that share a bucket in at least one band. Each band sorts
+         * (band hash, method) keys so that a bucket is a run of equal hashes.
+         */
+        private long[] candidatePairs() {
+            int n = 0;
+            for (Candidate c : methods) if (c != null) n++;
+            long[] keys = new long[n];
+            long[] pairs = new long[16];
+            int pairCount = 0;
+            for (int band = 0; band < SIGNATURE_SIZE / rows; band++) {
+                int k = 0;
+                for (int m = 0; m < methods.size(); m++) {
+                    if (methods.get(m) == null) continue;
+                    int h = band;
+                    for (int r = 0; r < rows; r++) h = h * 31 + signatures[m * SIGNATURE_SIZE + band * rows + r];
+                    keys[k++] = ((long) mix(h) << 32) | m;
+                }
+                Arrays.sort(keys);
+                for (int start = 0; start < n; ) {
+                    int end = start + 1;
+                    while (end < n && (keys[end] >>> 32) == (keys[start] >>> 32)) end++;
+                    for (int i = start; i < end; i++) {
+                        for (int j = i + 1; j < end && j <= i + MAX_BUCKET_PAIRS; j++) {
+                            if (pairCount == pairs.length) pairs = Arrays.copyOf(pairs, pairCount * 2);
+                            pairs[pairCount++] = (keys[i] << 32) | (keys[j] & 0xFFFFFFFFL);
+                        }
+                    }
+                    start = end;
+                }
+            }
+            long[] sorted = Arrays.copyOf(pairs, pairCount);
+            Arrays.sort(sorted);
+            int distinct = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) sorted[distinct++] = sorted[i];
+            }
+            return Arrays.copyOf(sorted, distinct);
+        }
+    }
+
+    private record Candidate(String path, String name, int lineStart, int lineEnd, int[] shingles) {}
+
+    /** One min-hash per seed: the smallest re-mixed shingle. */
+    private static void sign(int[] shingles, int[] signatures, int offset) {
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            int seed = SEEDS[i];
+            int min = Integer.MAX_VALUE;
+            for (int s : shingles) {
+                int h = mix(s ^ seed);
+                if (h < min) min = h;
+            }
+            signatures[offset + i] = min;
+        }
+    }
+
+    /**
+     * The widest band (most rows) for which a pair exactly at {@code threshold} still shares at
+     * least one bucket with probability {@link #MIN_RECALL}: 1 - (1 - t^r)^(n/r).
+     */
+    static int rowsPerBand(double threshold) {
+        int best = 1;
+        for (int rows = 1; rows <= SIGNATURE_SIZE; rows *= 2) {
+            double recall = 1 - Math.pow(1 - Math.pow(threshold, rows), (double) SIGNATURE_SIZE / rows);
+            if (recall >= MIN_RECALL) best = rows;
+        }
+        return best;
+    }
+
+    /** Exact Jaccard similarity of two sorted sets; returns early once {@code threshold} is out of reach. */
+    private static double jaccard(int[] a, int[] b, double threshold) {
+        int small = Math.min(a.length, b.length);
+        int large = Math.max(a.length, b.length);
+        if ((double) small / large < threshold) return 0;
+        int common = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                common++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return (double) common / (a.length + b.length - common);
+    }
+
+    private static int find(int[] parent, int x) {
+        while (parent[x] != x) {
+            parent[x] = parent[parent[x]];
+            x = parent[x];
+        }
+        return x;
+    }
+
+    /** Growable int buffer, sorted and de-duplicated once at the end. */
+    private static final class Shingles {
+        private int[] values = new int[64];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        int[] toSortedSet() {
+            int[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            int distinct = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) sorted[distinct++] = sorted[i];
+            }
+            return Arrays.copyOf(sorted, distinct);
+        }
+    }
+}
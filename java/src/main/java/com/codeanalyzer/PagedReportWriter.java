@@ -0,0 +1,602 @@
+package com.codeanalyzer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * HTML report for results too large for one page ({@code --format paged}). Writes a directory with
+ * a small {@code index.html} and the rows in chunks of {@value #CHUNK_ROWS}, each a gzip-compressed
+ * JSON document wrapped in a script call so it loads from {@code file://} as well as over HTTP. The
+ * page renders only the rows in view and loads chunks as they scroll in, keeping a bounded number
+ * decoded, so time to first paint and browser memory do not grow with the project.
+ *
+ * <p>Method rows are written three times: by path, by CC descending and by MI ascending. Sorting
+ * switches between the copies, and a minimum-CC or maximum-MI filter stops at the first chunk of
+ * the matching copy that falls outside it, using the per-chunk ranges in the page's manifest. A
+ * path filter scans the chunks of the current order one at a time and keeps only the positions
+ * of matching rows.
+ *
+ * <p>The hotspot, module and package tables of {@link MetricsRollup} are small and go into the
+ * manifest itself.
+ */
+final class PagedReportWriter implements ReportWriter {
+
+    static final int CHUNK_ROWS = 1000;
+
+    private final Path directory;
+    private final Path data;
+    private final CompactResultStore store = new CompactResultStore(false);
+    private final MetricsRollup rollup = new MetricsRollup();
+    private final boolean changedOnly;
+    private String projectPath;
+    private Instant analyzedAt;
+
+    /** With {@code changedOnly}, the totals are labelled as covering the changed files rather than the project. */
+    PagedReportWriter(Path directory, boolean changedOnly) {
+        this.directory = directory;
+        this.changedOnly = changedOnly;
+        this.data = directory.resolve("data");
+    }
+
+    @Override
+    public void begin(String projectPath, Instant analyzedAt) throws IOException {
+        this.projectPath = projectPath;
+        this.analyzedAt = analyzedAt;
+        Files.createDirectories(data);
+        // A previous, larger report may have left chunks this one would not overwrite.
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(data, "*-[0-9][0-9][0-9][0-9][0-9].js")) {
+            for (Path p : stale) Files.delete(p);
+        }
+    }
+
+    @Override
+    public void writeFile(FileMetricsView file) {
+        store.add(file);
+        rollup.add(file);
+    }
+
+    @Override
+    public void finish(List<DuplicateBlock> duplicates) throws IOException {
+        store.trim();
+        int rows = 0;
+        for (FileMetricsView f : store.files()) rows += Math.max(1, f.getMethods().size());
+
+        // Row r is method rowMethod[r] of file rowFile[r], or the file alone when it has no methods (-1).
+        int[] rowFile = new int[rows];
+        int[] rowMethod = new int[rows];
+        long[] byCc = new long[rows];
+        long[] byMi = new long[rows];
+        int r = 0;
+        for (int f = 0; f < store.fileCount(); f++) {
+            FileMetricsView file = store.file(f);
+            List<? extends MethodMetricsView> methods = file.getMethods();
+            if (methods.isEmpty()) {
+                // Rows without a method sort after every method in both orders.
+                rowFile[r] = f;
+                rowMethod[r] = -1;
+                byCc[r] = sortKey(Integer.MAX_VALUE, r);
+                byMi[r] = sortKey(Integer.MAX_VALUE, r);
+                r++;
+                continue;
+            }
+            for (int m = 0; m < methods.size(); m++) {
+                MethodMetricsView method = methods.get(m);
+                rowFile[r] = f;
+                rowMethod[r] = m;
+                byCc[r] = sortKey(-method.getCyclomaticComplexity(), r);
+                byMi[r] = sortKey(orderedBits(round(method.getMaintainabilityIndex())), r);
+                r++;
+            }
+        }
+        Arrays.sort(byCc);
+        Arrays.sort(byMi);
+
+        StringBuilder manifest = new StringBuilder();
+        MetricsRollup.Totals totals = rollup.project();
+        manifest.append("{\"project\":").append(Json.quote(projectPath))
+                .append(",\"generated\":").append(Json.quote(analyzedAt.atOffset(ZoneOffset.UTC).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))))
+                .append(",\"files\":").append(totals.files())
+                .append(",\"changedOnly\":").append(changedOnly)
+                .append(",\"methods\":").append(totals.methods())
+                .append(",\"totalComplexity\":").append(totals.complexity())
+                .append(",\"avgMi\":").append(Json.number(round(totals.maintainability())))
+                .append(",\"duplicateGroups\":").append(duplicates.size())
+                .append(",\"chunkRows\":").append(CHUNK_ROWS)
+                .append(",\"views\":{");
+        manifest.append("\"path\":");
+        writeRows("path", rows, i -> i, rowFile, rowMethod, manifest);
+        manifest.append(",\"cc\":");
+        writeRows("cc", rows, i -> (int) byCc[i], rowFile, rowMethod, manifest);
+        manifest.append(",\"mi\":");
+        writeRows("mi", rows, i -> (int) byMi[i], rowFile, rowMethod, manifest);
+        manifest.append(",\"dup\":");
+        writeDuplicates(duplicates, manifest);
+        manifest.append("},\"hotspots\":{\"cc\":");
+        appendHotspots(rollup.mostComplex(), manifest);
+        manifest.append(",\"mi\":");
+        appendHotspots(rollup.leastMaintainable(), manifest);
+        manifest.append("},\"modules\":");
+        appendTotals(rollup.modules(), manifest);
+        manifest.append(",\"packages\":");
+        appendTotals(rollup.packages(), manifest);
+        manifest.append('}');
+
+        String project = escapeHtml(projectPath);
+        String html = SHELL.replace("{{PROJECT}}", project)
+                .replace("{{MANIFEST}}", manifest.toString().replace("</", "<\\/"));
+        Files.writeString(directory.resolve("index.html"), html, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes rows {@code order(0..rows)} as chunks of {@code view} and appends the view's manifest
+     * entry: its row count and each chunk's [min CC, max CC, min MI, max MI] over method rows.
+     */
+    private void writeRows(String view, int rows, IntUnaryOperator order, int[] rowFile, int[] rowMethod,
+                           StringBuilder manifest) throws IOException {
+        manifest.append("{\"rows\":").append(rows).append(",\"chunks\":[");
+        // Each chunk carries its own table of the files its rows belong to.
+        int[] localFile = new int[store.fileCount()];
+        int[] localChunk = new int[store.fileCount()];
+        Arrays.fill(localChunk, -1);
+        for (int chunk = 0; chunk * CHUNK_ROWS < rows; chunk++) {
+            StringBuilder files = new StringBuilder();
+            StringBuilder chunkRows = new StringBuilder();
+            int fileTableSize = 0;
+            int minCc = Integer.MAX_VALUE, maxCc = Integer.MIN_VALUE;
+            double minMi = Double.MAX_VALUE, maxMi = -Double.MAX_VALUE;
+            int end = Math.min(rows, (chunk + 1) * CHUNK_ROWS);
+            for (int i = chunk * CHUNK_ROWS; i < end; i++) {
+                int row = order.applyAsInt(i);
+                int f = rowFile[row];
+                FileMetricsView file = store.file(f);
+                if (localChunk[f] != chunk) {
+                    localChunk[f] = chunk;
+                    localFile[f] = fileTableSize++;
+                    if (files.length() > 0) files.append(',');
+                    files.append('[').append(Json.quote(file.getRelativePath().replace('\\', '/')))
+                            .append(',').append(file.getTotalLines()).append(',').append(file.getCodeLines())
+                            .append(',').append(file.getCyclomaticComplexity())
+                            .append(',').append(Json.number(round(file.getMaintainabilityIndex())));
+                    if (file.getDegraded() != null) files.append(',').append(Json.quote(file.getDegraded()));
+                    files.append(']');
+                }
+                if (chunkRows.length() > 0) chunkRows.append(',');
+                chunkRows.append('[').append(localFile[f]);
+                if (rowMethod[row] >= 0) {
+                    MethodMetricsView m = file.getMethods().get(rowMethod[row]);
+                    double mi = round(m.getMaintainabilityIndex());
+                    chunkRows.append(',').append(Json.quote(m.getName())).append(',').append(m.getLineStart())
+                            .append(',').append(m.getCyclomaticComplexity()).append(',').append(m.getLinesOfCode())
+                            .append(',').append(Json.number(mi));
+                    minCc = Math.min(minCc, m.getCyclomaticComplexity());
+                    maxCc = Math.max(maxCc, m.getCyclomaticComplexity());
+                    minMi = Math.min(minMi, mi);
+                    maxMi = Math.max(maxMi, mi);
+                }
+                chunkRows.append(']');
+            }
+            writeChunk(view, chunk, "{\"files\":[" + files + "],\"rows\":[" + chunkRows + "]}");
+            if (chunk > 0) manifest.append(',');
+            if (minCc > maxCc) manifest.append("null");
+            else manifest.append('[').append(minCc).append(',').append(maxCc).append(',')
+                    .append(Json.number(minMi)).append(',').append(Json.number(maxMi)).append(']');
+        }
+        manifest.append("]}");
+    }
+
+    private void writeDuplicates(List<DuplicateBlock> duplicates, StringBuilder manifest) throws IOException {
+        int chunks = 0;
+        for (int from = 0; from < duplicates.size(); from += CHUNK_ROWS) {
+            StringBuilder sb = new StringBuilder("[");
+            for (int i = from; i < Math.min(duplicates.size(), from + CHUNK_ROWS); i++) {
+                DuplicateBlock d = duplicates.get(i);
+                if (i > from) sb.append(',');
+                sb.append('[').append(Json.quote(d.getNormalizedHash())).append(',').append(Json.number(d.getSimilarity()))
+                        .append(',').append(d.getTokenCount()).append(",[");
+                for (int j = 0; j < d.getOccurrences().size(); j++) {
+                    DuplicateOccurrence o = d.getOccurrences().get(j);
+                    if (j > 0) sb.append(',');
+                    sb.append('[').append(Json.quote(o.getFilePath())).append(',').append(o.getLineStart())
+                            .append(',').append(o.getLineEnd()).append(']');
+                }
+                sb.append("]]");
+            }
+            writeChunk("dup", chunks++, sb.append(']').toString());
+        }
+        manifest.append("{\"rows\":").append(duplicates.size()).append(",\"chunks\":").append(chunks).append('}');
+    }
+
+    /** [path, method, line, CC, LOC, MI] per hotspot. */
+    private static void appendHotspots(List<MetricsRollup.Hotspot> hotspots, StringBuilder manifest) {
+        manifest.append('[');
+        for (int i = 0; i < hotspots.size(); i++) {
+            MetricsRollup.Hotspot h = hotspots.get(i);
+            if (i > 0) manifest.append(',');
+            manifest.append('[').append(Json.quote(h.path())).append(',').append(Json.quote(h.method()))
+                    .append(',').append(h.line()).append(',').append(h.complexity()).append(',').append(h.linesOfCode())
+                    .append(',').append(Json.number(round(h.maintainability()))).append(']');
+        }
+        manifest.append(']');
+    }
+
+    /** [module, package, files, methods, code lines, CC, max method CC, MI] per row; package is null for a module. */
+    private static void appendTotals(List<MetricsRollup.Totals> rows, StringBuilder manifest) {
+        manifest.append('[');
+        for (int i = 0; i < rows.size(); i++) {
+            MetricsRollup.Totals t = rows.get(i);
+            if (i > 0) manifest.append(',');
+            manifest.append('[').append(Json.quote(t.module())).append(',').append(t.packageName() != null ? Json.quote(t.packageName()) : "null")
+                    .append(',').append(t.files()).append(',').append(t.methods()).append(',').append(t.codeLines())
+                    .append(',').append(t.complexity()).append(',').append(t.maxMethodComplexity())
+                    .append(',').append(Json.number(round(t.maintainability()))).append(']');
+        }
+        manifest.append(']');
+    }
+
+    private void writeChunk(String view, int index, String json) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(json.length() / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(json.getBytes(StandardCharsets.UTF_8));
+        }
+        Path file = data.resolve(String.format("%s-%05d.js", view, index));
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+            out.write("CodeAnalyzer.chunk(\"" + view + "\"," + index + ",\"");
+            out.write(Base64.getEncoder().encodeToString(bytes.toByteArray()));
+            out.write("\");\n");
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /** Orders by {@code key}, then by row, i.e. path order among equal keys. */
+    private static long sortKey(int key, int row) {
+        return (long) key << 32 | row;
+    }
+
+    /** Float bits rearranged so that signed int order matches float order. */
+    private static int orderedBits(double value) {
+        int bits = Float.floatToIntBits((float) value);
+        return bits ^ ((bits >> 31) & 0x7fffffff);
+    }
+
+    /** MI as shown (one decimal), so that filters and chunk ranges agree with what is displayed. */
+    private static double round(double value) {
+        return Math.round(value * 10) / 10.0;
+    }
+
+    private static String escapeHtml(String s) {
+        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    /** Page shell; {{PROJECT}} and {{MANIFEST}} are filled in by {@link #finish}. */
+    private static final String SHELL = """
+            <!DOCTYPE html>
+            <html lang="en">
+            <head>
+            <meta charset="UTF-8">
+            <meta name="viewport" content="width=device-width, initial-scale=1.0">
+            <title>Code Quality Report - {{PROJECT}}</title>
+            <style>
+            body { font-family: 'Segoe UI', system-ui, sans-serif; margin: 0; padding: 24px; background: #0f0f12; color: #e4e4e7; }
+            h1 { color: #fafafa; font-weight: 600; }
+            h2 { color: #a1a1aa; margin-top: 32px; font-size: 1.1rem; }
+            .summary { display: flex; gap: 24px; flex-wrap: wrap; margin: 20px 0; }
+            .summary .card { background: #18181b; border: 1px solid #27272a; border-radius: 8px; padding: 16px 24px; min-width: 140px; }
+            .summary .card .value { font-size: 1.5rem; font-weight: 700; }
+            .controls { display: flex; gap: 16px; flex-wrap: wrap; align-items: center; color: #a1a1aa; }
+            .controls input, .controls select { background: #18181b; color: #e4e4e7; border: 1px solid #27272a; border-radius: 4px; padding: 6px 8px; }
+            .viewport { height: 70vh; overflow-y: auto; margin-top: 12px; border: 1px solid #27272a; }
+            #duplicates { height: 40vh; }
+            .sticky { position: sticky; top: 0; }
+            table { border-collapse: collapse; width: 100%; table-layout: fixed; }
+            th, td { border: 1px solid #27272a; padding: 0 12px; height: 28px; box-sizing: border-box; text-align: left; white-space: nowrap; overflow: hidden; text-overflow: ellipsis; }
+            th { background: #18181b; color: #a1a1aa; font-weight: 600; }
+            th[data-view] { cursor: pointer; }
+            th.active { color: #fafafa; }
+            tr:nth-child(even) { background: #18181b; }
+            .bad { color: #f87171; }
+            .warn { color: #fbbf24; }
+            .good { color: #4ade80; }
+            .delta, .muted, #status { color: #71717a; }
+            .approx { color: #fbbf24; font-size: 0.85em; cursor: help; }
+            .static table { table-layout: auto; }
+            </style>
+            </head>
+            <body>
+            <header>
+            <h1>Code Quality Report</h1>
+            <p>Project: <code>{{PROJECT}}</code></p>
+            <p>Generated: <span id="generated"></span></p>
+            </header>
+            <div class="summary" id="summary"></div>
+            <div id="rollups"></div>
+            <section>
+            <h2>File &amp; Method Metrics</h2>
+            <div class="controls">
+            <label>Sort <select id="sort"><option value="path">Path</option><option value="cc">Method CC (highest first)</option><option value="mi">Method MI (lowest first)</option></select></label>
+            <label>Path contains <input id="path" type="search" size="28"></label>
+            <label>Method CC &ge; <input id="min-cc" type="number" min="0" style="width: 6em"></label>
+            <label>Method MI &le; <input id="max-mi" type="number" step="0.1" style="width: 6em"></label>
+            <span id="status"></span>
+            </div>
+            <div class="viewport" id="metrics"></div>
+            </section>
+            <section id="duplicates-section">
+            <h2>Code Duplication</h2>
+            <div class="viewport" id="duplicates"></div>
+            </section>
+            <section id="packages-section">
+            <h2>Packages</h2>
+            <div id="packages"></div>
+            </section>
+            <script>
+            "use strict";
+            window.CodeAnalyzer = (() => {
+              const MAX_HEIGHT = 8e6, CACHED_CHUNKS = 64;
+              const cache = new Map(), pending = new Map();
+              const $ = id => document.getElementById(id);
+              const esc = s => String(s).replace(/&/g, "&amp;").replace(/</g, "&lt;").replace(/>/g, "&gt;").replace(/"/g, "&quot;");
+              const ccClass = cc => cc > 15 ? "bad" : cc > 10 ? "warn" : "good";
+              const miClass = mi => mi < 20 ? "bad" : mi < 65 ? "warn" : "good";
+              const number = s => s.trim() === "" || isNaN(+s) ? null : +s;
+              let M, rowHeight = 28, view = "path", filter = null, matches = null, scanId = 0, metrics, duplicates;
+
+              const chunkKey = (v, i) => v + "-" + String(i).padStart(5, "0");
+
+              // Chunks load as script tags, which unlike fetch also work from file://. The newest
+              // CACHED_CHUNKS stay decoded; older ones are dropped and loaded again when needed.
+              function load(v, i) {
+                const key = chunkKey(v, i);
+                let entry = cache.get(key);
+                if (entry) {
+                  cache.delete(key);
+                  cache.set(key, entry);
+                  return entry.promise;
+                }
+                entry = {};
+                entry.promise = new Promise((resolve, reject) => {
+                  pending.set(key, data => { entry.data = data; resolve(data); });
+                  const script = document.createElement("script");
+                  script.src = "data/" + key + ".js";
+                  script.onload = () => script.remove();
+                  script.onerror = () => {
+                    script.remove();
+                    pending.delete(key);
+                    cache.delete(key);
+                    reject(new Error("Cannot load " + script.src));
+                  };
+                  document.head.appendChild(script);
+                });
+                cache.set(key, entry);
+                while (cache.size > CACHED_CHUNKS) cache.delete(cache.keys().next().value);
+                return entry.promise;
+              }
+
+              function peek(v, i) {
+                const entry = cache.get(chunkKey(v, i));
+                if (!entry || !entry.data) return null;
+                cache.delete(chunkKey(v, i));
+                cache.set(chunkKey(v, i), entry);
+                return entry.data;
+              }
+
+              async function chunk(v, i, base64) {
+                const done = pending.get(chunkKey(v, i));
+                if (!done) return;
+                pending.delete(chunkKey(v, i));
+                const bytes = Uint8Array.from(atob(base64), c => c.charCodeAt(0));
+                const stream = new Blob([bytes]).stream().pipeThrough(new DecompressionStream("gzip"));
+                done(JSON.parse(await new Response(stream).text()));
+              }
+
+              function status(text) { $("status").textContent = text; }
+
+              function failed(e) { status(e.message); }
+
+              // Renders only the rows in view into a table that sticks to the top of the scroll area;
+              // a spacer below it gives the scrollbar the height of all rows (capped, then scaled).
+              class Grid {
+                constructor(root, head, render, lookup) {
+                  root.innerHTML = "<div class=\\"sticky\\"><table><thead><tr>" + head + "</tr></thead><tbody></tbody></table></div><div></div>";
+                  this.root = root;
+                  this.head = root.querySelector("thead");
+                  this.body = root.querySelector("tbody");
+                  this.spacer = root.lastChild;
+                  this.renderRow = render;
+                  this.lookup = lookup;
+                  this.count = 0;
+                  root.addEventListener("scroll", () => this.schedule());
+                  window.addEventListener("resize", () => this.schedule());
+                }
+
+                show(count) {
+                  this.count = count;
+                  this.root.scrollTop = 0;
+                  this.schedule();
+                }
+
+                grow(count) {
+                  this.count = count;
+                  this.schedule();
+                }
+
+                schedule() {
+                  if (this.queued) return;
+                  this.queued = true;
+                  requestAnimationFrame(() => { this.queued = false; this.render(); });
+                }
+
+                render() {
+                  const head = this.head.offsetHeight, client = this.root.clientHeight;
+                  const fit = Math.max(1, Math.floor((client - head) / rowHeight));
+                  const height = Math.min(this.count * rowHeight, MAX_HEIGHT);
+                  const scrollable = head + height - client;
+                  const last = Math.max(0, this.count - fit);
+                  const first = scrollable > 0 ? Math.min(last, Math.round(this.root.scrollTop / scrollable * last)) : 0;
+                  const end = Math.min(this.count, first + fit + 1);
+                  this.spacer.style.height = Math.max(0, height - (end - first) * rowHeight) + "px";
+                  let html = "";
+                  for (let i = first; i < end; i++) {
+                    const row = this.lookup(i, () => this.schedule());
+                    html += row ? this.renderRow(row) : "<tr><td class=\\"muted\\" colspan=\\"10\\">&hellip;</td></tr>";
+                  }
+                  this.body.innerHTML = html;
+                  const measured = this.body.firstChild ? this.body.firstChild.getBoundingClientRect().height : 0;
+                  if (measured > 0 && Math.abs(measured - rowHeight) > 0.5) {
+                    rowHeight = measured;
+                    this.schedule();
+                  }
+                }
+              }
+
+              function row(v, index, ready) {
+                const c = Math.floor(index / M.chunkRows), data = peek(v, c);
+                if (data) return [data, index - c * M.chunkRows];
+                load(v, c).then(ready, failed);
+                return null;
+              }
+
+              function metricRow([data, j]) {
+                const r = data.rows[j], f = data.files[r[0]];
+                let html = "<tr><td title=\\"" + esc(f[0]) + "\\">" + esc(f[0])
+                    + (f.length > 5 ? " <span class=\\"approx\\" title=\\"" + esc(f[5]) + "\\">approximate</span>" : "") + "</td><td>" + f[1] + "</td><td>" + f[2]
+                    + "</td><td>" + f[3] + "</td><td class=\\"" + miClass(f[4]) + "\\">" + f[4].toFixed(1) + "</td>";
+                if (r.length < 2) return html + "<td colspan=\\"4\\">&mdash;</td></tr>";
+                return html + "<td title=\\"" + esc(r[1]) + " (line " + r[2] + ")\\">" + esc(r[1]) + "</td><td class=\\"" + ccClass(r[3]) + "\\">"
+                    + r[3] + "</td><td>" + r[4] + "</td><td class=\\"" + miClass(r[5]) + "\\">" + r[5].toFixed(1) + "</td></tr>";
+              }
+
+              function duplicateRow([data, j]) {
+                const [hash, similarity, , occurrences] = data[j];
+                const where = occurrences.map(o => o[0] + " L" + o[1] + "-" + o[2]).join("; ");
+                return "<tr><td><code>" + esc(hash) + "</code>"
+                    + (similarity < 1 ? " <span class=\\"delta\\">" + Math.round(similarity * 100) + "% similar</span>" : "")
+                    + "</td><td>" + occurrences.length + "</td><td title=\\"" + esc(where) + "\\">" + esc(where) + "</td></tr>";
+              }
+
+              function apply() {
+                const path = $("path").value.trim().toLowerCase();
+                const minCc = number($("min-cc").value), maxMi = number($("max-mi").value);
+                filter = path || minCc !== null || maxMi !== null ? { path, minCc, maxMi } : null;
+                document.querySelectorAll("th[data-view]").forEach(th => th.classList.toggle("active", th.dataset.view === view));
+                const id = ++scanId;
+                if (!filter) {
+                  matches = null;
+                  metrics.show(M.views[view].rows);
+                  status("");
+                  return;
+                }
+                scan(id).catch(failed);
+              }
+
+              // Collects the positions of matching rows chunk by chunk, showing them as they are found.
+              async function scan(id) {
+                const v = M.views[view], f = filter, numeric = f.minCc !== null || f.maxMi !== null;
+                let found = new Int32Array(1024), n = 0;
+                matches = found.subarray(0, 0);
+                metrics.show(0);
+                for (let c = 0; c < v.chunks.length; c++) {
+                  const s = v.chunks[c];
+                  const ccOut = f.minCc !== null && (!s || s[1] < f.minCc), miOut = f.maxMi !== null && (!s || s[2] > f.maxMi);
+                  // The CC and MI copies are sorted on their key, so no later chunk can match either.
+                  if (view === "cc" && ccOut || view === "mi" && miOut) break;
+                  if (ccOut || miOut) continue;
+                  const data = await load(view, c);
+                  if (id !== scanId) return;
+                  for (let j = 0; j < data.rows.length; j++) {
+                    const r = data.rows[j];
+                    if (f.path && !data.files[r[0]][0].toLowerCase().includes(f.path)) continue;
+                    if (numeric && r.length < 2) continue;
+                    if (f.minCc !== null && r[3] < f.minCc || f.maxMi !== null && r[5] > f.maxMi) continue;
+                    if (n === found.length) {
+                      const grown = new Int32Array(n * 2);
+                      grown.set(found);
+                      found = grown;
+                    }
+                    found[n++] = c * M.chunkRows + j;
+                  }
+                  matches = found.subarray(0, n);
+                  metrics.grow(n);
+                  status("Scanning " + (c + 1) + " of " + v.chunks.length + " chunks: " + n + " rows");
+                }
+                status(n + " matching rows");
+              }
+
+              function hotspotTable(title, rows) {
+                if (rows.length === 0) return "";
+                return "<section><h2>" + title + "</h2><div class=\\"static\\"><table><thead><tr><th>#</th><th>Method</th><th>File</th><th>Line</th><th>CC</th><th>LOC</th><th>MI</th></tr></thead><tbody>"
+                    + rows.map(([path, method, line, cc, loc, mi], i) => "<tr><td>" + (i + 1) + "</td><td>" + esc(method) + "</td><td title=\\"" + esc(path) + "\\">" + esc(path)
+                        + "</td><td>" + line + "</td><td class=\\"" + ccClass(cc) + "\\">" + cc + "</td><td>" + loc + "</td><td class=\\"" + miClass(mi) + "\\">" + mi.toFixed(1) + "</td></tr>").join("")
+                    + "</tbody></table></div></section>";
+              }
+
+              function totalsTable(rows, showModule, showPackage) {
+                return "<div class=\\"static\\"><table><thead><tr>" + (showModule ? "<th>Module</th>" : "") + (showPackage ? "<th>Package</th>" : "")
+                    + "<th>Files</th><th>Methods</th><th>Code</th><th>Total CC</th><th>Max Method CC</th><th>Avg MI</th></tr></thead><tbody>"
+                    + rows.map(([module, pkg, files, methods, code, cc, maxCc, mi]) => "<tr>" + (showModule ? "<td>" + esc(module || "(root)") + "</td>" : "")
+                        + (showPackage ? "<td>" + esc(pkg || "(default package)") + "</td>" : "") + "<td>" + files + "</td><td>" + methods + "</td><td>" + code
+                        + "</td><td>" + cc + "</td><td class=\\"" + ccClass(maxCc) + "\\">" + maxCc + "</td><td class=\\"" + miClass(mi) + "\\">" + mi.toFixed(1) + "</td></tr>").join("")
+                    + "</tbody></table></div>";
+              }
+
+              function start(manifest) {
+                M = manifest;
+                $("generated").textContent = M.generated;
+                const card = (value, label, cls) => "<div class=\\"card\\"><span class=\\"value " + (cls || "") + "\\">" + value + "</span><br>" + label + "</div>";
+                $("summary").innerHTML = card(M.files, M.changedOnly ? "Changed Files" : "Files") + card(M.methods, "Methods") + card(M.totalComplexity, "Total Cyclomatic Complexity")
+                    + card(M.avgMi.toFixed(1), "Avg Maintainability", miClass(M.avgMi)) + card(M.duplicateGroups, "Duplicate Groups");
+                $("rollups").innerHTML = hotspotTable("Complexity Hotspots", M.hotspots.cc) + hotspotTable("Maintainability Hotspots", M.hotspots.mi)
+                    + (M.modules.length > 1 ? "<section><h2>Modules</h2>" + totalsTable(M.modules, true, false) + "</section>" : "");
+                if (M.packages.length === 0) $("packages-section").hidden = true;
+                else $("packages").innerHTML = totalsTable(M.packages, M.modules.length > 1 || M.modules.some(m => m[0] !== ""), true);
+                if (typeof DecompressionStream === "undefined") {
+                  status("This browser cannot decompress the report data (DecompressionStream is not supported).");
+                  return;
+                }
+                metrics = new Grid($("metrics"),
+                    "<th data-view=\\"path\\">File</th><th>Lines</th><th>Code</th><th>File CC</th><th>File MI</th>"
+                    + "<th>Method</th><th data-view=\\"cc\\">Method CC</th><th>LOC</th><th data-view=\\"mi\\">Method MI</th>",
+                    metricRow, (i, ready) => row(view, matches ? matches[i] : i, ready));
+                document.querySelectorAll("th[data-view]").forEach(th => th.addEventListener("click", () => {
+                  view = $("sort").value = th.dataset.view;
+                  apply();
+                }));
+                $("sort").addEventListener("change", () => { view = $("sort").value; apply(); });
+                let timer;
+                ["path", "min-cc", "max-mi"].forEach(id => $(id).addEventListener("input", () => {
+                  clearTimeout(timer);
+                  timer = setTimeout(apply, 250);
+                }));
+                apply();
+                if (M.views.dup.rows === 0) {
+                  $("duplicates-section").hidden = true;
+                  return;
+                }
+                duplicates = new Grid($("duplicates"), "<th style=\\"width: 22%\\">Hash</th><th style=\\"width: 10%\\">Occurrences</th><th>Locations</th>",
+                    duplicateRow, (i, ready) => row("dup", i, ready));
+                duplicates.show(M.views.dup.rows);
+              }
+
+              return { chunk, start };
+            })();
+            CodeAnalyzer.start({{MANIFEST}});
+            </script>
+            </body>
+            </html>
+            """;
+}
@@ -1,119 +1,422 @@
 package com.codeanalyzer;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Collectors;
 
 public final class ReportGenerator {
 
     public static String generateCsv(AnalysisResult result) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("Report Type,FilePath,RelativePath,TotalLines,CodeLines,CommentLines,CyclomaticComplexity,MaintainabilityIndex,MethodName,MethodCC,MethodLOC,MethodMI\n");
-        for (FileMetrics file : result.getFiles()) {
+        StringWriter out = new StringWriter();
+        write(result, csvWriter(out), false);
+        return out.toString();
+    }
+
+    public static String generateHtml(AnalysisResult result) {
+        StringWriter out = new StringWriter();
+        write(result, htmlWriter(out), true);
+        return out.toString();
+    }
+
+    /** Writes a fully collected result through a streaming writer, then closes it. */
+    public static void write(AnalysisResult result, ReportWriter writer, boolean sortByPath) {
+        write(result.getProjectPath(), result.getAnalyzedAt(), result.getFiles(), result.getDuplicates(), result.getCoupling(),
+                writer, sortByPath);
+    }
+
+    /** Same as {@link #write(AnalysisResult, ReportWriter, boolean)} for files held in any model, e.g. a {@link CompactResultStore}. */
+    public static void write(String projectPath, Instant analyzedAt, List<? extends FileMetricsView> files,
+                             List<DuplicateBlock> duplicates, ReportWriter writer, boolean sortByPath) {
+        write(projectPath, analyzedAt, files, duplicates, null, writer, sortByPath);
+    }
+
+    private static void write(String projectPath, Instant analyzedAt, List<? extends FileMetricsView> files,
+                              List<DuplicateBlock> duplicates, CouplingAnalyzer.Summary coupling, ReportWriter writer,
+                              boolean sortByPath) {
+        try (writer) {
+            writer.begin(projectPath, analyzedAt);
+            if (sortByPath) {
+                // Sort indices by a key computed once per file, since a view may rebuild its path on every call.
+                String[] keys = new String[files.size()];
+                Integer[] order = new Integer[files.size()];
+                for (int i = 0; i < keys.length; i++) {
+                    keys[i] = files.get(i).getRelativePath();
+                    order[i] = i;
+                }
+                Arrays.sort(order, Comparator.comparing(i -> keys[i]));
+                for (int i : order) writer.writeFile(files.get(i));
+            } else {
+                for (FileMetricsView file : files) writer.writeFile(file);
+            }
+            if (coupling != null) writer.writeCoupling(coupling);
+            writer.finish(duplicates);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static ReportWriter csvWriter(Writer out) {
+        return csvWriter(out, false);
+    }
+
+    /** With {@code showChanges}, rows carry whether each callable was touched and its CC/MI at the base revision. */
+    public static ReportWriter csvWriter(Writer out, boolean showChanges) {
+        return new CsvReportWriter(out, showChanges);
+    }
+
+    public static ReportWriter htmlWriter(Writer out) {
+        return htmlWriter(out, false);
+    }
+
+    /** With {@code showChanges}, touched callables are highlighted with their CC/MI deltas. */
+    public static ReportWriter htmlWriter(Writer out, boolean showChanges) {
+        return new HtmlReportWriter(out, showChanges);
+    }
+
+    /** Writes a chunked, lazily rendered HTML report into {@code directory}; see {@link PagedReportWriter}. */
+    public static ReportWriter pagedHtmlWriter(Path directory, boolean changedOnly) {
+        return new PagedReportWriter(directory, changedOnly);
+    }
+
+    private static final class CsvReportWriter implements ReportWriter {
+        private final Writer out;
+        private final boolean showChanges;
+        private final StringBuilder typeRows = new StringBuilder();
+        private final MetricsRollup rollup = new MetricsRollup();
+        private CouplingAnalyzer.Summary coupling;
+
+        CsvReportWriter(Writer out, boolean showChanges) {
+            this.out = out;
+            this.showChanges = showChanges;
+        }
+
+        @Override
+        public void begin(String projectPath, Instant analyzedAt) throws IOException {
+            out.write("Report Type,FilePath,RelativePath,TotalLines,CodeLines,CommentLines,CyclomaticComplexity,MaintainabilityIndex,MethodName,MethodCC,MethodLOC,MethodMI"
+                    + (showChanges ? ",Changed,BaseCC,BaseMI\n" : "\n"));
+        }
+
+        @Override
+        public void writeFile(FileMetricsView file) throws IOException {
+            rollup.add(file);
+            StringBuilder sb = new StringBuilder();
             if (file.getMethods().isEmpty()) {
                 sb.append("File,").append(escape(file.getFilePath())).append(",").append(escape(file.getRelativePath()))
                         .append(",").append(file.getTotalLines()).append(",").append(file.getCodeLines())
                         .append(",").append(file.getCommentLines()).append(",").append(file.getCyclomaticComplexity())
-                        .append(",").append(String.format("%.1f", file.getMaintainabilityIndex())).append(",,,,\n");
-                continue;
+                        .append(",").append(String.format("%.1f", file.getMaintainabilityIndex())).append(showChanges ? ",,,,,,,\n" : ",,,,\n");
             }
-            for (MethodMetrics m : file.getMethods()) {
+            for (MethodMetricsView m : file.getMethods()) {
                 sb.append("File,").append(escape(file.getFilePath())).append(",").append(escape(file.getRelativePath()))
                         .append(",").append(file.getTotalLines()).append(",").append(file.getCodeLines())
                         .append(",").append(file.getCommentLines()).append(",").append(file.getCyclomaticComplexity())
                         .append(",").append(String.format("%.1f", file.getMaintainabilityIndex()))
                         .append(",").append(escape(m.getName())).append(",").append(m.getCyclomaticComplexity())
-                        .append(",").append(m.getLinesOfCode()).append(",").append(String.format("%.1f", m.getMaintainabilityIndex())).append("\n");
+                        .append(",").append(m.getLinesOfCode()).append(",").append(String.format("%.1f", m.getMaintainabilityIndex()));
+                if (showChanges) {
+                    MethodMetricsView base = m.getBaseline();
+                    sb.append(",").append(m.isChanged() ? "yes" : "")
+                            .append(",").append(base != null ? Integer.toString(base.getCyclomaticComplexity()) : "")
+                            .append(",").append(base != null ? String.format("%.1f", base.getMaintainabilityIndex()) : "");
+                }
+                sb.append("\n");
+            }
+            out.append(sb);
+            if (file.getTypes() == null) return;
+            for (TypeCoupling t : file.getTypes()) {
+                typeRows.append("Type,").append(escape(t.getName())).append(",").append(escape(file.getRelativePath()))
+                        .append(",").append(t.getEfferent()).append(",").append(t.getAfferent()).append(",").append(t.getCbo())
+                        .append(",").append(t.isPartial() ? "yes" : "").append("\n");
             }
         }
-        sb.append("\nDuplicates,Hash,FilePath,LineStart,LineEnd,Preview\n");
-        for (DuplicateBlock dup : result.getDuplicates()) {
-            for (DuplicateOccurrence occ : dup.getOccurrences()) {
-                sb.append("Duplicate,").append(dup.getNormalizedHash()).append(",").append(escape(occ.getFilePath()))
-                        .append(",").append(occ.getLineStart()).append(",").append(occ.getLineEnd())
-                        .append(",").append(escape(occ.getPreview() != null ? occ.getPreview() : "")).append("\n");
+
+        @Override
+        public void writeCoupling(CouplingAnalyzer.Summary coupling) {
+            this.coupling = coupling;
+        }
+
+        @Override
+        public void finish(List<DuplicateBlock> duplicates) throws IOException {
+            StringBuilder sb = new StringBuilder();
+            if (coupling != null) {
+                sb.append("\nCoupling,Type,RelativePath,Efferent,Afferent,CBO,Partial\n").append(typeRows);
+                sb.append("\nPackages,Package,Types,Afferent,Efferent,Instability\n");
+                for (CouplingAnalyzer.PackageCoupling p : coupling.packages()) {
+                    sb.append("Package,").append(escape(packageName(p.name()))).append(",").append(p.types())
+                            .append(",").append(p.afferent()).append(",").append(p.efferent())
+                            .append(",").append(String.format("%.2f", p.instability())).append("\n");
+                }
             }
+            sb.append("\nDuplicates,Hash,FilePath,LineStart,LineEnd,Preview\n");
+            for (DuplicateBlock dup : duplicates) {
+                for (DuplicateOccurrence occ : dup.getOccurrences()) {
+                    sb.append("Duplicate,").append(dup.getNormalizedHash()).append(",").append(escape(occ.getFilePath()))
+                            .append(",").append(occ.getLineStart()).append(",").append(occ.getLineEnd())
+                            .append(",").append(escape(occ.getPreview() != null ? occ.getPreview() : "")).append("\n");
+                }
+            }
+            sb.append("\nRollups,Level,Module,Package,Files,Methods,TotalLines,CodeLines,CyclomaticComplexity,MaxMethodCC,MaintainabilityIndex\n");
+            // Under --changed-since only the touched files were analyzed, so the top row is not the project's.
+            appendRollup(sb, showChanges ? "Changed" : "Project", rollup.project());
+            for (MetricsRollup.Totals t : rollup.modules()) appendRollup(sb, "Module", t);
+            for (MetricsRollup.Totals t : rollup.packages()) appendRollup(sb, "Package", t);
+            sb.append("\nHotspots,Ranking,Rank,RelativePath,MethodName,Line,MethodCC,MethodLOC,MethodMI\n");
+            appendHotspots(sb, "Complexity", rollup.mostComplex());
+            appendHotspots(sb, "Maintainability", rollup.leastMaintainable());
+            out.append(sb);
+        }
+
+        private static void appendRollup(StringBuilder sb, String level, MetricsRollup.Totals t) {
+            sb.append("Rollup,").append(level).append(",").append(escape(t.module())).append(",").append(escape(t.packageName()))
+                    .append(",").append(t.files()).append(",").append(t.methods()).append(",").append(t.totalLines())
+                    .append(",").append(t.codeLines()).append(",").append(t.complexity()).append(",").append(t.maxMethodComplexity())
+                    .append(",").append(String.format("%.1f", t.maintainability())).append("\n");
+        }
+
+        private static void appendHotspots(StringBuilder sb, String ranking, List<MetricsRollup.Hotspot> hotspots) {
+            for (int i = 0; i < hotspots.size(); i++) {
+                MetricsRollup.Hotspot h = hotspots.get(i);
+                sb.append("Hotspot,").append(ranking).append(",").append(i + 1).append(",").append(escape(h.path()))
+                        .append(",").append(escape(h.method())).append(",").append(h.line()).append(",").append(h.complexity())
+                        .append(",").append(h.linesOfCode()).append(",").append(String.format("%.1f", h.maintainability())).append("\n");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
         }
-        return sb.toString();
     }
 
-    public static String generateHtml(AnalysisResult result) {
-        String projectPath = escapeHtml(result.getProjectPath());
-        String analyzedAt = result.getAnalyzedAt().atOffset(ZoneOffset.UTC).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-        int totalFiles = result.getFiles().size();
-        int totalMethods = result.getFiles().stream().mapToInt(f -> f.getMethods().size()).sum();
-        int totalComplexity = result.getFiles().stream().mapToInt(FileMetrics::getCyclomaticComplexity).sum();
-        double avgMi = totalMethods > 0
-                ? result.getFiles().stream().flatMap(f -> f.getMethods().stream()).mapToDouble(MethodMetrics::getMaintainabilityIndex).average().orElse(0)
-                : 0;
-
-        StringBuilder sb = new StringBuilder();
-        sb.append("<!DOCTYPE html>\n<html lang=\"en\">\n<head>\n<meta charset=\"UTF-8\">\n<meta name=\"viewport\" content=\"width=device-width, initial-scale=1.0\">\n");
-        sb.append("<title>Code Quality Report - ").append(projectPath).append("</title>\n<style>\n");
-        sb.append("body { font-family: 'Segoe UI', system-ui, sans-serif; margin: 0; padding: 24px; background: #0f0f12; color: #e4e4e7; }\n");
-        sb.append("h1 { color: #fafafa; font-weight: 600; }\nh2 { color: #a1a1aa; margin-top: 32px; font-size: 1.1rem; }\n");
-        sb.append("table { border-collapse: collapse; width: 100%; margin-top: 12px; }\n");
-        sb.append("th, td { border: 1px solid #27272a; padding: 10px 12px; text-align: left; }\n");
-        sb.append("th { background: #18181b; color: #a1a1aa; font-weight: 600; }\ntr:nth-child(even) { background: #18181b; }\n");
-        sb.append(".bad { color: #f87171; }\n.warn { color: #fbbf24; }\n.good { color: #4ade80; }\n");
-        sb.append(".summary { display: flex; gap: 24px; flex-wrap: wrap; margin: 20px 0; }\n");
-        sb.append(".summary .card { background: #18181b; border: 1px solid #27272a; border-radius: 8px; padding: 16px 24px; min-width: 140px; }\n");
-        sb.append(".summary .card .value { font-size: 1.5rem; font-weight: 700; }\n</style>\n</head>\n<body>\n");
-        sb.append("<h1>Code Quality Report</h1>\n<p>Project: <code>").append(projectPath).append("</code></p>\n");
-        sb.append("<p>Generated: ").append(analyzedAt).append("</p>\n");
-        sb.append("<div class=\"summary\">");
-        sb.append("<div class=\"card\"><span class=\"value\">").append(totalFiles).append("</span><br>Files</div>");
-        sb.append("<div class=\"card\"><span class=\"value\">").append(totalMethods).append("</span><br>Methods</div>");
-        sb.append("<div class=\"card\"><span class=\"value\">").append(totalComplexity).append("</span><br>Total Cyclomatic Complexity</div>");
-        sb.append("<div class=\"card\"><span class=\"value ").append(miClass(avgMi)).append("\">").append(String.format("%.1f", avgMi)).append("</span><br>Avg Maintainability</div>");
-        sb.append("<div class=\"card\"><span class=\"value\">").append(result.getDuplicates().size()).append("</span><br>Duplicate Groups</div>");
-        sb.append("</div>\n");
-
-        sb.append("<h2>File &amp; Method Metrics</h2>\n<table>\n<thead><tr><th>File</th><th>Lines</th><th>Code</th><th>File CC</th><th>File MI</th><th>Method</th><th>Method CC</th><th>LOC</th><th>Method MI</th></tr></thead>\n<tbody>\n");
-        result.getFiles().stream().sorted(Comparator.comparing(FileMetrics::getRelativePath)).forEach(file -> {
+    /**
+     * The summary cards, hotspots and module totals depend on totals that are only known once every
+     * file has been written, so they are emitted after the tables and moved to the top of the page
+     * with flex ordering.
+     */
+    private static final class HtmlReportWriter implements ReportWriter {
+        private final Writer out;
+        private final boolean showChanges;
+        private final MetricsRollup rollup = new MetricsRollup();
+        private int changedMethods;
+        private final List<TypeRow> types = new ArrayList<>();
+        private CouplingAnalyzer.Summary coupling;
+
+        HtmlReportWriter(Writer out, boolean showChanges) {
+            this.out = out;
+            this.showChanges = showChanges;
+        }
+
+        @Override
+        public void begin(String projectPath, Instant analyzedAt) throws IOException {
+            String project = escapeHtml(projectPath);
+            String generated = analyzedAt.atOffset(ZoneOffset.UTC).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+            StringBuilder sb = new StringBuilder();
+            sb.append("<!DOCTYPE html>\n<html lang=\"en\">\n<head>\n<meta charset=\"UTF-8\">\n<meta name=\"viewport\" content=\"width=device-width, initial-scale=1.0\">\n");
+            sb.append("<title>Code Quality Report - ").append(project).append("</title>\n<style>\n");
+            sb.append("body { font-family: 'Segoe UI', system-ui, sans-serif; margin: 0; padding: 24px; background: #0f0f12; color: #e4e4e7; display: flex; flex-direction: column; }\n");
+            sb.append("header { order: -2; }\n.summary, .rollup { order: -1; }\n");
+            sb.append("h1 { color: #fafafa; font-weight: 600; }\nh2 { color: #a1a1aa; margin-top: 32px; font-size: 1.1rem; }\n");
+            sb.append("table { border-collapse: collapse; width: 100%; margin-top: 12px; }\n");
+            sb.append("th, td { border: 1px solid #27272a; padding: 10px 12px; text-align: left; }\n");
+            sb.append("th { background: #18181b; color: #a1a1aa; font-weight: 600; }\ntr:nth-child(even) { background: #18181b; }\n");
+            sb.append(".bad { color: #f87171; }\n.warn { color: #fbbf24; }\n.good { color: #4ade80; }\n");
+            sb.append(".summary { display: flex; gap: 24px; flex-wrap: wrap; margin: 20px 0; }\n");
+            sb.append(".summary .card { background: #18181b; border: 1px solid #27272a; border-radius: 8px; padding: 16px 24px; min-width: 140px; }\n");
+            sb.append(".summary .card .value { font-size: 1.5rem; font-weight: 700; }\n");
+            sb.append("tr.changed td.method { border-left: 3px solid #60a5fa; }\n.delta { color: #a1a1aa; font-size: 0.85em; }\n");
+            sb.append(".approx { color: #fbbf24; font-size: 0.85em; cursor: help; }\n</style>\n</head>\n<body>\n");
+            sb.append("<header>\n<h1>Code Quality Report</h1>\n<p>Project: <code>").append(project).append("</code></p>\n");
+            sb.append("<p>Generated: ").append(generated).append("</p>\n</header>\n");
+            sb.append("<section>\n<h2>File &amp; Method Metrics</h2>\n<table>\n<thead><tr><th>File</th><th>Lines</th><th>Code</th><th>File CC</th><th>File MI</th><th>Method</th><th>Method CC</th><th>LOC</th><th>Method MI</th></tr></thead>\n<tbody>\n");
+            out.append(sb);
+        }
+
+        @Override
+        public void writeFile(FileMetricsView file) throws IOException {
+            rollup.add(file);
+            StringBuilder sb = new StringBuilder();
             if (file.getMethods().isEmpty()) {
-                sb.append("<tr><td>").append(escapeHtml(file.getRelativePath())).append("</td><td>").append(file.getTotalLines())
+                sb.append("<tr><td>").append(escapeHtml(file.getRelativePath()));
+                if (file.getDegraded() != null) {
+                    sb.append(" <span class=\"approx\" title=\"").append(escapeHtml(file.getDegraded())).append("\">approximate</span>");
+                }
+                sb.append("</td><td>").append(file.getTotalLines())
                         .append("</td><td>").append(file.getCodeLines()).append("</td><td>").append(file.getCyclomaticComplexity())
                         .append("</td><td class=\"").append(miClass(file.getMaintainabilityIndex())).append("\">").append(String.format("%.1f", file.getMaintainabilityIndex()))
                         .append("</td><td colspan=\"4\">—</td></tr>\n");
+                out.append(sb);
+                addTypes(file);
                 return;
             }
-            boolean[] first = { true };
-            for (MethodMetrics m : file.getMethods()) {
-                sb.append("<tr>");
-                if (first[0]) {
+            boolean first = true;
+            for (MethodMetricsView m : file.getMethods()) {
+                boolean changed = showChanges && m.isChanged();
+                if (changed) changedMethods++;
+                sb.append(changed ? "<tr class=\"changed\">" : "<tr>");
+                if (first) {
                     sb.append("<td rowspan=\"").append(file.getMethods().size()).append("\">").append(escapeHtml(file.getRelativePath()))
                             .append("</td><td rowspan=\"").append(file.getMethods().size()).append("\">").append(file.getTotalLines())
                             .append("</td><td rowspan=\"").append(file.getMethods().size()).append("\">").append(file.getCodeLines())
                             .append("</td><td rowspan=\"").append(file.getMethods().size()).append("\">").append(file.getCyclomaticComplexity())
                             .append("</td><td rowspan=\"").append(file.getMethods().size()).append("\" class=\"").append(miClass(file.getMaintainabilityIndex()))
                             .append("\">").append(String.format("%.1f", file.getMaintainabilityIndex())).append("</td>");
-                    first[0] = false;
+                    first = false;
                 }
-                sb.append("<td>").append(escapeHtml(m.getName())).append("</td><td class=\"").append(ccClass(m.getCyclomaticComplexity()))
-                        .append("\">").append(m.getCyclomaticComplexity()).append("</td><td>").append(m.getLinesOfCode())
-                        .append("</td><td class=\"").append(miClass(m.getMaintainabilityIndex())).append("\">").append(String.format("%.1f", m.getMaintainabilityIndex())).append("</td></tr>\n");
+                sb.append(changed ? "<td class=\"method\">" : "<td>").append(escapeHtml(m.getName())).append(changed && m.getBaseline() == null ? " <span class=\"delta\">new</span>" : "")
+                        .append("</td><td class=\"").append(ccClass(m.getCyclomaticComplexity()))
+                        .append("\">").append(m.getCyclomaticComplexity());
+                if (changed && m.getBaseline() != null) sb.append(" <span class=\"delta\">").append(signed(m.getCyclomaticComplexity() - m.getBaseline().getCyclomaticComplexity())).append("</span>");
+                sb.append("</td><td>").append(m.getLinesOfCode())
+                        .append("</td><td class=\"").append(miClass(m.getMaintainabilityIndex())).append("\">").append(String.format("%.1f", m.getMaintainabilityIndex()));
+                if (changed && m.getBaseline() != null) sb.append(" <span class=\"delta\">").append(signed(m.getMaintainabilityIndex() - m.getBaseline().getMaintainabilityIndex())).append("</span>");
+                sb.append("</td></tr>\n");
             }
-        });
-        sb.append("</tbody></table>\n");
+            out.append(sb);
+            addTypes(file);
+        }
+
+        private void addTypes(FileMetricsView file) {
+            if (file.getTypes() == null) return;
+            for (TypeCoupling t : file.getTypes()) {
+                types.add(new TypeRow(t.getName(), file.getRelativePath(), t.getEfferent(), t.getAfferent(), t.getCbo(), t.isPartial()));
+            }
+        }
+
+        @Override
+        public void writeCoupling(CouplingAnalyzer.Summary coupling) {
+            this.coupling = coupling;
+        }
+
+        @Override
+        public void finish(List<DuplicateBlock> duplicates) throws IOException {
+            StringBuilder sb = new StringBuilder();
+            sb.append("</tbody></table>\n</section>\n");
+            if (coupling != null) {
+                types.sort(Comparator.comparingInt(TypeRow::cbo).reversed().thenComparing(TypeRow::name));
+                sb.append("<section>\n<h2>Type Coupling</h2>\n<table>\n<thead><tr><th>Type</th><th>File</th><th>Fan-out (Ce)</th><th>Fan-in (Ca)</th><th>CBO</th></tr></thead>\n<tbody>\n");
+                for (TypeRow t : types) {
+                    sb.append("<tr><td>").append(escapeHtml(t.name())).append(t.partial() ? " <span class=\"delta\">partial</span>" : "")
+                            .append("</td><td>").append(escapeHtml(t.path())).append("</td><td>").append(t.efferent())
+                            .append("</td><td>").append(t.afferent()).append("</td><td class=\"").append(cboClass(t.cbo())).append("\">")
+                            .append(t.cbo()).append("</td></tr>\n");
+                }
+                sb.append("</tbody></table>\n</section>\n");
+                sb.append("<section>\n<h2>Package Coupling</h2>\n<table>\n<thead><tr><th>Package</th><th>Types</th><th>Afferent (Ca)</th><th>Efferent (Ce)</th><th>Instability</th></tr></thead>\n<tbody>\n");
+                for (CouplingAnalyzer.PackageCoupling p : coupling.packages()) {
+                    sb.append("<tr><td>").append(escapeHtml(packageName(p.name()))).append("</td><td>").append(p.types())
+                            .append("</td><td>").append(p.afferent()).append("</td><td>").append(p.efferent())
+                            .append("</td><td>").append(String.format("%.2f", p.instability())).append("</td></tr>\n");
+                }
+                sb.append("</tbody></table>\n</section>\n");
+            }
+            if (!duplicates.isEmpty()) {
+                sb.append("<section>\n<h2>Code Duplication</h2>\n<table>\n<thead><tr><th>Hash</th><th>Occurrences</th><th>Locations</th></tr></thead>\n<tbody>\n");
+                for (DuplicateBlock dup : duplicates) {
+                    sb.append("<tr><td><code>").append(escapeHtml(dup.getNormalizedHash())).append("</code>");
+                    if (dup.getSimilarity() < 1) sb.append(" <span class=\"delta\">").append(String.format("%.0f%% similar", dup.getSimilarity() * 100)).append("</span>");
+                    sb.append("</td><td>").append(dup.getOccurrences().size())
+                            .append("</td><td>");
+                    for (int i = 0; i < dup.getOccurrences().size(); i++) {
+                        DuplicateOccurrence o = dup.getOccurrences().get(i);
+                        if (i > 0) sb.append("; ");
+                        sb.append(escapeHtml(o.getFilePath())).append(" L").append(o.getLineStart()).append("-").append(o.getLineEnd());
+                    }
+                    sb.append("</td></tr>\n");
+                }
+                sb.append("</tbody></table>\n</section>\n");
+            }
+            appendPackages(sb, rollup.packages());
+            MetricsRollup.Totals project = rollup.project();
+            double avgMi = project.maintainability();
+            sb.append("<div class=\"summary\">");
+            sb.append("<div class=\"card\"><span class=\"value\">").append(project.files()).append("</span><br>")
+                    .append(showChanges ? "Changed Files" : "Files").append("</div>");
+            sb.append("<div class=\"card\"><span class=\"value\">").append(project.methods()).append("</span><br>Methods</div>");
+            sb.append("<div class=\"card\"><span class=\"value\">").append(project.complexity()).append("</span><br>Total Cyclomatic Complexity</div>");
+            sb.append("<div class=\"card\"><span class=\"value ").append(miClass(avgMi)).append("\">").append(String.format("%.1f", avgMi)).append("</span><br>Avg Maintainability</div>");
+            sb.append("<div class=\"card\"><span class=\"value\">").append(duplicates.size()).append("</span><br>Duplicate Groups</div>");
+            if (showChanges) sb.append("<div class=\"card\"><span class=\"value\">").append(changedMethods).append("</span><br>Changed Methods</div>");
+            if (coupling != null) {
+                double avgCbo = types.stream().mapToInt(TypeRow::cbo).average().orElse(0);
+                sb.append("<div class=\"card\"><span class=\"value\">").append(String.format("%.1f", avgCbo)).append("</span><br>Avg CBO</div>");
+            }
+            sb.append("</div>\n");
+            appendHotspots(sb, "Complexity Hotspots", rollup.mostComplex());
+            appendHotspots(sb, "Maintainability Hotspots", rollup.leastMaintainable());
+            List<MetricsRollup.Totals> modules = rollup.modules();
+            if (modules.size() > 1) appendModules(sb, modules);
+            sb.append("</body></html>\n");
+            out.append(sb);
+        }
+
+        private static void appendHotspots(StringBuilder sb, String title, List<MetricsRollup.Hotspot> hotspots) {
+            if (hotspots.isEmpty()) return;
+            sb.append("<section class=\"rollup\">\n<h2>").append(title).append("</h2>\n<table>\n<thead><tr><th>#</th><th>Method</th><th>File</th><th>Line</th><th>CC</th><th>LOC</th><th>MI</th></tr></thead>\n<tbody>\n");
+            for (int i = 0; i < hotspots.size(); i++) {
+                MetricsRollup.Hotspot h = hotspots.get(i);
+                sb.append("<tr><td>").append(i + 1).append("</td><td>").append(escapeHtml(h.method()))
+                        .append("</td><td>").append(escapeHtml(h.path())).append("</td><td>").append(h.line())
+                        .append("</td><td class=\"").append(ccClass(h.complexity())).append("\">").append(h.complexity())
+                        .append("</td><td>").append(h.linesOfCode())
+                        .append("</td><td class=\"").append(miClass(h.maintainability())).append("\">").append(String.format("%.1f", h.maintainability()))
+                        .append("</td></tr>\n");
+            }
+            sb.append("</tbody></table>\n</section>\n");
+        }
 
-        if (!result.getDuplicates().isEmpty()) {
-            sb.append("<h2>Code Duplication</h2>\n<table>\n<thead><tr><th>Hash</th><th>Occurrences</th><th>Locations</th></tr></thead>\n<tbody>\n");
-            for (DuplicateBlock dup : result.getDuplicates()) {
-                String locations = dup.getOccurrences().stream()
-                        .map(o -> escapeHtml(o.getFilePath()) + " L" + o.getLineStart() + "-" + o.getLineEnd())
-                        .collect(Collectors.joining("; "));
-                sb.append("<tr><td><code>").append(escapeHtml(dup.getNormalizedHash())).append("</code></td><td>").append(dup.getOccurrences().size())
-                        .append("</td><td>").append(locations).append("</td></tr>\n");
+        private static void appendModules(StringBuilder sb, List<MetricsRollup.Totals> modules) {
+            sb.append("<section class=\"rollup\">\n<h2>Modules</h2>\n<table>\n<thead><tr><th>Module</th>");
+            appendTotalsHeader(sb);
+            for (MetricsRollup.Totals t : modules) {
+                sb.append("<tr><td>").append(escapeHtml(moduleName(t.module()))).append("</td>");
+                appendTotals(sb, t);
             }
-            sb.append("</tbody></table>\n");
+            sb.append("</tbody></table>\n</section>\n");
+        }
+
+        /** After the file table: a monorepo has far more packages than fit above it. */
+        private static void appendPackages(StringBuilder sb, List<MetricsRollup.Totals> packages) {
+            if (packages.isEmpty()) return;
+            boolean modules = packages.stream().anyMatch(t -> !t.module().isEmpty());
+            sb.append("<section>\n<h2>Packages</h2>\n<table>\n<thead><tr>").append(modules ? "<th>Module</th>" : "").append("<th>Package</th>");
+            appendTotalsHeader(sb);
+            for (MetricsRollup.Totals t : packages) {
+                sb.append("<tr>");
+                if (modules) sb.append("<td>").append(escapeHtml(moduleName(t.module()))).append("</td>");
+                sb.append("<td>").append(escapeHtml(packageName(t.packageName()))).append("</td>");
+                appendTotals(sb, t);
+            }
+            sb.append("</tbody></table>\n</section>\n");
+        }
+
+        private static void appendTotalsHeader(StringBuilder sb) {
+            sb.append("<th>Files</th><th>Methods</th><th>Code</th><th>Total CC</th><th>Max Method CC</th><th>Avg MI</th></tr></thead>\n<tbody>\n");
+        }
+
+        private static void appendTotals(StringBuilder sb, MetricsRollup.Totals t) {
+            sb.append("<td>").append(t.files()).append("</td><td>").append(t.methods()).append("</td><td>").append(t.codeLines())
+                    .append("</td><td>").append(t.complexity()).append("</td><td class=\"").append(ccClass(t.maxMethodComplexity())).append("\">")
+                    .append(t.maxMethodComplexity()).append("</td><td class=\"").append(miClass(t.maintainability())).append("\">")
+                    .append(String.format("%.1f", t.maintainability())).append("</td></tr>\n");
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
         }
-        sb.append("</body></html>\n");
-        return sb.toString();
     }
 
+    private record TypeRow(String name, String path, int efferent, int afferent, int cbo, boolean partial) {}
+
     private static String ccClass(int cc) {
         if (cc > 15) return "bad";
         if (cc > 10) return "warn";
@@ -126,6 +429,30 @@ public final class ReportGenerator {
         return "good";
     }
 
+    /** Common rule-of-thumb limits: more than 14 coupled types is hard to change in isolation. */
+    private static String cboClass(int cbo) {
+        if (cbo > 20) return "bad";
+        if (cbo > 14) return "warn";
+        return "good";
+    }
+
+    private static String packageName(String name) {
+        return name.isEmpty() ? "(default package)" : name;
+    }
+
+    private static String moduleName(String name) {
+        return name.isEmpty() ? "(root)" : name;
+    }
+
+    private static String signed(int delta) {
+        return (delta > 0 ? "(+" : "(") + delta + ")";
+    }
+
+    private static String signed(double delta) {
+        String formatted = String.format("%.1f", Math.round(delta * 10) / 10.0);
+        return (delta > 0 && !formatted.equals("0.0") ? "(+" : "(") + formatted + ")";
+    }
+
     private static String escape(String s) {
         if (s == null) return "";
         if (s.contains(",") || s.contains("\"")) return "\"" + s.replace("\"", "\"\"") + "\"";
@@ -0,0 +1,22 @@
+package com.codeanalyzer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Incremental report output: rows are written as each file arrives, and only the running
+ * summary totals are kept until {@link #finish(List)}.
+ */
+public interface ReportWriter extends Closeable {
+
+    void begin(String projectPath, Instant analyzedAt) throws IOException;
+
+    void writeFile(FileMetricsView file) throws IOException;
+
+    /** Package coupling, emitted by {@link #finish(List)} next to the per-type rows gathered from each file. */
+    default void writeCoupling(CouplingAnalyzer.Summary coupling) throws IOException { }
+
+    void finish(List<DuplicateBlock> duplicates) throws IOException;
+}
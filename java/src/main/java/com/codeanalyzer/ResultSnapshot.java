@@ -0,0 +1,428 @@
+package com.codeanalyzer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Versioned binary snapshot of an analysis result, designed to be memory-mapped and read in place.
+ * Every record is fixed-width, and each string is stored once in a table and referenced by index.
+ * Opening a snapshot therefore only validates the header, and a file or method is decoded when it
+ * is read. Files are sorted by relative path (UTF-8 byte order), so two snapshots can be
+ * merge-joined without building any maps.
+ *
+ * <pre>
+ * header       64 bytes: magic, format version, metrics version, analyzedAt, counts, section offsets
+ * strings      (count + 1) int offsets into the UTF-8 data that follows
+ * files        56 bytes each: relativePath, filePath, totalLines, codeLines, commentLines, CC,
+ *              first method, method count, MI (double), metrics fingerprint (long), degraded
+ *              reason (-1 when exact), 4 bytes padding
+ * methods      32 bytes each: name, signature, lineStart, lineEnd, CC, LOC, MI (double)
+ * duplicates   24 bytes each: hash, tokenCount, first occurrence, occurrence count, similarity (double)
+ * occurrences  16 bytes each: filePath, lineStart, lineEnd, preview
+ * </pre>
+ *
+ * All integers are big-endian.
+ */
+public final class ResultSnapshot {
+
+    public static final int FORMAT_VERSION = 3;
+
+    private static final int MAGIC = 0x43415353; // "CASS"
+    private static final int HEADER_BYTES = 64;
+    private static final int FILE_BYTES = 56;
+    private static final int METHOD_BYTES = 32;
+    private static final int DUPLICATE_BYTES = 24;
+    private static final int OCCURRENCE_BYTES = 16;
+
+    private final ByteBuffer buffer;
+    private final int metricsVersion;
+    private final long analyzedAtMillis;
+    private final int projectPathId;
+    private final int stringCount;
+    private final int fileCount;
+    private final int methodCount;
+    private final int duplicateCount;
+    private final int stringsOffset;
+    private final int stringDataOffset;
+    private final int filesOffset;
+    private final int methodsOffset;
+    private final int duplicatesOffset;
+    private final int occurrencesOffset;
+
+    private ResultSnapshot(ByteBuffer buffer) {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a code-analyzer snapshot");
+        }
+        int version = buffer.getInt(4);
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported snapshot format version " + version + " (expected " + FORMAT_VERSION + ")");
+        }
+        metricsVersion = buffer.getInt(8);
+        analyzedAtMillis = buffer.getLong(12);
+        projectPathId = buffer.getInt(20);
+        stringCount = buffer.getInt(24);
+        fileCount = buffer.getInt(28);
+        methodCount = buffer.getInt(32);
+        duplicateCount = buffer.getInt(36);
+        int occurrenceCount = buffer.getInt(40);
+        stringsOffset = HEADER_BYTES;
+        stringDataOffset = stringsOffset + (stringCount + 1) * 4;
+        filesOffset = buffer.getInt(44);
+        methodsOffset = buffer.getInt(48);
+        duplicatesOffset = buffer.getInt(52);
+        occurrencesOffset = buffer.getInt(56);
+        long end = (long) occurrencesOffset + (long) occurrenceCount * OCCURRENCE_BYTES;
+        if (filesOffset != methodsOffset - (long) fileCount * FILE_BYTES
+                || duplicatesOffset != methodsOffset + (long) methodCount * METHOD_BYTES
+                || occurrencesOffset != duplicatesOffset + (long) duplicateCount * DUPLICATE_BYTES
+                || end > buffer.capacity()) {
+            throw new IllegalArgumentException("Truncated or corrupt snapshot");
+        }
+    }
+
+    /** Maps a snapshot file read-only. Nothing beyond the header is read until it is accessed. */
+    public static ResultSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new ResultSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public static ResultSnapshot wrap(ByteBuffer buffer) {
+        return new ResultSnapshot(buffer);
+    }
+
+    public static void write(Path file, String projectPath, Instant analyzedAt,
+                             List<? extends FileMetricsView> files, List<DuplicateBlock> duplicates) throws IOException {
+        write(file, encode(projectPath, analyzedAt, files, duplicates));
+    }
+
+    /** Writes an encoded snapshot atomically, so a reader never maps a half-written file. */
+    public static void write(Path file, ByteBuffer encoded) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (encoded.hasRemaining()) channel.write(encoded);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static ByteBuffer encode(String projectPath, Instant analyzedAt,
+                                    List<? extends FileMetricsView> files, List<DuplicateBlock> duplicates) {
+        StringTable strings = new StringTable();
+        int projectId = strings.id(projectPath);
+
+        // Sort by the UTF-8 bytes of the relative path, the order readers merge on.
+        byte[][] keys = new byte[files.size()][];
+        Integer[] order = new Integer[files.size()];
+        int methodTotal = 0;
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = files.get(i).getRelativePath().getBytes(StandardCharsets.UTF_8);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(keys[a], keys[b]));
+
+        FileMetricsView[] sorted = new FileMetricsView[files.size()];
+        for (int i = 0; i < order.length; i++) {
+            sorted[i] = files.get(order[i]);
+            methodTotal += sorted[i].getMethods().size();
+        }
+        int occurrenceTotal = 0;
+        for (DuplicateBlock d : duplicates) occurrenceTotal += d.getOccurrences().size();
+
+        ByteBuffer fileSection = ByteBuffer.allocate(sorted.length * FILE_BYTES);
+        ByteBuffer methodSection = ByteBuffer.allocate(methodTotal * METHOD_BYTES);
+        int methodIndex = 0;
+        for (FileMetricsView f : sorted) {
+            List<? extends MethodMetricsView> methods = f.getMethods();
+            fileSection.putInt(strings.id(f.getRelativePath()))
+                    .putInt(strings.id(f.getFilePath()))
+                    .putInt(f.getTotalLines())
+                    .putInt(f.getCodeLines())
+                    .putInt(f.getCommentLines())
+                    .putInt(f.getCyclomaticComplexity())
+                    .putInt(methodIndex)
+                    .putInt(methods.size())
+                    .putDouble(f.getMaintainabilityIndex())
+                    .putLong(fingerprint(f))
+                    .putInt(strings.id(f.getDegraded()))
+                    .putInt(0);
+            for (MethodMetricsView m : methods) {
+                methodSection.putInt(strings.id(m.getName()))
+                        .putInt(strings.id(m.getSignature()))
+                        .putInt(m.getLineStart())
+                        .putInt(m.getLineEnd())
+                        .putInt(m.getCyclomaticComplexity())
+                        .putInt(m.getLinesOfCode())
+                        .putDouble(m.getMaintainabilityIndex());
+            }
+            methodIndex += methods.size();
+        }
+        ByteBuffer duplicateSection = ByteBuffer.allocate(duplicates.size() * DUPLICATE_BYTES);
+        ByteBuffer occurrenceSection = ByteBuffer.allocate(occurrenceTotal * OCCURRENCE_BYTES);
+        int occurrenceIndex = 0;
+        for (DuplicateBlock d : duplicates) {
+            duplicateSection.putInt(strings.id(d.getNormalizedHash()))
+                    .putInt(d.getTokenCount())
+                    .putInt(occurrenceIndex)
+                    .putInt(d.getOccurrences().size())
+                    .putDouble(d.getSimilarity());
+            for (DuplicateOccurrence o : d.getOccurrences()) {
+                occurrenceSection.putInt(strings.id(o.getFilePath()))
+                        .putInt(o.getLineStart())
+                        .putInt(o.getLineEnd())
+                        .putInt(strings.id(o.getPreview()));
+            }
+            occurrenceIndex += d.getOccurrences().size();
+        }
+
+        int stringDataOffset = HEADER_BYTES + (strings.size() + 1) * 4;
+        int filesOffset = align8(stringDataOffset + strings.dataLength());
+        int methodsOffset = filesOffset + fileSection.capacity();
+        int duplicatesOffset = methodsOffset + methodSection.capacity();
+        int occurrencesOffset = duplicatesOffset + duplicateSection.capacity();
+        ByteBuffer out = ByteBuffer.allocate(occurrencesOffset + occurrenceSection.capacity());
+        out.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(JavaAnalyzer.METRICS_VERSION)
+                .putLong(analyzedAt.toEpochMilli())
+                .putInt(projectId)
+                .putInt(strings.size())
+                .putInt(sorted.length)
+                .putInt(methodTotal)
+                .putInt(duplicates.size())
+                .putInt(occurrenceTotal)
+                .putInt(filesOffset)
+                .putInt(methodsOffset)
+                .putInt(duplicatesOffset)
+                .putInt(occurrencesOffset);
+        out.position(HEADER_BYTES);
+        strings.writeTo(out);
+        out.position(filesOffset);
+        out.put(fileSection.flip()).put(methodSection.flip()).put(duplicateSection.flip()).put(occurrenceSection.flip());
+        return out.flip();
+    }
+
+    public String projectPath() { return string(projectPathId); }
+    public Instant analyzedAt() { return Instant.ofEpochMilli(analyzedAtMillis); }
+    public int metricsVersion() { return metricsVersion; }
+    public int fileCount() { return fileCount; }
+    public int methodCount() { return methodCount; }
+    public int duplicateCount() { return duplicateCount; }
+
+    /** Flyweight list over the files, in relative path order; token sequences are not stored. */
+    public List<FileMetricsView> files() {
+        return new AbstractList<>() {
+            @Override
+            public FileMetricsView get(int index) {
+                return file(index);
+            }
+
+            @Override
+            public int size() {
+                return fileCount;
+            }
+        };
+    }
+
+    public FileMetricsView file(int index) {
+        if (index < 0 || index >= fileCount) throw new IndexOutOfBoundsException(index);
+        return new FileView(index);
+    }
+
+    /** Decodes one duplicate group. */
+    public DuplicateBlock duplicate(int index) {
+        if (index < 0 || index >= duplicateCount) throw new IndexOutOfBoundsException(index);
+        int base = duplicatesOffset + index * DUPLICATE_BYTES;
+        DuplicateBlock block = new DuplicateBlock(string(buffer.getInt(base)));
+        block.setTokenCount(buffer.getInt(base + 4));
+        int first = buffer.getInt(base + 8);
+        int count = buffer.getInt(base + 12);
+        block.setSimilarity(buffer.getDouble(base + 16));
+        for (int i = 0; i < count; i++) {
+            int o = occurrencesOffset + (first + i) * OCCURRENCE_BYTES;
+            DuplicateOccurrence occ = new DuplicateOccurrence(string(buffer.getInt(o)));
+            occ.setLineStart(buffer.getInt(o + 4));
+            occ.setLineEnd(buffer.getInt(o + 8));
+            occ.setPreview(string(buffer.getInt(o + 12)));
+            block.getOccurrences().add(occ);
+        }
+        return block;
+    }
+
+    public List<DuplicateBlock> duplicates() {
+        return new AbstractList<>() {
+            @Override
+            public DuplicateBlock get(int index) {
+                return duplicate(index);
+            }
+
+            @Override
+            public int size() {
+                return duplicateCount;
+            }
+        };
+    }
+
+    /** Group identity across runs: normalized hash and length, without decoding the occurrences. */
+    String duplicateKey(int index) {
+        int base = duplicatesOffset + index * DUPLICATE_BYTES;
+        return string(buffer.getInt(base)) + ":" + buffer.getInt(base + 4);
+    }
+
+    int fileInt(int file, int field) { return buffer.getInt(filesOffset + file * FILE_BYTES + field * 4); }
+    double fileMaintainability(int file) { return buffer.getDouble(filesOffset + file * FILE_BYTES + 32); }
+    long fileFingerprint(int file) { return buffer.getLong(filesOffset + file * FILE_BYTES + 40); }
+    String fileDegraded(int file) { return string(fileInt(file, 12)); }
+    int methodInt(int method, int field) { return buffer.getInt(methodsOffset + method * METHOD_BYTES + field * 4); }
+    double methodMaintainability(int method) { return buffer.getDouble(methodsOffset + method * METHOD_BYTES + 24); }
+
+    /** Compares the relative paths of two files in UTF-8 byte order without decoding them. */
+    static int compareRelativePaths(ResultSnapshot a, int fileA, ResultSnapshot b, int fileB) {
+        int idA = a.fileInt(fileA, 0);
+        int idB = b.fileInt(fileB, 0);
+        int startA = a.stringStart(idA), lengthA = a.stringStart(idA + 1) - startA;
+        int startB = b.stringStart(idB), lengthB = b.stringStart(idB + 1) - startB;
+        int n = Math.min(lengthA, lengthB);
+        for (int i = 0; i < n; i++) {
+            int c = Integer.compare(a.buffer.get(startA + i) & 0xFF, b.buffer.get(startB + i) & 0xFF);
+            if (c != 0) return c;
+        }
+        return Integer.compare(lengthA, lengthB);
+    }
+
+    String string(int id) {
+        if (id < 0) return null;
+        int start = stringStart(id);
+        byte[] bytes = new byte[stringStart(id + 1) - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int stringStart(int id) {
+        return stringDataOffset + buffer.getInt(stringsOffset + id * 4);
+    }
+
+    /**
+     * Hash of everything a baseline diff compares (file CC, MI and whether it is approximate, and
+     * each callable's name, signature, CC, LOC and MI), so files whose metrics did not change are skipped in one compare.
+     * Line numbers are left out: moving a method does not change its metrics.
+     */
+    private static long fingerprint(FileMetricsView f) {
+        long h = 0x9E3779B97F4A7C15L;
+        h = mix(h, f.getCyclomaticComplexity());
+        h = mix(h, Double.doubleToLongBits(f.getMaintainabilityIndex()));
+        h = mix(h, f.getDegraded() != null ? f.getDegraded().hashCode() : 0);
+        for (MethodMetricsView m : f.getMethods()) {
+            h = mix(h, m.getName().hashCode());
+            h = mix(h, m.getSignature() != null ? m.getSignature().hashCode() : 0);
+            h = mix(h, m.getCyclomaticComplexity());
+            h = mix(h, m.getLinesOfCode());
+            h = mix(h, Double.doubleToLongBits(m.getMaintainabilityIndex()));
+        }
+        return h;
+    }
+
+    private static long mix(long h, long value) {
+        h = (h ^ value) * 0xff51afd7ed558ccdL;
+        return h ^ (h >>> 32);
+    }
+
+    private static int align8(int offset) {
+        return (offset + 7) & ~7;
+    }
+
+    private final class FileView implements FileMetricsView {
+        private final int index;
+
+        FileView(int index) {
+            this.index = index;
+        }
+
+        @Override public String getFilePath() { return string(fileInt(index, 1)); }
+        @Override public String getRelativePath() { return string(fileInt(index, 0)); }
+        @Override public int getTotalLines() { return fileInt(index, 2); }
+        @Override public int getCodeLines() { return fileInt(index, 3); }
+        @Override public int getCommentLines() { return fileInt(index, 4); }
+        @Override public int getCyclomaticComplexity() { return fileInt(index, 5); }
+        @Override public double getMaintainabilityIndex() { return fileMaintainability(index); }
+        @Override public TokenSequence getTokens() { return null; }
+        @Override public String getDegraded() { return fileDegraded(index); }
+
+        @Override
+        public List<MethodMetricsView> getMethods() {
+            int first = fileInt(index, 6);
+            int count = fileInt(index, 7);
+            return new AbstractList<>() {
+                @Override
+                public MethodMetricsView get(int i) {
+                    if (i < 0 || i >= count) throw new IndexOutOfBoundsException(i);
+                    return new MethodView(first + i);
+                }
+
+                @Override
+                public int size() {
+                    return count;
+                }
+            };
+        }
+    }
+
+    private final class MethodView implements MethodMetricsView {
+        private final int index;
+
+        MethodView(int index) {
+            this.index = index;
+        }
+
+        @Override public String getName() { return string(methodInt(index, 0)); }
+        @Override public String getSignature() { return string(methodInt(index, 1)); }
+        @Override public int getLineStart() { return methodInt(index, 2); }
+        @Override public int getLineEnd() { return methodInt(index, 3); }
+        @Override public int getCyclomaticComplexity() { return methodInt(index, 4); }
+        @Override public int getLinesOfCode() { return methodInt(index, 5); }
+        @Override public double getMaintainabilityIndex() { return methodMaintainability(index); }
+    }
+
+    /** Write-side string table; a null string is stored as id -1. */
+    private static final class StringTable {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private byte[][] values = new byte[64][];
+        private int size;
+        private int dataLength;
+
+        int id(String value) {
+            if (value == null) return -1;
+            Integer id = ids.get(value);
+            if (id != null) return id;
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            values[size] = bytes;
+            dataLength += bytes.length;
+            ids.put(value, size);
+            return size++;
+        }
+
+        int size() { return size; }
+        int dataLength() { return dataLength; }
+
+        void writeTo(ByteBuffer out) {
+            int offset = 0;
+            for (int i = 0; i < size; i++) {
+                out.putInt(offset);
+                offset += values[i].length;
+            }
+            out.putInt(offset);
+            for (int i = 0; i < size; i++) out.put(values[i]);
+        }
+    }
+}
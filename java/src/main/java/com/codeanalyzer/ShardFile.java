@@ -0,0 +1,190 @@
+package com.codeanalyzer;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Partial result of one shard of a split run ({@code --shard i/N}): the metrics of the files that
+ * fall into the shard together with their normalized token streams, which are what the duplicate
+ * index is built from. {@link #merge} combines all N shards into one {@link AnalysisResult} and
+ * runs duplicate detection over the union, so clones that span shards are found exactly as in a
+ * single run.
+ *
+ * <p>Files are assigned by a hash of their relative path, so every machine that sees the same
+ * tree computes the same partition without coordinating, and a file keeps its shard when others
+ * are added or removed.
+ */
+public final class ShardFile {
+
+    private static final int MAGIC = 0x43415348; // "CASH"
+    private static final int FORMAT_VERSION = 2;
+
+    private final int shard;
+    private final int count;
+    private final int discovered;
+    private final String projectPath;
+    private final String rootPath;
+    private final Instant analyzedAt;
+    private final List<FileMetrics> files;
+
+    private ShardFile(int shard, int count, int discovered, String projectPath, String rootPath,
+                      Instant analyzedAt, List<FileMetrics> files) {
+        this.shard = shard;
+        this.count = count;
+        this.discovered = discovered;
+        this.projectPath = projectPath;
+        this.rootPath = rootPath;
+        this.analyzedAt = analyzedAt;
+        this.files = files;
+    }
+
+    /** 1-based shard number, out of {@link #count()}. */
+    public int shard() { return shard; }
+    public int count() { return count; }
+    /** Files discovered in the whole tree by this shard, before partitioning. */
+    public int discovered() { return discovered; }
+    public String projectPath() { return projectPath; }
+    public String rootPath() { return rootPath; }
+    public Instant analyzedAt() { return analyzedAt; }
+    public List<FileMetrics> files() { return files; }
+
+    /** Whether the file at {@code relativePath} belongs to shard {@code shard} (1-based) of {@code count}. */
+    public static boolean owns(String relativePath, int shard, int count) {
+        long h = relativePath.replace('\\', '/').hashCode();
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return Math.floorMod(h, count) == shard - 1;
+    }
+
+    /** The subset of {@code files} (as returned by {@link JavaAnalyzer#discover}) owned by the shard, in order. */
+    public static List<Path> select(Path root, List<Path> files, int shard, int count) {
+        List<Path> selected = new ArrayList<>();
+        for (Path file : files) {
+            if (owns(root.relativize(file).toString(), shard, count)) selected.add(file);
+        }
+        return selected;
+    }
+
+    /** Streams a shard's files to disk as they are analyzed; the file only appears once closed. */
+    public static final class Writer implements Closeable {
+        private final Path target;
+        private final Path tmp;
+        private final DataOutputStream out;
+        private int written;
+
+        public Writer(Path target, int shard, int count, int discovered, String projectPath, Path root,
+                      Instant analyzedAt) throws IOException {
+            this.target = target;
+            this.tmp = target.resolveSibling(target.getFileName() + ".tmp");
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(JavaAnalyzer.METRICS_VERSION);
+            out.writeInt(shard);
+            out.writeInt(count);
+            out.writeInt(discovered);
+            out.writeUTF(projectPath);
+            out.writeUTF(root.toString());
+            out.writeLong(analyzedAt.toEpochMilli());
+        }
+
+        public void add(FileMetrics file) throws IOException {
+            out.writeBoolean(true);
+            out.writeUTF(file.getRelativePath().replace('\\', '/'));
+            AnalysisCache.writeMetrics(out, file);
+            written++;
+        }
+
+        public int written() { return written; }
+
+        @Override
+        public void close() throws IOException {
+            out.writeBoolean(false);
+            out.writeInt(written);
+            out.close();
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /** Reads a shard written by {@link Writer}; file paths are rebuilt under {@code root}, or the shard's own root if null. */
+    public static ShardFile read(Path file, String root) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) throw new IOException(file + " is not a shard file");
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) throw new IOException(file + " has unsupported shard format " + version);
+            int metricsVersion = in.readInt();
+            if (metricsVersion != JavaAnalyzer.METRICS_VERSION) {
+                throw new IOException(file + " was written by an analyzer with metrics version " + metricsVersion
+                        + ", expected " + JavaAnalyzer.METRICS_VERSION);
+            }
+            int shard = in.readInt();
+            int count = in.readInt();
+            int discovered = in.readInt();
+            String projectPath = in.readUTF();
+            String shardRoot = in.readUTF();
+            Instant analyzedAt = Instant.ofEpochMilli(in.readLong());
+            Path base = Paths.get(root != null ? root : shardRoot);
+            List<FileMetrics> files = new ArrayList<>();
+            while (in.readBoolean()) {
+                String relativePath = in.readUTF();
+                Path path = base.resolve(relativePath);
+                files.add(AnalysisCache.readMetrics(in, path.toString(), base.relativize(path).toString()));
+            }
+            if (in.readInt() != files.size()) throw new IOException(file + " is truncated or corrupt");
+            return new ShardFile(shard, count, discovered, projectPath, shardRoot, analyzedAt, files);
+        } catch (EOFException e) {
+            throw new IOException(file + " is truncated or corrupt", e);
+        }
+    }
+
+    /**
+     * Combines the shards of one run into a single result, in the same file order as an unsharded
+     * run, with duplicates detected across all of them. Fails unless every shard 1..N is present once.
+     */
+    public static AnalysisResult merge(List<ShardFile> shards, int minTokens) throws IOException {
+        return merge(shards, minTokens, 0);
+    }
+
+    /** As {@link #merge(List, int)}, spilling the duplicate index to disk past {@code dupMemoryBytes} (0: no limit). */
+    public static AnalysisResult merge(List<ShardFile> shards, int minTokens, long dupMemoryBytes) throws IOException {
+        if (shards.isEmpty()) throw new IOException("No shard files given");
+        int count = shards.get(0).count();
+        ShardFile[] byNumber = new ShardFile[count];
+        for (ShardFile s : shards) {
+            if (s.count() != count) {
+                throw new IOException("Shard " + s.shard() + "/" + s.count() + " is from a run split " + s.count()
+                        + " ways, others " + count + " ways");
+            }
+            if (byNumber[s.shard() - 1] != null) throw new IOException("Shard " + s.shard() + "/" + count + " given twice");
+            byNumber[s.shard() - 1] = s;
+        }
+        for (int i = 0; i < count; i++) {
+            if (byNumber[i] == null) throw new IOException("Missing shard " + (i + 1) + "/" + count);
+            if (byNumber[i].discovered() != byNumber[0].discovered()) {
+                System.err.println("Warning: Shards saw different trees (" + byNumber[0].discovered() + " vs "
+                        + byNumber[i].discovered() + " files); the merged result may be incomplete");
+            }
+        }
+
+        AnalysisResult result = new AnalysisResult();
+        result.setProjectPath(byNumber[0].projectPath());
+        Instant analyzedAt = byNumber[0].analyzedAt();
+        for (ShardFile s : byNumber) {
+            result.getFiles().addAll(s.files());
+            if (s.analyzedAt().isBefore(analyzedAt)) analyzedAt = s.analyzedAt();
+        }
+        result.setAnalyzedAt(analyzedAt);
+        // Same order as JavaAnalyzer.discover, which duplicate grouping and the streamed report follow.
+        result.getFiles().sort(Comparator.comparing(FileMetrics::getRelativePath, SourceDiscovery.ORDER));
+        result.getDuplicates().addAll(DuplicationDetector.detectDuplicates(result.getFiles(), minTokens, dupMemoryBytes));
+        return result;
+    }
+}
@@ -0,0 +1,201 @@
+package com.codeanalyzer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Differences between a baseline snapshot and a current one: files and callables whose cyclomatic
+ * complexity or maintainability index changed, appeared or disappeared, and duplicate groups that
+ * are new or gone. Files are merge-joined on their sorted relative paths and skipped when their
+ * metric fingerprints match, so only changed files are ever decoded.
+ *
+ * <p>Callables are matched by name and signature; overloads or lambdas sharing both are matched
+ * in declaration order. Both snapshots must come from the same {@link JavaAnalyzer#METRICS_VERSION}:
+ * otherwise every changed computation would show up as a delta.
+ */
+public final class SnapshotDiff {
+
+    public enum Change { ADDED, REMOVED, CHANGED }
+
+    /** {@code degraded} is why the file's metrics are approximate on the newer side (the older one when removed), or null. */
+    public record FileDelta(Change change, String path, int oldCc, int newCc, double oldMi, double newMi, String degraded) {}
+
+    public record MethodDelta(Change change, String path, String name, String signature,
+                              int oldCc, int newCc, double oldMi, double newMi) {}
+
+    public record DuplicateDelta(Change change, DuplicateBlock block) {}
+
+    private final List<FileDelta> files = new ArrayList<>();
+    private final List<MethodDelta> methods = new ArrayList<>();
+    private final List<DuplicateDelta> duplicates = new ArrayList<>();
+
+    private SnapshotDiff() {}
+
+    public List<FileDelta> getFiles() { return files; }
+    public List<MethodDelta> getMethods() { return methods; }
+    public List<DuplicateDelta> getDuplicates() { return duplicates; }
+
+    /** Throws IllegalArgumentException if the snapshots were taken with different metrics versions. */
+    public static SnapshotDiff compute(ResultSnapshot baseline, ResultSnapshot current) {
+        if (baseline.metricsVersion() != current.metricsVersion()) {
+            throw new IllegalArgumentException("Snapshots were taken with metrics version " + baseline.metricsVersion()
+                    + " and " + current.metricsVersion() + "; their metrics are not comparable. Re-create the baseline with this version.");
+        }
+        SnapshotDiff diff = new SnapshotDiff();
+        int i = 0;
+        int j = 0;
+        while (i < baseline.fileCount() || j < current.fileCount()) {
+            int c = i == baseline.fileCount() ? 1
+                    : j == current.fileCount() ? -1
+                    : ResultSnapshot.compareRelativePaths(baseline, i, current, j);
+            if (c < 0) {
+                diff.fileRemoved(baseline, i++);
+            } else if (c > 0) {
+                diff.fileAdded(current, j++);
+            } else {
+                if (baseline.fileFingerprint(i) != current.fileFingerprint(j)) diff.fileChanged(baseline, i, current, j);
+                i++;
+                j++;
+            }
+        }
+
+        Set<String> before = new HashSet<>();
+        for (int d = 0; d < baseline.duplicateCount(); d++) before.add(baseline.duplicateKey(d));
+        Set<String> after = new HashSet<>();
+        for (int d = 0; d < current.duplicateCount(); d++) {
+            String key = current.duplicateKey(d);
+            after.add(key);
+            if (!before.contains(key)) diff.duplicates.add(new DuplicateDelta(Change.ADDED, current.duplicate(d)));
+        }
+        for (int d = 0; d < baseline.duplicateCount(); d++) {
+            if (!after.contains(baseline.duplicateKey(d))) diff.duplicates.add(new DuplicateDelta(Change.REMOVED, baseline.duplicate(d)));
+        }
+        return diff;
+    }
+
+    public String summary() {
+        int[] fileCounts = new int[3];
+        for (FileDelta f : files) fileCounts[f.change().ordinal()]++;
+        int[] methodCounts = new int[3];
+        for (MethodDelta m : methods) methodCounts[m.change().ordinal()]++;
+        int[] duplicateCounts = new int[3];
+        for (DuplicateDelta d : duplicates) duplicateCounts[d.change().ordinal()]++;
+        return "Files: " + fileCounts[0] + " added, " + fileCounts[1] + " removed, " + fileCounts[2] + " changed; "
+                + "Methods: " + methodCounts[0] + " added, " + methodCounts[1] + " removed, " + methodCounts[2] + " changed; "
+                + "Duplicate groups: " + duplicateCounts[0] + " added, " + duplicateCounts[1] + " removed";
+    }
+
+    /** Writes the diff as CSV, one section for metric deltas and one for duplicate groups. */
+    public void writeCsv(Writer out) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Change,Kind,RelativePath,MethodName,Signature,OldCC,NewCC,DeltaCC,OldMI,NewMI,DeltaMI,Approximate\n");
+        for (FileDelta f : files) {
+            sb.append(f.change()).append(",File,").append(escape(f.path())).append(",,,");
+            appendDeltas(sb, f.change(), f.oldCc(), f.newCc(), f.oldMi(), f.newMi());
+            sb.append(',').append(escape(f.degraded())).append('\n');
+        }
+        for (MethodDelta m : methods) {
+            sb.append(m.change()).append(",Method,").append(escape(m.path())).append(',').append(escape(m.name()))
+                    .append(',').append(escape(m.signature())).append(',');
+            appendDeltas(sb, m.change(), m.oldCc(), m.newCc(), m.oldMi(), m.newMi());
+            sb.append(",\n");
+        }
+        sb.append("\nChange,Hash,TokenCount,Similarity,Occurrences,Locations\n");
+        for (DuplicateDelta d : duplicates) {
+            StringBuilder locations = new StringBuilder();
+            for (DuplicateOccurrence o : d.block().getOccurrences()) {
+                if (!locations.isEmpty()) locations.append("; ");
+                locations.append(o.getFilePath()).append(" L").append(o.getLineStart()).append('-').append(o.getLineEnd());
+            }
+            sb.append(d.change()).append(',').append(d.block().getNormalizedHash())
+                    .append(',').append(d.block().getTokenCount()).append(',').append(String.format("%.2f", d.block().getSimilarity()))
+                    .append(',').append(d.block().getOccurrences().size())
+                    .append(',').append(escape(locations.toString())).append('\n');
+        }
+        out.append(sb);
+    }
+
+    private void fileAdded(ResultSnapshot s, int file) {
+        String path = s.string(s.fileInt(file, 0));
+        files.add(new FileDelta(Change.ADDED, path, 0, s.fileInt(file, 5), 0, s.fileMaintainability(file), s.fileDegraded(file)));
+        int first = s.fileInt(file, 6);
+        for (int m = first; m < first + s.fileInt(file, 7); m++) methods.add(methodDelta(Change.ADDED, path, null, 0, s, m));
+    }
+
+    private void fileRemoved(ResultSnapshot s, int file) {
+        String path = s.string(s.fileInt(file, 0));
+        files.add(new FileDelta(Change.REMOVED, path, s.fileInt(file, 5), 0, s.fileMaintainability(file), 0, s.fileDegraded(file)));
+        int first = s.fileInt(file, 6);
+        for (int m = first; m < first + s.fileInt(file, 7); m++) methods.add(methodDelta(Change.REMOVED, path, s, m, null, 0));
+    }
+
+    private void fileChanged(ResultSnapshot before, int fileBefore, ResultSnapshot after, int fileAfter) {
+        String path = after.string(after.fileInt(fileAfter, 0));
+        int oldCc = before.fileInt(fileBefore, 5);
+        int newCc = after.fileInt(fileAfter, 5);
+        double oldMi = before.fileMaintainability(fileBefore);
+        double newMi = after.fileMaintainability(fileAfter);
+        String oldDegraded = before.fileDegraded(fileBefore);
+        String newDegraded = after.fileDegraded(fileAfter);
+        // A file that became approximate, or exact again, is a change even if its numbers happen to match.
+        if (oldCc != newCc || oldMi != newMi || (oldDegraded == null) != (newDegraded == null)) {
+            files.add(new FileDelta(Change.CHANGED, path, oldCc, newCc, oldMi, newMi, newDegraded));
+        }
+
+        Map<String, List<Integer>> previous = new HashMap<>();
+        int first = before.fileInt(fileBefore, 6);
+        for (int m = first; m < first + before.fileInt(fileBefore, 7); m++) {
+            previous.computeIfAbsent(methodKey(before, m), k -> new ArrayList<>()).add(m);
+        }
+        first = after.fileInt(fileAfter, 6);
+        for (int m = first; m < first + after.fileInt(fileAfter, 7); m++) {
+            List<Integer> candidates = previous.get(methodKey(after, m));
+            if (candidates == null || candidates.isEmpty()) {
+                methods.add(methodDelta(Change.ADDED, path, null, 0, after, m));
+                continue;
+            }
+            int old = candidates.remove(0);
+            if (before.methodInt(old, 4) != after.methodInt(m, 4) || before.methodMaintainability(old) != after.methodMaintainability(m)) {
+                methods.add(methodDelta(Change.CHANGED, path, before, old, after, m));
+            }
+        }
+        for (List<Integer> unmatched : previous.values()) {
+            for (int old : unmatched) methods.add(methodDelta(Change.REMOVED, path, before, old, null, 0));
+        }
+    }
+
+    private static String methodKey(ResultSnapshot s, int method) {
+        return s.string(s.methodInt(method, 0)) + '\0' + s.string(s.methodInt(method, 1));
+    }
+
+    private static MethodDelta methodDelta(Change change, String path, ResultSnapshot before, int oldMethod, ResultSnapshot after, int newMethod) {
+        ResultSnapshot named = after != null ? after : before;
+        int method = after != null ? newMethod : oldMethod;
+        return new MethodDelta(change, path, named.string(named.methodInt(method, 0)), named.string(named.methodInt(method, 1)),
+                before != null ? before.methodInt(oldMethod, 4) : 0, after != null ? after.methodInt(newMethod, 4) : 0,
+                before != null ? before.methodMaintainability(oldMethod) : 0, after != null ? after.methodMaintainability(newMethod) : 0);
+    }
+
+    private static void appendDeltas(StringBuilder sb, Change change, int oldCc, int newCc, double oldMi, double newMi) {
+        boolean hasOld = change != Change.ADDED;
+        boolean hasNew = change != Change.REMOVED;
+        sb.append(hasOld ? Integer.toString(oldCc) : "").append(',')
+                .append(hasNew ? Integer.toString(newCc) : "").append(',')
+                .append(newCc - oldCc).append(',')
+                .append(hasOld ? String.format("%.1f", oldMi) : "").append(',')
+                .append(hasNew ? String.format("%.1f", newMi) : "").append(',')
+                .append(String.format("%.1f", Math.round((newMi - oldMi) * 10) / 10.0));
+    }
+
+    private static String escape(String s) {
+        if (s == null) return "";
+        if (s.contains(",") || s.contains("\"")) return "\"" + s.replace("\"", "\"\"") + "\"";
+        return s;
+    }
+}
@@ -0,0 +1,418 @@
+package com.codeanalyzer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the .java files to analyze under a root. Excluded directories are pruned before they are
+ * listed, so {@code .git}, {@code node_modules} and build output cost nothing however large they
+ * are. A directory is pruned when:
+ *
+ * <ul>
+ *   <li>it is a VCS or tool directory ({@code .git}, {@code .hg}, {@code .svn}, {@code node_modules},
+ *       {@code .gradle}, {@code .idea}, the analysis cache);</li>
+ *   <li>it is {@code target} next to a {@code pom.xml}, or {@code build} next to a Gradle or Ant build
+ *       file, so packages that happen to be named {@code build} are still analyzed;</li>
+ *   <li>it is ignored by a {@code .gitignore} (at or above the root, up to the repository top) or
+ *       by {@code .git/info/exclude}, unless {@link AnalysisOptions#isIgnoreFiles()} is off;</li>
+ *   <li>it matches an exclude pattern.</li>
+ * </ul>
+ *
+ * <p>Exclude and include patterns use {@code .gitignore} syntax, relative to the root. When include
+ * patterns are given, only files matching one of them are analyzed.
+ *
+ * <p>Directories are listed in parallel, each listing scheduling those of its subdirectories, while
+ * {@link #walk()} hands out files in path order as soon as every directory before them has been
+ * listed, so analysis starts long before a large tree is fully listed. Symbolic links to
+ * directories are only followed with {@link AnalysisOptions#isFollowLinks()}; a link back to one of
+ * its own ancestors is not followed again.
+ */
+public final class SourceDiscovery {
+
+    private static final Set<String> TOOL_DIRS = Set.of(".git", ".hg", ".svn", "node_modules", ".gradle", ".idea",
+            AnalysisCache.DEFAULT_DIR);
+
+    /** Order of discovered files: by relative path with '/' separators, as {@link #walk()} returns them. */
+    public static final Comparator<String> ORDER = Comparator.comparing(p -> p.replace('\\', '/'));
+
+    private final Path root;
+    private final AnalysisOptions options;
+    /** Patterns from the repository top down to, but not including, the root. */
+    private final Rules aboveRoot;
+    private final List<Rule> excludes = new ArrayList<>();
+    private final List<Rule> includes = new ArrayList<>();
+    private final Map<Path, Rules> dirRules = new ConcurrentHashMap<>();
+
+    public SourceDiscovery(Path root, AnalysisOptions options) {
+        this.root = root;
+        this.options = options;
+        Rules rules = null;
+        if (options.isIgnoreFiles()) {
+            // .gitignore files between the repository top and the root apply to the tree as well.
+            Path top = root;
+            while (top != null && !Files.exists(top.resolve(".git"))) top = top.getParent();
+            if (top != null) {
+                rules = Rules.load(null, top.resolve(".git").resolve("info").resolve("exclude"), relative(top, root), 0);
+                for (Path dir = top; !dir.equals(root); dir = child(dir, root)) {
+                    rules = Rules.load(rules, dir.resolve(".gitignore"), relative(dir, root), 0);
+                }
+            }
+        }
+        this.aboveRoot = rules;
+        for (String p : options.getExcludes()) {
+            Rule r = Rule.parse(p);
+            if (r != null) excludes.add(r);
+        }
+        for (String p : options.getIncludes()) {
+            Rule r = Rule.parse(p);
+            if (r != null) includes.add(r);
+        }
+    }
+
+    /** The files {@link #walk()} returns, collected. */
+    @SuppressWarnings("try")
+    public List<Path> list() {
+        List<Path> files = new ArrayList<>();
+        try (AnalysisProfiler.Phase phase = AnalysisProfiler.phase(options.getProfiler(), "discover");
+             Walk walk = walk()) {
+            walk.forEachRemaining(files::add);
+        }
+        return files;
+    }
+
+    /** Starts listing the tree in the background; the returned iterator blocks until the next file in order is known. */
+    public Walk walk() {
+        return new Walk();
+    }
+
+    /** Whether {@code file} would be discovered: used for files reported by the watcher or by git. */
+    public boolean accepts(Path file) {
+        Path absolute = file.toAbsolutePath();
+        if (!absolute.startsWith(root) || absolute.equals(root) || !absolute.getFileName().toString().endsWith(".java")) return false;
+        Path parent = absolute.getParent();
+        return !prunes(parent) && acceptsFile(rulesIn(parent), relative(root, absolute));
+    }
+
+    /** Whether {@code dir}, or one of its ancestors under the root, is pruned. */
+    public boolean prunes(Path dir) {
+        Path absolute = dir.toAbsolutePath();
+        if (!absolute.startsWith(root)) return false;
+        for (Path d = root; !d.equals(absolute); ) {
+            Path parent = d;
+            d = child(d, absolute);
+            if (prunes(rulesIn(parent), d, name -> Files.exists(parent.resolve(name)))) return true;
+        }
+        return false;
+    }
+
+    /** The patterns that apply to the entries of {@code dir}, its own .gitignore included. */
+    private Rules rulesIn(Path dir) {
+        Rules cached = dirRules.get(dir);
+        if (cached != null) return cached == Rules.NONE ? null : cached;
+        Rules above = dir.equals(root) ? aboveRoot : rulesIn(dir.getParent());
+        Rules rules = options.isIgnoreFiles() ? Rules.load(above, dir.resolve(".gitignore"), "", strip(dir)) : above;
+        // The map takes no nulls: a directory without any patterns is cached as NONE.
+        dirRules.put(dir, rules != null ? rules : Rules.NONE);
+        return rules;
+    }
+
+    private boolean prunes(Rules rules, Path dir, Predicate<String> hasSibling) {
+        String name = dir.getFileName().toString();
+        if (TOOL_DIRS.contains(name)) return true;
+        if (name.equals("target") && hasSibling.test("pom.xml")) return true;
+        if (name.equals("build") && (hasSibling.test("build.gradle") || hasSibling.test("build.gradle.kts") || hasSibling.test("build.xml"))) {
+            return true;
+        }
+        return ignored(rules, relative(root, dir), true);
+    }
+
+    private boolean acceptsFile(Rules rules, String relativePath) {
+        if (ignored(rules, relativePath, false)) return false;
+        if (includes.isEmpty()) return true;
+        // An include pattern naming a directory takes in everything below it.
+        for (int end = relativePath.length(); end > 0; end = relativePath.lastIndexOf('/', end - 1)) {
+            boolean directory = end < relativePath.length();
+            for (Rule r : includes) if (r.matches(relativePath.substring(0, end), directory)) return true;
+        }
+        return false;
+    }
+
+    /** Exclude patterns given on the command line win over anything a .gitignore re-includes. */
+    private boolean ignored(Rules rules, String relativePath, boolean directory) {
+        for (int i = excludes.size() - 1; i >= 0; i--) {
+            Rule r = excludes.get(i);
+            if (r.matches(relativePath, directory)) {
+                if (r.negated()) break;
+                return true;
+            }
+        }
+        return rules != null && rules.ignores(relativePath, directory);
+    }
+
+    /** Length of {@code dir}'s root-relative path plus its separator: what its own patterns strip. */
+    private int strip(Path dir) {
+        return dir.equals(root) ? 0 : relative(root, dir).length() + 1;
+    }
+
+    private static String relative(Path from, Path to) {
+        return from.relativize(to).toString().replace('\\', '/');
+    }
+
+    /** The child of {@code dir} on the way down to {@code descendant}. */
+    private static Path child(Path dir, Path descendant) {
+        return dir.resolve(descendant.getName(dir.getNameCount()));
+    }
+
+    /**
+     * Files in path order. Directories are listed ahead of the caller on a pool of
+     * {@link AnalysisOptions#getThreads()} workers; close to stop listing early.
+     */
+    public final class Walk implements Iterator<Path>, Closeable {
+        private final ForkJoinPool pool = new ForkJoinPool(options.getThreads());
+        private final Deque<Iterator<Entry>> stack = new ArrayDeque<>();
+        private Path next;
+        private int count;
+
+        private Walk() {
+            Dir top = new Dir(root, null, aboveRoot, key(root));
+            top.start();
+            stack.push(List.of(new Entry("", root, top)).iterator());
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && !stack.isEmpty()) {
+                Iterator<Entry> entries = stack.peek();
+                if (!entries.hasNext()) {
+                    stack.pop();
+                    continue;
+                }
+                Entry e = entries.next();
+                if (e.dir() == null) next = e.path();
+                else stack.push(e.dir().listing().join().iterator());
+            }
+            return next != null;
+        }
+
+        @Override
+        public Path next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            Path p = next;
+            next = null;
+            count++;
+            return p;
+        }
+
+        /** Files handed out so far. */
+        public int count() {
+            return count;
+        }
+
+        @Override
+        public void close() {
+            pool.shutdownNow();
+        }
+
+        /** Lists one directory, applies the rules to its entries and starts listing the subdirectories kept. */
+        private List<Entry> list(Dir dir) {
+            Set<String> names = new HashSet<>();
+            List<Path> files = new ArrayList<>();
+            List<Path> dirs = new ArrayList<>();
+            try (DirectoryStream<Path> children = Files.newDirectoryStream(dir.path())) {
+                for (Path p : children) {
+                    String name = p.getFileName().toString();
+                    names.add(name);
+                    try {
+                        BasicFileAttributes attrs = Files.readAttributes(p, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                        if (attrs.isSymbolicLink()) {
+                            attrs = Files.readAttributes(p, BasicFileAttributes.class);
+                            if (attrs.isDirectory() && !options.isFollowLinks()) continue;
+                        }
+                        if (attrs.isDirectory()) dirs.add(p);
+                        else if (attrs.isRegularFile() && name.endsWith(".java")) files.add(p);
+                    } catch (IOException e) {
+                        // Removed while listing, or a dangling link.
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                System.err.println("Warning: Could not list " + dir.path() + ": " + e.getMessage());
+                return List.of();
+            }
+
+            Rules rules = options.isIgnoreFiles() && names.contains(".gitignore")
+                    ? Rules.load(dir.rules(), dir.path().resolve(".gitignore"), "", strip(dir.path())) : dir.rules();
+            List<Entry> entries = new ArrayList<>();
+            for (Path p : files) {
+                if (acceptsFile(rules, relative(root, p))) entries.add(new Entry(p.getFileName().toString(), p, null));
+                else if (options.getProfiler() != null) options.getProfiler().skipped();
+            }
+            for (Path p : dirs) {
+                if (prunes(rules, p, names::contains)) continue;
+                Object key = key(p);
+                if (dir.isWithin(key)) continue; // a link back to an ancestor
+                entries.add(new Entry(p.getFileName() + "/", p, new Dir(p, dir, rules, key)));
+            }
+            // Sorting "name/" for directories puts each subtree exactly where its paths fall in ORDER.
+            entries.sort(Comparator.comparing(Entry::key));
+            for (Entry e : entries) if (e.dir() != null) e.dir().start();
+            return entries;
+        }
+
+        /** Identity of a directory for loop detection: its file key, or its real path where there is none. */
+        private Object key(Path dir) {
+            if (!options.isFollowLinks()) return null;
+            try {
+                Object key = Files.readAttributes(dir, BasicFileAttributes.class).fileKey();
+                return key != null ? key : dir.toRealPath();
+            } catch (IOException e) {
+                return dir;
+            }
+        }
+
+        /** A file, or a directory ({@code dir} set) whose key ends in '/'. */
+        private record Entry(String key, Path path, Dir dir) {}
+
+        private final class Dir {
+            private final Path path;
+            private final Dir parent;
+            /** Rules from above; the directory's own .gitignore is added when it is listed. */
+            private final Rules rules;
+            private final Object key;
+            private CompletableFuture<List<Entry>> listing;
+
+            Dir(Path path, Dir parent, Rules rules, Object key) {
+                this.path = path;
+                this.parent = parent;
+                this.rules = rules;
+                this.key = key;
+            }
+
+            Path path() { return path; }
+            Rules rules() { return rules; }
+
+            synchronized void start() {
+                if (listing == null) listing = CompletableFuture.supplyAsync(() -> list(this), pool);
+            }
+
+            synchronized CompletableFuture<List<Entry>> listing() {
+                start();
+                return listing;
+            }
+
+            boolean isWithin(Object key) {
+                if (key == null) return false;
+                for (Dir d = this; d != null; d = d.parent) if (key.equals(d.key)) return true;
+                return false;
+            }
+        }
+    }
+
+    /**
+     * The ignore patterns in effect in one directory: its own, then those of the levels above.
+     * Paths are matched relative to the directory a pattern was defined in, which is the root-relative
+     * path with {@code strip} leading characters removed or, above the root, with {@code prefix} prepended.
+     */
+    record Rules(Rules parent, List<Rule> rules, String prefix, int strip) {
+
+        static final Rules NONE = new Rules(null, List.of(), "", 0);
+
+        static Rules load(Rules parent, Path file, String prefix, int strip) {
+            if (!Files.isRegularFile(file)) return parent;
+            List<Rule> rules = new ArrayList<>();
+            try {
+                for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                    Rule r = Rule.parse(line);
+                    if (r != null) rules.add(r);
+                }
+            } catch (IOException e) {
+                System.err.println("Warning: Could not read " + file + ": " + e.getMessage());
+            }
+            return rules.isEmpty() ? parent : new Rules(parent, rules, prefix.isEmpty() ? "" : prefix + "/", strip);
+        }
+
+        /** Like git, the deepest level with a matching pattern decides, and within it the last match. */
+        boolean ignores(String relativePath, boolean directory) {
+            for (Rules level = this; level != null; level = level.parent) {
+                String path = level.prefix + relativePath.substring(level.strip);
+                for (int i = level.rules.size() - 1; i >= 0; i--) {
+                    Rule r = level.rules.get(i);
+                    if (r.matches(path, directory)) return !r.negated();
+                }
+            }
+            return false;
+        }
+    }
+
+    /** One {@code .gitignore} pattern, compiled to a regular expression over '/'-separated paths. */
+    record Rule(Pattern pattern, boolean negated, boolean directoryOnly) {
+
+        static Rule parse(String line) {
+            String p = line;
+            if (!p.endsWith("\\ ")) p = p.stripTrailing();
+            if (p.isEmpty() || p.startsWith("#")) return null;
+            boolean negated = p.startsWith("!");
+            if (negated) p = p.substring(1);
+            else if (p.startsWith("\\!") || p.startsWith("\\#")) p = p.substring(1);
+            boolean directoryOnly = p.endsWith("/");
+            if (directoryOnly) p = p.substring(0, p.length() - 1);
+            // A slash anywhere but at the end anchors the pattern to its directory.
+            boolean anchored = p.contains("/");
+            if (p.startsWith("/")) p = p.substring(1);
+            if (p.isEmpty()) return null;
+            StringBuilder regex = new StringBuilder(anchored ? "" : "(?:.*/)?");
+            for (int i = 0; i < p.length(); i++) {
+                char c = p.charAt(i);
+                if (c == '*' && p.startsWith("**", i)) {
+                    boolean leading = i == 0 || p.charAt(i - 1) == '/';
+                    boolean trailing = i + 2 == p.length() || p.charAt(i + 2) == '/';
+                    if (leading && trailing) {
+                        if (i + 2 == p.length()) regex.append(".*");
+                        else {
+                            regex.append("(?:.*/)?");
+                            i++;
+                        }
+                        i++;
+                        continue;
+                    }
+                }
+                switch (c) {
+                    case '*' -> regex.append("[^/]*");
+                    case '?' -> regex.append("[^/]");
+                    case '[' -> {
+                        int end = p.indexOf(']', i + 2);
+                        if (end < 0) {
+                            regex.append("\\[");
+                        } else {
+                            String set = p.substring(i + 1, end);
+                            if (set.startsWith("!")) set = "^" + set.substring(1);
+                            regex.append('[').append(set.replace("\\", "\\\\").replace("[", "\\[")).append(']');
+                            i = end;
+                        }
+                    }
+                    case '\\' -> {
+                        if (i + 1 < p.length()) regex.append(Pattern.quote(String.valueOf(p.charAt(++i))));
+                    }
+                    default -> regex.append(Pattern.quote(String.valueOf(c)));
+                }
+            }
+            return new Rule(Pattern.compile(regex.toString()), negated, directoryOnly);
+        }
+
+        boolean matches(String path, boolean directory) {
+            return (directory || !directoryOnly) && pattern.matcher(path).matches();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.codeanalyzer;
+
+import com.github.javaparser.JavaToken;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.body.TypeDeclaration;
+
+import java.util.Arrays;
+
+/**
+ * Normalized token stream of a file used for clone detection: whitespace and comments are
+ * dropped, every identifier maps to one id and every literal to another, so renamed copies
+ * still match. Package and import declarations are not included.
+ */
+public final class TokenSequence {
+
+    public static final short IDENTIFIER = 1;
+    public static final short LITERAL = 2;
+    private static final short KIND_OFFSET = 3;
+
+    private final short[] kinds;
+    private final int[] lines;
+
+    public TokenSequence(short[] kinds, int[] lines) {
+        this.kinds = kinds;
+        this.lines = lines;
+    }
+
+    public static TokenSequence of(CompilationUnit cu) {
+        short[] kinds = new short[256];
+        int[] lines = new int[256];
+        int size = 0;
+        for (TypeDeclaration<?> type : cu.getTypes()) {
+            if (type.getTokenRange().isEmpty()) continue;
+            for (JavaToken token : type.getTokenRange().get()) {
+                JavaToken.Category category = token.getCategory();
+                if (category.isWhitespaceOrComment()) continue;
+                if (size == kinds.length) {
+                    kinds = Arrays.copyOf(kinds, size * 2);
+                    lines = Arrays.copyOf(lines, size * 2);
+                }
+                kinds[size] = category.isIdentifier() ? IDENTIFIER
+                        : category.isLiteral() ? LITERAL
+                        : (short) (token.getKind() + KIND_OFFSET);
+                lines[size] = token.getRange().map(r -> r.begin.line).orElse(size > 0 ? lines[size - 1] : 0);
+                size++;
+            }
+        }
+        return new TokenSequence(Arrays.copyOf(kinds, size), Arrays.copyOf(lines, size));
+    }
+
+    public int size() { return kinds.length; }
+    public short kind(int index) { return kinds[index]; }
+    public int line(int index) { return lines[index]; }
+}
@@ -0,0 +1,46 @@
+package com.codeanalyzer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Coupling of one named type declaration. {@code references} are the type names its body uses,
+ * as written in the source (a leading {@code ?} marks a name that may also be a variable); the
+ * counts are filled in by {@link CouplingAnalyzer} once every file of the run is known.
+ */
+public class TypeCoupling {
+    private final String name;
+    private final int lineStart;
+    private final List<String> references = new ArrayList<>();
+    private Set<String> dependencies;
+    private int efferent;
+    private int afferent;
+    private int cbo;
+    private boolean partial;
+
+    public TypeCoupling(String name, int lineStart) {
+        this.name = name;
+        this.lineStart = lineStart;
+    }
+
+    /** Fully qualified name, with nested types separated by dots. */
+    public String getName() { return name; }
+    public int getLineStart() { return lineStart; }
+    public List<String> getReferences() { return references; }
+    /** Resolved names of the types this one depends on; null until resolved. */
+    public Set<String> getDependencies() { return dependencies; }
+    public void setDependencies(Set<String> dependencies) { this.dependencies = dependencies; }
+    /** Fan-out (Ce): distinct types this one depends on. */
+    public int getEfferent() { return efferent; }
+    public void setEfferent(int efferent) { this.efferent = efferent; }
+    /** Fan-in (Ca): distinct project types that depend on this one. */
+    public int getAfferent() { return afferent; }
+    public void setAfferent(int afferent) { this.afferent = afferent; }
+    /** Coupling between objects: distinct types coupled to this one in either direction. */
+    public int getCbo() { return cbo; }
+    public void setCbo(int cbo) { this.cbo = cbo; }
+    /** True if the file's resolution budget ran out before all references were resolved. */
+    public boolean isPartial() { return partial; }
+    public void setPartial(boolean partial) { this.partial = partial; }
+}
@@ -0,0 +1,147 @@
+package com.codeanalyzer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnalysisDaemonTest {
+
+    @TempDir
+    Path root;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private AnalysisDaemon daemon;
+    private Thread loop;
+    private int port;
+
+    @BeforeEach
+    void start() throws Exception {
+        TestTrees.write(root, "src/A.java", "class A {\n    void first() {}\n}\n");
+        AnalysisOptions options = new AnalysisOptions();
+        options.setThreads(1);
+        daemon = new AnalysisDaemon(root, options, DuplicationDetector.DEFAULT_MIN_TOKENS);
+        port = daemon.start(0);
+        loop = new Thread(() -> {
+            try {
+                daemon.watchLoop();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        loop.start();
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        daemon.close();
+        loop.join(5000);
+        assertFalse(loop.isAlive(), "watch loop did not stop on close");
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + path)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    /** Polls {@code path} until the response satisfies {@code condition}; fails after ten seconds. */
+    private HttpResponse<String> await(String path, Predicate<HttpResponse<String>> condition) throws Exception {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        HttpResponse<String> response = get(path);
+        while (!condition.test(response)) {
+            if (System.nanoTime() > deadline) fail("Timed out waiting on " + path + ", last response: " + response.body());
+            Thread.sleep(50);
+            response = get(path);
+        }
+        return response;
+    }
+
+    private static Predicate<HttpResponse<String>> status(int code) {
+        return r -> r.statusCode() == code;
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) Files.delete(p);
+        }
+    }
+
+    @Test
+    void createsModifiesAndDeletesFiles() throws Exception {
+        assertEquals(200, get("/file?path=src/A.java").statusCode());
+        assertEquals(404, get("/file?path=src/B.java").statusCode());
+
+        TestTrees.write(root, "src/B.java", "class B {}\n");
+        await("/file?path=src/B.java", status(200));
+        await("/health", r -> r.body().startsWith("{\"files\":2,"));
+
+        TestTrees.write(root, "src/A.java", "class A {\n    void first() {}\n    void second() {}\n}\n");
+        await("/file?path=src/A.java", r -> r.body().contains("\"second\""));
+
+        Files.delete(root.resolve("src/B.java"));
+        await("/file?path=src/B.java", status(404));
+        await("/health", r -> r.body().startsWith("{\"files\":1,"));
+    }
+
+    @Test
+    void dropsEverythingUnderADeletedDirectory() throws Exception {
+        TestTrees.write(root, "src/sub/deep/C.java", "class C {}\n");
+        TestTrees.write(root, "src/sub/D.java", "class D {}\n");
+        await("/file?path=src/sub/deep/C.java", status(200));
+        await("/file?path=src/sub/D.java", status(200));
+
+        deleteTree(root.resolve("src/sub"));
+        await("/file?path=src/sub/deep/C.java", status(404));
+        await("/file?path=src/sub/D.java", status(404));
+        await("/health", r -> r.body().startsWith("{\"files\":1,"));
+    }
+
+    @Test
+    void survivesADirectoryRemovedBeforeItIsRead() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            TestTrees.write(root, "src/gone" + i + "/deep/E.java", "class E {}\n");
+            deleteTree(root.resolve("src/gone" + i));
+        }
+        TestTrees.write(root, "src/F.java", "class F {}\n");
+        await("/file?path=src/F.java", status(200));
+        assertTrue(loop.isAlive());
+        assertEquals(404, get("/file?path=src/gone0/deep/E.java").statusCode());
+    }
+
+    @Test
+    void rollupFollowsTheTree() throws Exception {
+        String project = "{\"project\":{\"module\":null,\"package\":null,\"files\":";
+        assertTrue(get("/rollup").body().startsWith(project + "1,"));
+        TestTrees.write(root, "lib/src/main/java/demo/B.java", "package demo;\nclass B {\n    int b(int x) { return x > 0 ? 1 : 2; }\n}\n");
+        HttpResponse<String> rollup = await("/rollup", r -> r.body().startsWith(project + "2,"));
+        assertTrue(rollup.body().contains("{\"module\":\"lib\",\"package\":\"demo\",\"files\":1,"), rollup.body());
+        assertTrue(rollup.body().contains("\"mostComplex\":[{\"relativePath\":\"lib/src/main/java/demo/B.java\",\"name\":\"b\""),
+                rollup.body());
+
+        Files.delete(root.resolve("src/A.java"));
+        rollup = await("/rollup", r -> r.body().startsWith(project + "1,"));
+        assertFalse(rollup.body().contains("\"module\":\"\""), rollup.body());
+    }
+
+    @Test
+    void publishesFilesWithTheirDuplicates() throws Exception {
+        TestTrees.write(root, "src/R.java", TestTrees.repetitive("R", 1));
+        TestTrees.write(root, "src/S.java", TestTrees.repetitive("S", 1));
+        // Every response that lists both files also carries the group they form.
+        HttpResponse<String> result = await("/result", r -> r.body().contains("src/S.java") && r.body().contains("src/R.java"));
+        assertTrue(result.body().matches("(?s).*\"duplicates\":\\[\\{.*R\\.java.*S\\.java.*"), result.body());
+    }
+}
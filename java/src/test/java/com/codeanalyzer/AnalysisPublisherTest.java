@@ -0,0 +1,160 @@
+package com.codeanalyzer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnalysisPublisherTest {
+
+    private static final int FILES = 12;
+
+    @TempDir
+    Path root;
+
+    private AnalysisPublisher publisher;
+
+    @BeforeEach
+    void tree() throws Exception {
+        for (int i = 0; i < FILES; i++) TestTrees.write(root, "src/p" + i % 3 + "/R" + i + ".java", TestTrees.repetitive("R" + i, 2));
+        AnalysisOptions options = new AnalysisOptions();
+        options.setThreads(1);
+        publisher = new AnalysisPublisher(root, options);
+    }
+
+    /** Records every signal and the thread they came from; {@code onNext} runs before the event is recorded. */
+    private static final class Recorder implements Flow.Subscriber<AnalysisPublisher.Event> {
+        final List<Object> signals = new CopyOnWriteArrayList<>();
+        final AtomicLong requested = new AtomicLong();
+        final CountDownLatch terminated = new CountDownLatch(1);
+        final CountDownLatch firstEvent = new CountDownLatch(1);
+        volatile Flow.Subscription subscription;
+        volatile Thread deliverer;
+        volatile boolean overDelivered;
+        private final long initial;
+        private final Consumer<Recorder> onNext;
+
+        Recorder(long initial, Consumer<Recorder> onNext) {
+            this.initial = initial;
+            this.onNext = onNext;
+        }
+
+        void request(long n) {
+            requested.addAndGet(n);
+            subscription.request(n);
+        }
+
+        long events() {
+            return signals.stream().filter(s -> s instanceof AnalysisPublisher.Event).count();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (initial != 0) request(initial);
+        }
+
+        @Override
+        public void onNext(AnalysisPublisher.Event event) {
+            deliverer = Thread.currentThread();
+            if (events() + 1 > requested.get()) overDelivered = true;
+            onNext.accept(this);
+            signals.add(event);
+            firstEvent.countDown();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            deliverer = Thread.currentThread();
+            signals.add(throwable);
+            terminated.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            deliverer = Thread.currentThread();
+            signals.add("complete");
+            terminated.countDown();
+        }
+
+        /** Waits for the delivering thread to exit, so no later signal can still arrive. */
+        void awaitRunEnd() throws InterruptedException {
+            Thread t = deliverer;
+            assertNotNull(t);
+            t.join(10_000);
+            assertFalse(t.isAlive(), "run did not stop");
+        }
+    }
+
+    @Test
+    void nonPositiveRequestEndsTheRunWithOnError() throws Exception {
+        Recorder recorder = new Recorder(0, r -> {});
+        publisher.subscribe(recorder);
+        recorder.subscription.request(0);
+        assertTrue(recorder.terminated.await(10, TimeUnit.SECONDS));
+        recorder.awaitRunEnd();
+        assertEquals(1, recorder.signals.size(), recorder.signals.toString());
+        assertInstanceOf(IllegalArgumentException.class, recorder.signals.get(0));
+    }
+
+    @Test
+    void cancelStopsEverySignal() throws Exception {
+        Recorder recorder = new Recorder(1, r -> {
+            r.subscription.cancel();
+            // Demand after cancelling is ignored.
+            r.request(100);
+        });
+        publisher.subscribe(recorder);
+        assertTrue(recorder.firstEvent.await(10, TimeUnit.SECONDS));
+        recorder.awaitRunEnd();
+        assertEquals(1, recorder.signals.size(), recorder.signals.toString());
+        assertInstanceOf(AnalysisPublisher.FileAnalyzed.class, recorder.signals.get(0));
+    }
+
+    @Test
+    void exceptionFromOnNextIsReportedThroughOnError() throws Exception {
+        IllegalStateException thrown = new IllegalStateException("subscriber failed");
+        Recorder recorder = new Recorder(Long.MAX_VALUE, r -> {
+            throw thrown;
+        });
+        publisher.subscribe(recorder);
+        assertTrue(recorder.terminated.await(10, TimeUnit.SECONDS));
+        recorder.awaitRunEnd();
+        // The event that failed is not recorded, and nothing follows the error.
+        assertEquals(List.of(thrown), recorder.signals);
+    }
+
+    @Test
+    void deliversNoMoreThanRequestedAndCompletesLast() throws Exception {
+        Recorder recorder = new Recorder(0, r -> {});
+        publisher.subscribe(recorder);
+        while (recorder.terminated.getCount() > 0) {
+            // Give the run time to overrun the demand before adding more.
+            Thread.sleep(10);
+            long delivered = recorder.events();
+            assertTrue(delivered <= recorder.requested.get());
+            if (delivered == recorder.requested.get()) recorder.request(recorder.requested.get() % 2 + 1);
+            assertTrue(recorder.requested.get() < 10_000, "run did not finish");
+        }
+        recorder.awaitRunEnd();
+        assertFalse(recorder.overDelivered);
+
+        List<Object> signals = recorder.signals;
+        assertEquals("complete", signals.get(signals.size() - 1));
+        AnalysisPublisher.Completed completed = assertInstanceOf(AnalysisPublisher.Completed.class, signals.get(signals.size() - 2));
+        assertEquals(FILES, completed.analyzed());
+        assertFalse(completed.duplicates().isEmpty());
+        assertEquals(FILES, signals.stream().filter(s -> s instanceof AnalysisPublisher.FileAnalyzed).count());
+        assertEquals(new AnalysisPublisher.Progress(FILES, FILES, true), signals.get(signals.size() - 3));
+    }
+}
@@ -0,0 +1,170 @@
+package com.codeanalyzer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DuplicationDetectorTest {
+
+    @TempDir
+    Path root;
+
+    private final Map<String, FileMetrics> tree = new LinkedHashMap<>();
+
+    private FileMetrics analyze(String relativePath, String content, AnalysisOptions options) throws Exception {
+        Path file = TestTrees.write(root, relativePath, content);
+        FileMetrics m = JavaAnalyzer.analyzeFile(file, root, options);
+        tree.put(relativePath, m);
+        return m;
+    }
+
+    /** A group as its content and where it occurs, independent of the order files were indexed in. */
+    private static Set<String> groups(List<DuplicateBlock> blocks, boolean withHash) {
+        Set<String> result = new TreeSet<>();
+        for (DuplicateBlock b : blocks) {
+            Set<String> at = new TreeSet<>();
+            for (DuplicateOccurrence o : b.getOccurrences()) at.add(o.getFilePath() + ":" + o.getLineStart() + "-" + o.getLineEnd());
+            result.add((withHash ? b.getNormalizedHash() + " " : "") + b.getTokenCount() + " " + b.getSimilarity() + " " + at);
+        }
+        return result;
+    }
+
+    /** Every detail of every group, in report order. */
+    private static List<String> described(List<DuplicateBlock> blocks) {
+        List<String> result = new ArrayList<>();
+        for (DuplicateBlock b : blocks) {
+            StringBuilder sb = new StringBuilder(b.getNormalizedHash()).append(' ').append(b.getTokenCount());
+            for (DuplicateOccurrence o : b.getOccurrences()) {
+                sb.append(' ').append(o.getFilePath()).append(':').append(o.getLineStart()).append('-').append(o.getLineEnd())
+                        .append(' ').append(o.getPreview());
+            }
+            result.add(sb.toString());
+        }
+        return result;
+    }
+
+    /** {@code count} statements of varied shapes, so no short window repeats within the block. */
+    private static String statements(long seed, int count) {
+        String[] shapes = {
+                "x = y + z;", "if (x > y) x--;", "while (x < 3) { x++; }", "x = y * z - 1;", "call(x, y);",
+                "x += \"s\".length();", "for (int i = 0; i < x; i++) y ^= i;", "x = x << 2;",
+                "try { x = 1; } catch (Exception e) { y = 2; }", "switch (x) { case 1: y = 2; break; default: y = 3; }"
+        };
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) sb.append("        ").append(shapes[random.nextInt(shapes.length)]).append('\n');
+        return sb.toString();
+    }
+
+    private static String method(String className, String body) {
+        return "class " + className + " {\n    int x, y, z;\n    void run() {\n" + body + "    }\n}\n";
+    }
+
+    @Test
+    void partialCopyBetweenTwoFullCopiesDoesNotHideTheirClone() throws Exception {
+        AnalysisOptions options = new AnalysisOptions();
+        String block = statements(1, 80);
+        FileMetrics a = analyze("A.java", method("A", block), options);
+        // B shares the first ten statements, then goes its own way.
+        FileMetrics b = analyze("B.java", method("B", block.lines().limit(10).map(l -> l + "\n").reduce("", String::concat)
+                + statements(2, 70)), options);
+        FileMetrics c = analyze("C.java", method("C", block), options);
+
+        int full = DuplicationDetector.detectDuplicates(List.of(a, c)).get(0).getTokenCount();
+        assertTrue(full > 500, "block is " + full + " tokens");
+        DuplicationDetector.Index resident = new DuplicationDetector.Index();
+        resident.add(c);
+        resident.build();
+        resident.add(a);
+        resident.add(b);
+        resident.add(c);
+        for (List<DuplicateBlock> found : List.of(DuplicationDetector.detectDuplicates(List.of(a, b, c)),
+                DuplicationDetector.detectDuplicates(List.of(a, b, c), DuplicationDetector.DEFAULT_MIN_TOKENS, 1),
+                resident.build())) {
+            assertTrue(found.stream().anyMatch(d -> d.getTokenCount() == full && d.getOccurrences().size() == 2
+                    && d.getOccurrences().stream().noneMatch(o -> o.getFilePath().endsWith("B.java"))), groups(found, false).toString());
+            assertTrue(found.stream().anyMatch(d -> d.getTokenCount() < full && d.getOccurrences().size() == 3),
+                    groups(found, false).toString());
+        }
+    }
+
+    @Test
+    void spilledIndexMatchesInMemory() throws Exception {
+        AnalysisOptions options = new AnalysisOptions();
+        for (int i = 0; i < 30; i++) analyze("p" + i % 4 + "/R" + i + ".java", TestTrees.repetitive("R" + i, 60 + i), options);
+        List<FileMetrics> files = new ArrayList<>(tree.values());
+        // The smallest limit still buffers 64K records per run; these files have several times that many windows.
+        List<DuplicateBlock> inMemory = DuplicationDetector.detectDuplicates(files, DuplicationDetector.DEFAULT_MIN_TOKENS);
+        List<DuplicateBlock> spilled = DuplicationDetector.detectDuplicates(files, DuplicationDetector.DEFAULT_MIN_TOKENS, 1);
+        assertFalse(inMemory.isEmpty());
+        assertEquals(described(inMemory), described(spilled));
+    }
+
+    @Test
+    void residentIndexMatchesAFreshRunAfterChanges() throws Exception {
+        AnalysisOptions options = new AnalysisOptions();
+        options.setNearMiss(true);
+        DuplicationDetector.Index index = new DuplicationDetector.Index(DuplicationDetector.DEFAULT_MIN_TOKENS);
+        NearMissDetector.Index nearMisses = new NearMissDetector.Index();
+        for (FileMetrics m : List.of(analyze("A.java", TestTrees.repetitive("A", 2), options),
+                analyze("B.java", TestTrees.repetitive("B", 3), options),
+                analyze("C.java", TestTrees.repetitive("C", 1), options))) {
+            index.add(m);
+            nearMisses.add(m);
+        }
+        List<DuplicateBlock> first = index.build();
+        assertFalse(first.isEmpty());
+        assertFalse(nearMisses.build().isEmpty());
+        assertEquals(groups(DuplicationDetector.detectDuplicates(new ArrayList<>(tree.values())), true), groups(first, true));
+
+        // Edit B so it no longer repeats, drop C and add D, as the daemon does for one change batch.
+        FileMetrics b = analyze("B.java", "package demo;\n\nclass B {\n    int one() { return 1; }\n}\n", options);
+        index.add(b);
+        nearMisses.add(b);
+        index.remove(tree.remove("C.java").getFilePath());
+        nearMisses.remove(root.resolve("C.java").toString());
+        FileMetrics d = analyze("D.java", TestTrees.repetitive("D", 2), options);
+        index.add(d);
+        nearMisses.add(d);
+
+        List<FileMetrics> current = new ArrayList<>(tree.values());
+        assertEquals(groups(DuplicationDetector.detectDuplicates(current), true), groups(index.build(), true));
+        assertEquals(groups(NearMissDetector.detect(current, NearMissDetector.DEFAULT_THRESHOLD), true),
+                groups(nearMisses.build(), true));
+        assertTrue(groups(index.build(), true).stream().noneMatch(g -> g.contains("B.java") || g.contains("C.java")));
+    }
+
+    @Test
+    void nearMissGroupIdsDependOnContentOnly() throws Exception {
+        AnalysisOptions options = new AnalysisOptions();
+        options.setNearMiss(true);
+        String body = statements(3, 40);
+        String edited = body.replaceFirst("(?m)^.*$", "        x = 42;");
+        FileMetrics a = analyze("A.java", method("A", body), options);
+        FileMetrics b = analyze("B.java", method("B", edited), options);
+        // The same two methods under other names, further down their files, indexed the other way round.
+        FileMetrics y = analyze("moved/Y.java", "// Moved.\n\n" + method("Y", body), options);
+        FileMetrics z = analyze("moved/Z.java", "\n\n\n\n" + method("Z", edited), options);
+
+        List<DuplicateBlock> before = NearMissDetector.detect(List.of(a, b), NearMissDetector.DEFAULT_THRESHOLD);
+        List<DuplicateBlock> after = NearMissDetector.detect(List.of(z, y), NearMissDetector.DEFAULT_THRESHOLD);
+        assertEquals(1, before.size(), groups(before, true).toString());
+        assertEquals(1, after.size(), groups(after, true).toString());
+        assertEquals(before.get(0).getNormalizedHash(), after.get(0).getNormalizedHash());
+
+        FileMetrics changed = analyze("B.java", method("B", edited.replaceFirst("x = 42;", "y = 42 - x;")), options);
+        List<DuplicateBlock> edit = NearMissDetector.detect(List.of(a, changed), NearMissDetector.DEFAULT_THRESHOLD);
+        assertEquals(1, edit.size());
+        assertNotEquals(before.get(0).getNormalizedHash(), edit.get(0).getNormalizedHash());
+    }
+}
@@ -0,0 +1,91 @@
+package com.codeanalyzer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GitChangesTest {
+
+    @TempDir
+    Path root;
+
+    private static final String DIFF = """
+            diff --git a/src/Edit.java b/src/Edit.java
+            index 1111111..2222222 100644
+            --- a/src/Edit.java
+            +++ b/src/Edit.java
+            @@ -3 +3 @@ class Edit {
+            -    int a;
+            +    int b;
+            @@ -10,2 +9,0 @@ class Edit {
+            --- not a header
+            -    int c;
+            diff --git a/src/Old.java b/src/Renamed.java
+            similarity index 90%
+            rename from src/Old.java
+            rename to src/Renamed.java
+            index 3333333..4444444 100644
+            --- a/src/Old.java
+            +++ b/src/Renamed.java
+            @@ -1 +1 @@
+            -class Old {}
+            +class Renamed {}
+            diff --git a/src/Gone.java b/src/Gone.java
+            deleted file mode 100644
+            index 5555555..0000000
+            --- a/src/Gone.java
+            +++ /dev/null
+            @@ -1 +0,0 @@
+            -class Gone {}
+            diff --git a/src/New.java b/src/New.java
+            new file mode 100644
+            index 0000000..6666666
+            --- /dev/null
+            +++ b/src/New.java
+            @@ -0,0 +1,4 @@
+            +class New {
+            +    int a() {
+            +        return 1;
+            +    }
+            """;
+
+    @Test
+    void hunkTouchesOverlappingCallables() {
+        List<int[]> hunks = List.of(new int[] { 5, 3 });
+        assertTrue(GitChanges.touches(hunks, 7, 10));
+        assertTrue(GitChanges.touches(hunks, 1, 5));
+        assertFalse(GitChanges.touches(hunks, 8, 10));
+        assertFalse(GitChanges.touches(hunks, 1, 4));
+
+        // A pure deletion after line 4 only touches a callable spanning lines 4 and 5.
+        List<int[]> deletion = List.of(new int[] { 4, 0 });
+        assertTrue(GitChanges.touches(deletion, 4, 9));
+        assertFalse(GitChanges.touches(deletion, 5, 9));
+        assertFalse(GitChanges.touches(deletion, 1, 4));
+    }
+
+    @Test
+    void parsesEditsRenamesDeletionsAndAdditions() throws Exception {
+        GitChanges changes = GitChanges.parse(root, "HEAD", DIFF);
+        assertEquals(4, changes.changedFileCount());
+        assertEquals(1, changes.deletedFileCount());
+
+        TestTrees.write(root, "src/Edit.java", "class Edit {}");
+        TestTrees.write(root, "src/Renamed.java", "class Renamed {}");
+        Path added = TestTrees.write(root, "src/New.java", "class New {\n    int a() {\n        return 1;\n    }\n\n    int b() {\n        return 2;\n    }\n}\n");
+        assertEquals(List.of(root.resolve("src/Edit.java"), added, root.resolve("src/Renamed.java")),
+                changes.existingFiles(new SourceDiscovery(root, new AnalysisOptions())));
+
+        // An added file has no base revision to read, so only the hunks decide.
+        FileMetrics metrics = JavaAnalyzer.analyzeFile(added, root, new AnalysisOptions());
+        assertEquals(1, changes.annotate(metrics, null));
+        assertTrue(metrics.getMethods().get(0).isChanged());
+        assertNull(metrics.getMethods().get(0).getBaseline());
+        assertFalse(metrics.getMethods().get(1).isChanged());
+        assertEquals(1, changes.touchedMethodCount());
+    }
+}
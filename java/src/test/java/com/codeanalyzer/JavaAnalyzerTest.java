@@ -0,0 +1,39 @@
+package com.codeanalyzer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JavaAnalyzerTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void parseIsCancelledOnceItRunsPastTheLimit() throws Exception {
+        Path file = TestTrees.write(root, "Big.java", TestTrees.repetitive("Big", 800));
+        AnalysisOptions unlimited = new AnalysisOptions();
+        unlimited.setFileTimeoutMs(0);
+        JavaAnalyzer.analyzeFile(file, root, unlimited);
+        long started = System.nanoTime();
+        FileMetrics full = JavaAnalyzer.analyzeFile(file, root, unlimited);
+        long fullNanos = System.nanoTime() - started;
+        assertNull(full.getDegraded());
+        assertEquals(800, full.getMethods().size());
+
+        AnalysisOptions limited = new AnalysisOptions();
+        limited.setFileTimeoutMs(1);
+        started = System.nanoTime();
+        FileMetrics cut = JavaAnalyzer.analyzeFile(file, root, limited);
+        long cutNanos = System.nanoTime() - started;
+        assertEquals("not analyzed within 1 ms", cut.getDegraded());
+        assertTrue(cut.getMethods().isEmpty());
+        assertEquals(full.getTotalLines(), cut.getTotalLines());
+        // Stopped partway through the parse rather than checked once it was done.
+        assertTrue(cutNanos < fullNanos / 4, "cancelled after " + cutNanos / 1_000_000 + " ms, full parse "
+                + fullNanos / 1_000_000 + " ms");
+    }
+}
@@ -0,0 +1,184 @@
+package com.codeanalyzer;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JavaMetricsCalculatorTest {
+
+    private static final int CODE = 0;
+    private static final int LINE_COMMENT = 1;
+    private static final int BLOCK_COMMENT = 2;
+    private static final int STRING = 3;
+    private static final int CHAR = 4;
+    private static final int TEXT_BLOCK = 5;
+
+    private static final String[] FRAGMENTS = {
+            "int x = 1;", "    ", "        ", "\t", "\f", "// note", "/* block", "*/", "/** doc */", " * star",
+            "\"str // /* \\\" q\"", "'\\''", "'/'", "\"\"\"\n  text // block\n  \\\"\"\"\n  \"\"\"", "\\", "é", "→",
+            "\n", "\n", "\r\n", "\r", "/", "*", "\"", "'", "x", "abcdefghijklmnop", "(a[0] + b) * c;"
+    };
+
+    /** The counter this replaced, which split on \n and classified each trimmed line by its prefix. */
+    private static JavaMetricsCalculator.LineCounts splitCounter(String source) {
+        String[] lines = source.split("\n");
+        int code = 0;
+        int comment = 0;
+        boolean inBlock = false;
+        for (String line : lines) {
+            String t = line.trim();
+            if (inBlock) {
+                comment++;
+                if (t.contains("*/")) inBlock = false;
+            } else if (t.startsWith("/*")) {
+                comment++;
+                if (!t.contains("*/")) inBlock = true;
+            } else if (t.startsWith("//")) {
+                comment++;
+            } else if (!t.isEmpty()) {
+                code++;
+            }
+        }
+        return new JavaMetricsCalculator.LineCounts(lines.length, code, comment);
+    }
+
+    /** The documented rules applied one byte at a time, without the scanner's eight-byte fast paths. */
+    private static JavaMetricsCalculator.LineCounts reference(byte[] s) {
+        int total = 0;
+        int code = 0;
+        int comment = 0;
+        int state = CODE;
+        boolean hasCode = false;
+        boolean hasComment = false;
+        boolean open = false;
+        for (int i = 0; i < s.length; i++) {
+            byte b = s[i];
+            byte next = i + 1 < s.length ? s[i + 1] : 0;
+            if (b == '\n' || b == '\r') {
+                if (b == '\r' && next == '\n') i++;
+                total++;
+                if (hasCode) code++;
+                else if (hasComment) comment++;
+                if (state == LINE_COMMENT || state == STRING || state == CHAR) state = CODE;
+                hasCode = state == TEXT_BLOCK;
+                hasComment = state == BLOCK_COMMENT;
+                open = false;
+                continue;
+            }
+            open = true;
+            boolean escapes = b == '\\' && next != 0 && next != '\n' && next != '\r';
+            if (state == CODE) {
+                if (b == ' ' || b == '\t' || b == '\f') continue;
+                if (b == '/' && next == '/') {
+                    state = LINE_COMMENT;
+                    hasComment = true;
+                    i++;
+                } else if (b == '/' && next == '*') {
+                    state = BLOCK_COMMENT;
+                    hasComment = true;
+                    i++;
+                } else {
+                    hasCode = true;
+                    if (b == '"' && next == '"' && i + 2 < s.length && s[i + 2] == '"') {
+                        state = TEXT_BLOCK;
+                        i += 2;
+                    } else if (b == '"') {
+                        state = STRING;
+                    } else if (b == '\'') {
+                        state = CHAR;
+                    }
+                }
+            } else if (state == BLOCK_COMMENT) {
+                if (b == '*' && next == '/') {
+                    state = CODE;
+                    i++;
+                }
+            } else if (state == STRING || state == CHAR) {
+                if (escapes) i++;
+                else if (b == (state == STRING ? '"' : '\'')) state = CODE;
+            } else if (state == TEXT_BLOCK) {
+                if (escapes) i++;
+                else if (b == '"' && next == '"' && i + 2 < s.length && s[i + 2] == '"') {
+                    state = CODE;
+                    i += 2;
+                }
+            }
+        }
+        if (open) {
+            total++;
+            if (hasCode) code++;
+            else if (hasComment) comment++;
+        }
+        return new JavaMetricsCalculator.LineCounts(total, code, comment);
+    }
+
+    @Test
+    void agreesWithTheSplitCounterOnConventionalSources() {
+        String source = """
+                /*
+                 * Licensed under the usual terms.
+                 */
+                package demo;
+
+                // Imports follow.
+                import java.util.List;
+
+                /** Sums things. */
+                public class Demo {
+                    /**
+                     * Adds the values.
+                     */
+                    int sum(List<Integer> values) {
+                        int total = 0; // running total
+                        for (int v : values) total += v;
+                        return total;
+                    }
+                }""";
+        assertEquals(splitCounter(source), JavaMetricsCalculator.countLines(source));
+        String generated = TestTrees.repetitive("Demo", 5).stripTrailing();
+        assertEquals(splitCounter(generated), JavaMetricsCalculator.countLines(generated));
+    }
+
+    @Test
+    void departsFromTheSplitCounterWhereDocumented() {
+        // Code after a block comment on the same line.
+        assertEquals(new JavaMetricsCalculator.LineCounts(1, 1, 0), JavaMetricsCalculator.countLines("/* c */ int b;"));
+        assertEquals(new JavaMetricsCalculator.LineCounts(2, 1, 1), JavaMetricsCalculator.countLines("/* a\n b */ c"));
+        // Comment markers inside literals.
+        assertEquals(new JavaMetricsCalculator.LineCounts(2, 2, 0),
+                JavaMetricsCalculator.countLines("String s = \"/* not a comment\";\nint x;"));
+        assertEquals(new JavaMetricsCalculator.LineCounts(3, 3, 0),
+                JavaMetricsCalculator.countLines("String s = \"\"\"\n    // inside a text block\n    \"\"\";"));
+        // Every line ending, and a trailing blank line.
+        assertEquals(new JavaMetricsCalculator.LineCounts(3, 3, 0), JavaMetricsCalculator.countLines("a\r\nb\rc"));
+        assertEquals(new JavaMetricsCalculator.LineCounts(2, 1, 0), JavaMetricsCalculator.countLines("a\n\n"));
+    }
+
+    @Test
+    void matchesByteAtATimeScanAtEveryAlignment() {
+        Random random = new Random(42);
+        for (int round = 0; round < 500; round++) {
+            StringBuilder sb = new StringBuilder();
+            int fragments = random.nextInt(200);
+            for (int i = 0; i < fragments; i++) sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+            String source = sb.toString();
+            byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+            JavaMetricsCalculator.LineCounts expected = reference(bytes);
+            assertEquals(expected, JavaMetricsCalculator.countLines(source), source);
+
+            // Surrounding bytes must not be read, whatever the alignment of the eight-byte words.
+            for (int offset = 0; offset < 8; offset++) {
+                for (ByteBuffer buffer : new ByteBuffer[] { ByteBuffer.allocate(bytes.length + 16), ByteBuffer.allocateDirect(bytes.length + 16) }) {
+                    while (buffer.hasRemaining()) buffer.put((byte) '/');
+                    buffer.put(offset, bytes).position(offset).limit(offset + bytes.length);
+                    assertEquals(expected, JavaMetricsCalculator.countLines(buffer), source);
+                    assertEquals(offset, buffer.position());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.codeanalyzer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsRollupTest {
+
+    /** A file of {@code lines} lines, one of them blank, holding {@code methods}. */
+    private static FileMetrics file(String relativePath, int lines, double fileMi, MethodMetrics... methods) {
+        FileMetrics f = new FileMetrics("/repo/" + relativePath, relativePath);
+        f.setTotalLines(lines);
+        f.setCodeLines(lines - 1);
+        f.setMaintainabilityIndex(fileMi);
+        int complexity = 0;
+        for (MethodMetrics m : methods) {
+            f.getMethods().add(m);
+            complexity += m.getCyclomaticComplexity();
+        }
+        f.setCyclomaticComplexity(Math.max(1, complexity));
+        return f;
+    }
+
+    private static MethodMetrics method(String name, int line, int cc, double mi) {
+        MethodMetrics m = new MethodMetrics(name, name + "()");
+        m.setLineStart(line);
+        m.setLineEnd(line);
+        m.setCyclomaticComplexity(cc);
+        m.setLinesOfCode(1);
+        m.setMaintainabilityIndex(mi);
+        return m;
+    }
+
+    @Test
+    void readsModulesAndPackagesFromPaths() {
+        MetricsRollup rollup = new MetricsRollup();
+        rollup.add(file("app/src/main/java/com/acme/core/A.java", 10, 80, method("a", 2, 4, 60), method("b", 5, 2, 80)));
+        rollup.add(file("app/src/test/java/com/acme/core/ATest.java", 5, 90, method("t", 2, 1, 100)));
+        rollup.add(file("lib/src/com/acme/util/U.java", 4, 70));
+        rollup.add(file("lib\\src\\com\\acme\\util\\V.java", 6, 50));
+        rollup.add(file("src/main/java/Root.java", 3, 100, method("r", 1, 7, 40)));
+        rollup.add(file("scripts/gen/Gen.java", 2, 95));
+        rollup.add(file("Tool.java", 8, 85, method("main", 3, 3, 70)));
+
+        MetricsRollup.Totals project = rollup.project();
+        assertEquals(new MetricsRollup.Totals(null, null, 7, 5, 38, 31, 4 + 2 + 1 + 1 + 1 + 7 + 1 + 3, 7, (60 + 80 + 100 + 40 + 70) / 5.0),
+                project);
+
+        // Main and test sources of a package share one row; files outside any src belong to the root module.
+        assertEquals(List.of(
+                new MetricsRollup.Totals("", null, 3, 2, 13, 10, 11, 7, 55),
+                new MetricsRollup.Totals("app", null, 2, 3, 15, 13, 7, 4, 80),
+                new MetricsRollup.Totals("lib", null, 2, 0, 10, 8, 2, 0, 60)), rollup.modules());
+        assertEquals(List.of(
+                new MetricsRollup.Totals("", "", 2, 2, 11, 9, 10, 7, 55),
+                new MetricsRollup.Totals("", "scripts.gen", 1, 0, 2, 1, 1, 0, 95),
+                new MetricsRollup.Totals("app", "com.acme.core", 2, 3, 15, 13, 7, 4, 80),
+                new MetricsRollup.Totals("lib", "com.acme.util", 2, 0, 10, 8, 2, 0, 60)), rollup.packages());
+
+        MetricsRollup flat = new MetricsRollup();
+        flat.add(file("tools/src/java/org/x/X.java", 2, 100));
+        assertEquals(List.of(new MetricsRollup.Totals("tools", "org.x", 1, 0, 2, 1, 1, 0, 100)), flat.packages());
+    }
+
+    @Test
+    void hotspotTiesAreBrokenByTheOtherMetricThenByPosition() {
+        MetricsRollup.Hotspot simple = new MetricsRollup.Hotspot("b/B.java", "s", 9, 5, 3, 80);
+        MetricsRollup.Hotspot worse = new MetricsRollup.Hotspot("b/B.java", "w", 20, 5, 9, 60);
+        MetricsRollup.Hotspot earlier = new MetricsRollup.Hotspot("a/A.java", "e", 30, 5, 9, 60);
+        MetricsRollup.Hotspot above = new MetricsRollup.Hotspot("b/B.java", "a", 3, 5, 9, 60);
+        MetricsRollup.Hotspot complex = new MetricsRollup.Hotspot("z/Z.java", "c", 1, 12, 20, 80);
+
+        List<MetricsRollup.Hotspot> all = new ArrayList<>(List.of(simple, worse, earlier, above, complex));
+        all.sort(MetricsRollup.MOST_COMPLEX);
+        assertEquals(List.of(complex, earlier, above, worse, simple), all);
+
+        all.sort(MetricsRollup.LEAST_MAINTAINABLE);
+        assertEquals(List.of(earlier, above, worse, complex, simple), all);
+    }
+
+    @Test
+    void boundedHeapsKeepTheWorstMethods() {
+        Random random = new Random(7);
+        List<FileMetrics> files = new ArrayList<>();
+        List<MetricsRollup.Hotspot> every = new ArrayList<>();
+        for (int f = 0; f < 40; f++) {
+            String path = "src/main/java/p" + f % 5 + "/F" + f + ".java";
+            MethodMetrics[] methods = new MethodMetrics[1 + random.nextInt(6)];
+            for (int i = 0; i < methods.length; i++) {
+                // Few distinct values, so ties reach the later keys.
+                methods[i] = method("m" + i, 1 + i, 1 + random.nextInt(8), 40 + 5 * random.nextInt(8));
+                every.add(new MetricsRollup.Hotspot(path, "m" + i, 1 + i, methods[i].getCyclomaticComplexity(), 1,
+                        methods[i].getMaintainabilityIndex()));
+            }
+            files.add(file(path, 20, 70, methods));
+        }
+        Collections.shuffle(files, random);
+        MetricsRollup rollup = new MetricsRollup(5);
+        MetricsRollup none = new MetricsRollup(0);
+        for (FileMetrics f : files) {
+            rollup.add(f);
+            none.add(f);
+        }
+
+        assertTrue(every.size() > 5 * 10);
+        every.sort(MetricsRollup.MOST_COMPLEX);
+        assertEquals(every.subList(0, 5), rollup.mostComplex());
+        every.sort(MetricsRollup.LEAST_MAINTAINABLE);
+        assertEquals(every.subList(0, 5), rollup.leastMaintainable());
+        assertTrue(none.mostComplex().isEmpty());
+        assertTrue(none.leastMaintainable().isEmpty());
+        assertEquals(rollup.project(), none.project());
+    }
+}
@@ -0,0 +1,51 @@
+package com.codeanalyzer;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsVisitorTest {
+
+    private static final String SOURCE = """
+            import java.util.function.*;
+
+            class Handlers {
+                static final Supplier<String> DEFAULT = () -> "none";
+
+                void register(Consumer<Runnable> sink) {
+                    sink.accept(() -> System.out.println("first"));
+                    sink.accept(() -> {
+                        Runnable inner = () -> { if (sink == null) throw new IllegalStateException(); };
+                        inner.run();
+                    });
+                }
+            }
+            """;
+
+    private static List<String> names(FileMetrics file) {
+        return file.getMethods().stream().map(MethodMetrics::getName).toList();
+    }
+
+    @Test
+    void lambdasAreNamedByEnclosingCallableAndOrdinal() {
+        FileMetrics file = JavaAnalyzer.analyzeSource(SOURCE, "Handlers.java", "");
+        assertEquals(List.of("lambda$1", "register", "register$lambda$1", "register$lambda$2", "register$lambda$2$lambda$1"), names(file));
+        assertEquals(7, file.getMethods().get(2).getLineStart());
+        assertEquals(2, file.getMethods().get(4).getCyclomaticComplexity());
+    }
+
+    @Test
+    void movingLambdasIsNotAChange() {
+        FileMetrics before = JavaAnalyzer.analyzeSource(SOURCE, "Handlers.java", "");
+        FileMetrics after = JavaAnalyzer.analyzeSource("// a new header line\n" + SOURCE, "Handlers.java", "");
+        assertEquals(names(before), names(after));
+
+        SnapshotDiff diff = SnapshotDiff.compute(
+                ResultSnapshot.wrap(ResultSnapshot.encode("p", Instant.EPOCH, List.of(before), List.of())),
+                ResultSnapshot.wrap(ResultSnapshot.encode("p", Instant.EPOCH, List.of(after), List.of())));
+        assertEquals(List.of(), diff.getMethods());
+    }
+}
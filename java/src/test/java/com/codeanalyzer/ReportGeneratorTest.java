@@ -0,0 +1,40 @@
+package com.codeanalyzer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReportGeneratorTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void typesWithoutMethodsAreInBothReports() throws Exception {
+        TestTrees.write(root, "demo/Point.java", "package demo;\npublic record Point(int x, int y) {}\n");
+        TestTrees.write(root, "demo/Marker.java", "package demo;\npublic interface Marker {}\n");
+        TestTrees.write(root, "demo/Shape.java",
+                "package demo;\npublic class Shape implements Marker {\n    Point origin() { return new Point(0, 0); }\n}\n");
+        AnalysisOptions options = new AnalysisOptions();
+        options.setThreads(1);
+        options.setCoupling(true);
+        List<FileMetrics> files = JavaAnalyzer.analyzeDirectory(root, options);
+        AnalysisResult result = new AnalysisResult();
+        result.setProjectPath("demo");
+        result.setAnalyzedAt(Instant.EPOCH);
+        result.getFiles().addAll(files);
+        result.setCoupling(CouplingAnalyzer.analyze(files, 1, CouplingAnalyzer.DEFAULT_BUDGET_MS));
+
+        String csv = ReportGenerator.generateCsv(result);
+        String html = ReportGenerator.generateHtml(result);
+        for (String type : List.of("demo.Point", "demo.Marker", "demo.Shape")) {
+            assertTrue(csv.contains("\nType," + type + ","), type + " in CSV");
+            assertTrue(html.contains("<tr><td>" + type + "</td>"), type + " in HTML");
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.codeanalyzer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardFileTest {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void mergedShardsMatchASingleRun() throws Exception {
+        Path root = temp.resolve("demo");
+        for (int i = 0; i < 12; i++) {
+            TestTrees.write(root, "src/main/java/demo/p" + i % 3 + "/R" + i + ".java", TestTrees.repetitive("R" + i, 1 + i % 4));
+        }
+        AnalysisOptions options = new AnalysisOptions();
+        Instant analyzedAt = Instant.ofEpochMilli(1234);
+
+        AnalysisResult single = new AnalysisResult();
+        single.setProjectPath("demo");
+        single.setAnalyzedAt(analyzedAt);
+        single.getFiles().addAll(JavaAnalyzer.analyzeDirectory(root, options));
+        single.getDuplicates().addAll(DuplicationDetector.detectDuplicates(single.getFiles()));
+        assertFalse(single.getDuplicates().isEmpty());
+
+        List<Path> all = JavaAnalyzer.discover(root, options);
+        List<ShardFile> shards = new ArrayList<>();
+        int written = 0;
+        for (int shard = 1; shard <= 3; shard++) {
+            Path shardPath = temp.resolve(shard + ".shard");
+            try (ShardFile.Writer writer = new ShardFile.Writer(shardPath, shard, 3, all.size(), "demo", root, analyzedAt)) {
+                List<FileMetrics> owned = new ArrayList<>();
+                JavaAnalyzer.analyzeFiles(root, ShardFile.select(root, all, shard, 3), options, owned::add);
+                for (FileMetrics m : owned) writer.add(m);
+                written += writer.written();
+            }
+            shards.add(ShardFile.read(shardPath, null));
+        }
+        assertEquals(all.size(), written);
+
+        // Shards are merged in whatever order they are given.
+        AnalysisResult merged = ShardFile.merge(List.of(shards.get(2), shards.get(0), shards.get(1)), DuplicationDetector.DEFAULT_MIN_TOKENS);
+        assertEquals(ReportGenerator.generateCsv(single), ReportGenerator.generateCsv(merged));
+        assertEquals(single.getDuplicates().size(), merged.getDuplicates().size());
+    }
+
+    @Test
+    void mergeRejectsMissingShards() throws Exception {
+        Path root = temp.resolve("demo");
+        TestTrees.write(root, "A.java", "class A {}");
+        Path shardPath = temp.resolve("1.shard");
+        try (ShardFile.Writer writer = new ShardFile.Writer(shardPath, 1, 2, 1, "demo", root, Instant.EPOCH)) {
+            writer.add(JavaAnalyzer.analyzeFile(root.resolve("A.java"), root, new AnalysisOptions()));
+        }
+        Exception e = assertThrows(IOException.class,
+                () -> ShardFile.merge(List.of(ShardFile.read(shardPath, null)), DuplicationDetector.DEFAULT_MIN_TOKENS));
+        assertEquals("Missing shard 2/2", e.getMessage());
+    }
+}
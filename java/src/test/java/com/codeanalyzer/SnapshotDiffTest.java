@@ -0,0 +1,140 @@
+package com.codeanalyzer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotDiffTest {
+
+    private static FileMetrics file(String path, int cc, double mi, MethodMetrics... methods) {
+        FileMetrics f = new FileMetrics("/repo/" + path, path);
+        f.setTotalLines(40);
+        f.setCodeLines(30);
+        f.setCommentLines(5);
+        f.setCyclomaticComplexity(cc);
+        f.setMaintainabilityIndex(mi);
+        f.getMethods().addAll(List.of(methods));
+        return f;
+    }
+
+    private static MethodMetrics method(String name, int cc, double mi) {
+        MethodMetrics m = new MethodMetrics(name, "void " + name + "()");
+        m.setLineStart(3);
+        m.setLineEnd(9);
+        m.setCyclomaticComplexity(cc);
+        m.setLinesOfCode(7);
+        m.setMaintainabilityIndex(mi);
+        return m;
+    }
+
+    private static DuplicateBlock duplicate(String hash, String... paths) {
+        DuplicateBlock block = new DuplicateBlock(hash);
+        block.setTokenCount(60);
+        for (String p : paths) {
+            DuplicateOccurrence o = new DuplicateOccurrence(p);
+            o.setLineStart(1);
+            o.setLineEnd(12);
+            o.setPreview("int total = 0;");
+            block.getOccurrences().add(o);
+        }
+        return block;
+    }
+
+    private static ResultSnapshot snapshot(List<FileMetrics> files, List<DuplicateBlock> duplicates) {
+        return ResultSnapshot.wrap(ResultSnapshot.encode("demo", Instant.ofEpochMilli(1234), files, duplicates));
+    }
+
+    @Test
+    void roundTrip() {
+        DuplicateBlock nearMiss = duplicate("~0a", "a/A.java", "b/B.java");
+        nearMiss.setSimilarity(0.875);
+        ResultSnapshot s = snapshot(List.of(file("b/B.java", 4, 70.5, method("run", 3, 60.25)), file("a/A.java", 1, 99)),
+                List.of(duplicate("00ff", "a/A.java", "b/B.java"), nearMiss));
+        assertEquals("demo", s.projectPath());
+        assertEquals(Instant.ofEpochMilli(1234), s.analyzedAt());
+        assertEquals(JavaAnalyzer.METRICS_VERSION, s.metricsVersion());
+        assertEquals(2, s.fileCount());
+
+        FileMetricsView a = s.file(0);
+        FileMetricsView b = s.file(1);
+        assertEquals("a/A.java", a.getRelativePath());
+        assertEquals("/repo/b/B.java", b.getFilePath());
+        assertEquals(40, b.getTotalLines());
+        assertEquals(4, b.getCyclomaticComplexity());
+        assertEquals(70.5, b.getMaintainabilityIndex());
+        MethodMetricsView run = b.getMethods().get(0);
+        assertEquals("run", run.getName());
+        assertEquals("void run()", run.getSignature());
+        assertEquals(3, run.getLineStart());
+        assertEquals(60.25, run.getMaintainabilityIndex());
+
+        DuplicateBlock d = s.duplicate(0);
+        assertEquals("00ff", d.getNormalizedHash());
+        assertEquals(60, d.getTokenCount());
+        assertEquals(List.of("a/A.java", "b/B.java"), d.getOccurrences().stream().map(DuplicateOccurrence::getFilePath).toList());
+        assertEquals("int total = 0;", d.getOccurrences().get(1).getPreview());
+        assertEquals(1.0, d.getSimilarity());
+        assertEquals(0.875, s.duplicate(1).getSimilarity());
+        assertNull(a.getDegraded());
+    }
+
+    @Test
+    void reportsFilesThatBecameApproximate() throws Exception {
+        FileMetrics broken = file("A.java", 3, 80);
+        broken.setDegraded("syntax error at line 7");
+        ResultSnapshot before = snapshot(List.of(file("A.java", 3, 80)), List.of());
+        ResultSnapshot after = snapshot(List.of(broken), List.of());
+        assertEquals("syntax error at line 7", after.file(0).getDegraded());
+
+        SnapshotDiff diff = SnapshotDiff.compute(before, after);
+        assertEquals(List.of(new SnapshotDiff.FileDelta(SnapshotDiff.Change.CHANGED, "A.java", 3, 3, 80, 80,
+                "syntax error at line 7")), diff.getFiles());
+        StringWriter csv = new StringWriter();
+        diff.writeCsv(csv);
+        assertTrue(csv.toString().contains("\nCHANGED,File,A.java,,,3,3,0,80.0,80.0,0.0,syntax error at line 7\n"), csv.toString());
+        assertTrue(SnapshotDiff.compute(after, after).getFiles().isEmpty());
+    }
+
+    @Test
+    void reportsAddedRemovedAndChanged() throws Exception {
+        ResultSnapshot before = snapshot(List.of(
+                file("A.java", 3, 80, method("keep", 1, 90), method("edit", 2, 70)),
+                file("Gone.java", 1, 95)), List.of(duplicate("aa", "A.java", "Gone.java")));
+        ResultSnapshot after = snapshot(List.of(
+                file("A.java", 5, 75, method("keep", 1, 90), method("edit", 4, 60), method("fresh", 1, 95)),
+                file("New.java", 1, 95)), List.of(duplicate("bb", "A.java", "New.java")));
+        SnapshotDiff diff = SnapshotDiff.compute(before, after);
+
+        assertEquals(List.of(
+                new SnapshotDiff.FileDelta(SnapshotDiff.Change.CHANGED, "A.java", 3, 5, 80, 75, null),
+                new SnapshotDiff.FileDelta(SnapshotDiff.Change.REMOVED, "Gone.java", 1, 0, 95, 0, null),
+                new SnapshotDiff.FileDelta(SnapshotDiff.Change.ADDED, "New.java", 0, 1, 0, 95, null)), diff.getFiles());
+        assertEquals(List.of(
+                new SnapshotDiff.MethodDelta(SnapshotDiff.Change.CHANGED, "A.java", "edit", "void edit()", 2, 4, 70, 60),
+                new SnapshotDiff.MethodDelta(SnapshotDiff.Change.ADDED, "A.java", "fresh", "void fresh()", 0, 1, 0, 95)),
+                diff.getMethods());
+        assertEquals(List.of(SnapshotDiff.Change.ADDED, SnapshotDiff.Change.REMOVED),
+                diff.getDuplicates().stream().map(SnapshotDiff.DuplicateDelta::change).toList());
+
+        StringWriter csv = new StringWriter();
+        diff.writeCsv(csv);
+        assertTrue(csv.toString().contains("\nADDED,bb,60,1.00,2,"), csv.toString());
+        assertTrue(csv.toString().contains("\nREMOVED,aa,60,1.00,2,"), csv.toString());
+        assertTrue(diff.summary().endsWith("Duplicate groups: 1 added, 1 removed"), diff.summary());
+    }
+
+    @Test
+    void rejectsDifferentMetricsVersions() {
+        ByteBuffer old = ResultSnapshot.encode("demo", Instant.EPOCH, List.of(file("A.java", 1, 90)), List.of());
+        old.putInt(8, JavaAnalyzer.METRICS_VERSION - 1);
+        ResultSnapshot baseline = ResultSnapshot.wrap(old);
+        ResultSnapshot current = snapshot(List.of(file("A.java", 1, 90)), List.of());
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> SnapshotDiff.compute(baseline, current));
+        assertTrue(e.getMessage().contains("metrics version"), e.getMessage());
+    }
+}
@@ -0,0 +1,115 @@
+package com.codeanalyzer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SourceDiscoveryTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void ruleMatchesLikeGit() {
+        SourceDiscovery.Rule logs = SourceDiscovery.Rule.parse("*.log");
+        assertTrue(logs.matches("a.log", false));
+        assertTrue(logs.matches("deep/dir/a.log", false));
+        assertFalse(logs.matches("a.log.txt", false));
+
+        SourceDiscovery.Rule anchored = SourceDiscovery.Rule.parse("/gen/");
+        assertTrue(anchored.matches("gen", true));
+        assertFalse(anchored.matches("gen", false));
+        assertFalse(anchored.matches("src/gen", true));
+
+        SourceDiscovery.Rule globstar = SourceDiscovery.Rule.parse("a/**/b");
+        assertTrue(globstar.matches("a/b", false));
+        assertTrue(globstar.matches("a/x/y/b", false));
+
+        SourceDiscovery.Rule negated = SourceDiscovery.Rule.parse("!Keep.java");
+        assertTrue(negated.negated());
+        assertNull(SourceDiscovery.Rule.parse("# comment"));
+        assertNull(SourceDiscovery.Rule.parse("   "));
+        assertTrue(SourceDiscovery.Rule.parse("\\#hash").matches("#hash", false));
+        assertTrue(SourceDiscovery.Rule.parse("[!a]?.java").matches("bX.java", false));
+    }
+
+    @Test
+    void lastMatchingPatternDecides() {
+        SourceDiscovery.Rules rules = new SourceDiscovery.Rules(null,
+                List.of(SourceDiscovery.Rule.parse("*.java"), SourceDiscovery.Rule.parse("!Keep.java")), "", 0);
+        assertTrue(rules.ignores("Drop.java", false));
+        assertFalse(rules.ignores("Keep.java", false));
+
+        // A deeper .gitignore overrides its parent's verdict.
+        SourceDiscovery.Rules nested = new SourceDiscovery.Rules(rules, List.of(SourceDiscovery.Rule.parse("!Drop.java")), "", 4);
+        assertFalse(nested.ignores("sub/Drop.java", false));
+        assertTrue(nested.ignores("sub/Other.java", false));
+    }
+
+    @Test
+    void gitignoreAndExcludesPrune() throws Exception {
+        TestTrees.write(root, ".gitignore", "generated/\n*Ignored.java\n");
+        TestTrees.write(root, "src/A.java", "class A {}");
+        TestTrees.write(root, "src/BIgnored.java", "class BIgnored {}");
+        TestTrees.write(root, "generated/G.java", "class G {}");
+        TestTrees.write(root, "target/T.java", "class T {}");
+        TestTrees.write(root, "pom.xml", "<project/>");
+        TestTrees.write(root, "other/C.java", "class C {}");
+        AnalysisOptions options = new AnalysisOptions();
+        options.getExcludes().add("other/");
+
+        SourceDiscovery discovery = new SourceDiscovery(root, options);
+        assertEquals(List.of(root.resolve("src/A.java")), discovery.list());
+        assertTrue(discovery.prunes(root.resolve("generated")));
+        assertFalse(discovery.accepts(root.resolve("src/BIgnored.java")));
+    }
+
+    @Test
+    void treeWithoutGitignore() throws Exception {
+        TestTrees.write(root, "src/A.java", "class A { void m() {} }");
+        TestTrees.write(root, "src/b/B.java", "class B {}");
+        SourceDiscovery discovery = new SourceDiscovery(root, new AnalysisOptions());
+
+        assertEquals(List.of(root.resolve("src/A.java"), root.resolve("src/b/B.java")), discovery.list());
+        assertTrue(discovery.accepts(root.resolve("src/b/B.java")));
+        assertFalse(discovery.prunes(root.resolve("src/b")));
+    }
+
+    @Test
+    void daemonStartsWithoutGitignore() throws Exception {
+        TestTrees.write(root, "src/A.java", "class A { void m() {} }");
+        AnalysisOptions options = new AnalysisOptions();
+        options.setThreads(1);
+        AnalysisDaemon daemon = new AnalysisDaemon(root, options, DuplicationDetector.DEFAULT_MIN_TOKENS);
+        try {
+            int port = daemon.start(0);
+            HttpResponse<String> health = HttpClient.newHttpClient().send(
+                    HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/health")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, health.statusCode());
+            assertTrue(health.body().startsWith("{\"files\":1,"), health.body());
+        } finally {
+            daemon.close();
+        }
+    }
+
+    @Test
+    void changedSinceWithoutGitignore() throws Exception {
+        TestTrees.write(root, "src/A.java", "class A {\n    void m() {}\n}\n");
+        TestTrees.git(root, "init", "-q");
+        TestTrees.git(root, "add", ".");
+        TestTrees.git(root, "commit", "-q", "-m", "initial");
+        TestTrees.write(root, "src/A.java", "class A {\n    void m() { int x = 1; }\n}\n");
+
+        GitChanges changes = GitChanges.since(root, "HEAD");
+        assertEquals(List.of(root.resolve("src/A.java")), changes.existingFiles(new SourceDiscovery(root, new AnalysisOptions())));
+    }
+}
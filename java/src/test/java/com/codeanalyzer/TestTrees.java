@@ -0,0 +1,48 @@
+package com.codeanalyzer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Helpers for building small source trees and git repositories under a test's temporary directory. */
+final class TestTrees {
+
+    private TestTrees() {}
+
+    static Path write(Path root, String relativePath, String content) throws IOException {
+        Path file = root.resolve(relativePath);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    /** Runs git in {@code root} with a fixed identity; fails the test on a non-zero exit. */
+    static String git(Path root, String... args) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(List.of("git", "-c", "user.name=test", "-c", "user.email=test@example.com",
+                "-c", "commit.gpgsign=false"));
+        command.addAll(List.of(args));
+        Process p = new ProcessBuilder(command).directory(root.toFile()).redirectErrorStream(true).start();
+        String output = new String(p.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        if (p.waitFor() != 0) throw new IOException("git " + String.join(" ", args) + " failed: " + output);
+        return output;
+    }
+
+    /** A class whose methods are {@code n} copies of the same loop, enough to form duplicate groups. */
+    static String repetitive(String name, int n) {
+        StringBuilder sb = new StringBuilder("package demo;\n\npublic class ").append(name).append(" {\n");
+        for (int i = 0; i < n; i++) {
+            sb.append("    int sum").append(i).append("(int[] values, int limit) {\n")
+                    .append("        int total = 0;\n")
+                    .append("        for (int i = 0; i < values.length; i++) {\n")
+                    .append("            if (values[i] > limit && values[i] % 2 == 0) total += values[i] * 3;\n")
+                    .append("            else if (values[i] < -limit) total -= values[i];\n")
+                    .append("        }\n")
+                    .append("        return total > 100 ? total / 2 : total;\n")
+                    .append("    }\n\n");
+        }
+        return sb.append("}\n").toString();
+    }
+}